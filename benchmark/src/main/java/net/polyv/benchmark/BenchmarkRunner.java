@@ -0,0 +1,24 @@
+package net.polyv.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 在IDE中直接运行全部基准测试，附带GC分析(分配速率 gc.alloc.rate.norm)
+ * 参数为正则时只运行匹配的基准，如 VideoJsonParse
+ * @author: sadboy
+ **/
+public class BenchmarkRunner {
+    
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "net.polyv.benchmark.*")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+    
+}
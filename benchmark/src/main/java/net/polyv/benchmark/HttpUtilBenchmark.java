@@ -0,0 +1,73 @@
+package net.polyv.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.polyv.common.v1.base.HttpUtil;
+import net.polyv.scan.VideoJson;
+import net.polyv.scan.VideoJsonParse;
+
+/**
+ * HttpUtil单次请求的吞吐量，使用本地HTTP服务
+ * getBinary为下载整张图片，作为getWebCode只探测状态码的对照
+ * @author: sadboy
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class HttpUtilBenchmark {
+    private LocalHttpServer server;
+    private String videoJsonUrl;
+    private String imageUrl;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LocalHttpServer(16);
+        videoJsonUrl = server.getBaseUrl() + "/videojson/1b448be3239be11b5a206f26e3baa988_1.js";
+        imageUrl = server.getBaseUrl() + "/img/cover.jpg";
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+    
+    @Benchmark
+    public String get() throws IOException {
+        return HttpUtil.get(videoJsonUrl);
+    }
+    
+    @Benchmark
+    public VideoJson getVideoJsonStreaming() throws IOException {
+        return HttpUtil.get(videoJsonUrl, null, VideoJsonParse.INSTANCE);
+    }
+    
+    @Benchmark
+    public int getWebCode() throws IOException {
+        return HttpUtil.getWebCode(imageUrl);
+    }
+    
+    @Benchmark
+    public byte[] getBinary() throws IOException {
+        return HttpUtil.getBinary(imageUrl, null, null, null);
+    }
+    
+}
@@ -0,0 +1,87 @@
+package net.polyv.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 基准测试用的本地HTTP服务，提供videojson和封面图片，排除网络波动的影响
+ * /videojson/{vid}.js 返回带连续逗号的videojson
+ * /img/{name}.jpg 返回固定大小的图片，支持HEAD
+ * @author: sadboy
+ **/
+public class LocalHttpServer implements AutoCloseable {
+    private static final int IMAGE_SIZE = 32 * 1024;
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] videoJson;
+    private final byte[] image = new byte[IMAGE_SIZE];
+    
+    public LocalHttpServer(int threads) throws IOException {
+        this.videoJson = sampleVideoJson("http://127.0.0.1:0/img/cover.jpg").getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/videojson/", exchange -> respond(exchange, "application/javascript", videoJson));
+        server.createContext("/img/", exchange -> respond(exchange, "image/jpeg", image));
+        server.start();
+    }
+    
+    /**
+     * 模拟线上videojson的结构：大量无关字段、嵌套对象、连续逗号
+     * @param imageUrl first_image_b地址
+     * @return videojson内容
+     */
+    public static String sampleVideoJson(String imageUrl) {
+        StringBuilder builder = new StringBuilder(4096);
+        builder.append("{\"vid\":\"1b448be3239be11b5a206f26e3baa988_1\",\"title\":\"sample\",");
+        for (int i = 0; i < 40; i++) {
+            builder.append("\"field").append(i).append("\":\"value-").append(i).append("\",");
+        }
+        builder.append("\"hls\":[\"http:\\/\\/hls.videocc.net\\/a\\/b_1.m3u8\",\"http:\\/\\/hls.videocc.net\\/a\\/b_2.m3u8\"],,");
+        builder.append("\"resolution\":{\"width\":1920,\"height\":1080,\"tags\":[\"}\",\"{\"]},");
+        builder.append("\"status\":60,,");
+        builder.append("\"first_image_b\":\"").append(imageUrl.replace("/", "\\/")).append("\",");
+        for (int i = 40; i < 60; i++) {
+            builder.append("\"field").append(i).append("\":").append(i).append(",");
+        }
+        builder.append("\"end\":true}");
+        return builder.toString();
+    }
+    
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("ETag", "\"bench\"");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+    
+    /**
+     * @return 服务地址，如 http://127.0.0.1:12345
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+}
@@ -0,0 +1,128 @@
+package net.polyv.benchmark;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.polyv.common.v1.base.HttpUtil;
+import net.polyv.scan.CheckResult;
+import net.polyv.scan.CoverCheckPipeline;
+import net.polyv.scan.ResultSink;
+import net.polyv.scan.VideoItem;
+import net.polyv.scan.VideoJson;
+import net.polyv.scan.VideoJsonParse;
+import net.polyv.scan.VideoSource;
+
+/**
+ * 列表 -> 检查 全流程吞吐量，每次调用检查 {@link #VIDEO_COUNT} 个视频，结果为每秒检查的视频数
+ * 列表阶段用内存中的vid代替，检查阶段与APP一致：videojson + 封面探测
+ * @author: sadboy
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final int VIDEO_COUNT = 2000;
+    
+    @Param({"1", "8", "32", "128"})
+    public int workerCount;
+    
+    private LocalHttpServer server;
+    private String baseUrl;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LocalHttpServer(64);
+        baseUrl = server.getBaseUrl();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(VIDEO_COUNT)
+    public Map<CheckResult.Reason, Long> listAndCheck() throws IOException {
+        BlockingQueue<VideoItem> queue = new ArrayBlockingQueue<>(1000);
+        CoverCheckPipeline pipeline = new CoverCheckPipeline(workerCount, item -> {
+            String vid = item.getVid();
+            VideoJson videoJson = HttpUtil.get(baseUrl + "/videojson/" + vid + ".js", null, VideoJsonParse.INSTANCE);
+            int code = HttpUtil.probe(baseUrl + "/img/" + vid + ".jpg");
+            return new CheckResult(vid, videoJson.getFirstImageB(), code,
+                    code == 200 ? CheckResult.Reason.OK : CheckResult.Reason.NON_200, 0);
+        });
+        return pipeline.run(new SyntheticSource(queue, VIDEO_COUNT), queue, NoopSink.INSTANCE);
+    }
+    
+    /**
+     * 生成固定数量vid的视频来源
+     */
+    private static class SyntheticSource implements VideoSource {
+        private final BlockingQueue<VideoItem> queue;
+        private final int count;
+        private final AtomicLong produced = new AtomicLong();
+        
+        private SyntheticSource(BlockingQueue<VideoItem> queue, int count) {
+            this.queue = queue;
+            this.count = count;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < count; i++) {
+                    queue.put(new VideoItem(String.format("%032x_1", i)));
+                    produced.incrementAndGet();
+                }
+                queue.put(VideoItem.END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        @Override
+        public long getProducedCount() {
+            return produced.get();
+        }
+        
+        @Override
+        public Exception getFailure() {
+            return null;
+        }
+    }
+    
+    private enum NoopSink implements ResultSink {
+        INSTANCE;
+        
+        @Override
+        public void write(CheckResult result) {
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+}
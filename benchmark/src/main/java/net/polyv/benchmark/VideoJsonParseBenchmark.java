@@ -0,0 +1,53 @@
+package net.polyv.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import net.polyv.scan.VideoJson;
+import net.polyv.scan.VideoJsonParse;
+
+/**
+ * videojson解析：原先的 字符串替换 + fastjson 与流式读取字段对比
+ * @author: sadboy
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoJsonParseBenchmark {
+    private final byte[] payload = LocalHttpServer.sampleVideoJson("https://img.videocc.net/uimage/1/1b448be323/b/cover.jpg")
+            .getBytes(StandardCharsets.UTF_8);
+    
+    @Benchmark
+    public void fastjson(Blackhole blackhole) {
+        String s = new String(payload, StandardCharsets.UTF_8);
+        s = s.replace(",,", ",");
+        JSONObject jsonObject = JSON.parseObject(s);
+        blackhole.consume(jsonObject.getInteger("status"));
+        blackhole.consume(jsonObject.getString("first_image_b"));
+    }
+    
+    @Benchmark
+    public VideoJson streaming() throws IOException {
+        return VideoJsonParse.parse(new ByteArrayInputStream(payload));
+    }
+    
+}
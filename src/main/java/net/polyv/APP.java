@@ -1,19 +1,51 @@
 package net.polyv;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
+import org.apache.http.conn.ConnectTimeoutException;
 
+import net.polyv.common.v1.base.HttpMetrics;
 import net.polyv.common.v1.base.HttpUtil;
-import net.polyv.common.v1.exception.PloyvSdkException;
+import net.polyv.scan.AccountResultSink;
+import net.polyv.scan.AccountListFetcher;
+import net.polyv.scan.CategoryShardedProducer;
+import net.polyv.scan.ChannelResultSink;
+import net.polyv.scan.CheckResult;
+import net.polyv.scan.CoverCheckPipeline;
+import net.polyv.scan.CoverProbeCache;
+import net.polyv.scan.DeltaScanDaemon;
+import net.polyv.scan.MultiAccountSource;
+import net.polyv.scan.RateLimiter;
+import net.polyv.scan.ScanAccount;
+import net.polyv.scan.ScanJournal;
+import net.polyv.scan.ScanWatermark;
+import net.polyv.scan.VideoItem;
+import net.polyv.scan.VideoJson;
+import net.polyv.scan.VideoJsonParse;
+import net.polyv.scan.VideoListProducer;
+import net.polyv.scan.VideoSource;
+import net.polyv.scan.WorkQueue;
 import net.polyv.vod.v1.config.VodGlobalConfig;
 import net.polyv.vod.v1.entity.manage.list.VodGetVideoListRequest;
-import net.polyv.vod.v1.entity.manage.list.VodGetVideoListResponse;
-import net.polyv.vod.v1.service.manage.impl.VodListServiceImpl;
 
 /**
  * 查询出点播视频图片访问不到的vId
@@ -26,90 +58,417 @@ public class APP {
     public static final String secretKey = "";
     //点播视频查询条件
     public static VodGetVideoListRequest vodGetVideoListRequest = new VodGetVideoListRequest();
-    
-    public static String errorVId = "";
+    //只扫描该分类及其子分类，可通过 -Dscan.categoryId 指定，默认扫描全部分类
+    public static final String categoryId = System.getProperty("scan.categoryId");
+    //是否按分类分片并行查询视频列表，可通过 -Dscan.shardByCategory=true 开启
+    public static final boolean shardByCategory = Boolean.getBoolean("scan.shardByCategory");
+    //按分类分片时并发查询列表的线程数，可通过 -Dscan.listThreads 调整
+    public static final int listThreads = Integer.getInteger("scan.listThreads", 4);
+    //并发检查线程数，可通过 -Dscan.workers 调整
+    public static final int workerCount = Integer.getInteger("scan.workers", 16);
+    //全局每秒最多请求数，可通过 -Dscan.rps 调整，小于等于0不限速
+    public static final int requestsPerSecond = Integer.getInteger("scan.rps", 50);
+    //待检查视频队列容量，可通过 -Dscan.queueCapacity 调整
+    public static final int queueCapacity = Integer.getInteger("scan.queueCapacity", 1000);
+    //翻页间隔(毫秒)，可通过 -Dscan.pageIntervalMillis 调整，默认由HttpUtil按API域名自适应限流
+    public static final int pageIntervalMillis = Integer.getInteger("scan.pageIntervalMillis", 0);
+    //扫描进度日志文件，可通过 -Dscan.journal 调整，扫描全部完成后删除
+    public static final String journalPath = System.getProperty("scan.journal", "scan.journal");
+    //检查结果报告文件，可通过 -Dscan.report 调整，扩展名为.jsonl时输出JSON Lines，否则输出CSV
+    public static final String reportPath = System.getProperty("scan.report", "report.csv");
+    //封面探测结果缓存文件，可通过 -Dscan.probeCache 调整
+    public static final String probeCachePath = System.getProperty("scan.probeCache", "probe.cache");
+    //封面探测结果有效期(小时)，过期后发送条件请求重新校验
+    public static final int probeCacheTtlHours = Integer.getInteger("scan.probeCacheTtlHours", 12);
+    //封面探测结果最多缓存的url数
+    public static final int probeCacheMaxEntries = Integer.getInteger("scan.probeCacheMaxEntries", 1000000);
+    //HTTP指标Prometheus文本文件，可通过 -Dscan.metricsFile 调整，每15秒导出一次
+    public static final String metricsPath = System.getProperty("scan.metricsFile", "http-metrics.prom");
+    //列表接口返回了封面地址和状态时直接检查封面，不再请求videojson，可通过 -Dscan.useListMetadata=false 关闭
+    public static final boolean useListMetadata = !"false".equalsIgnoreCase(System.getProperty("scan.useListMetadata"));
+    //常驻进程模式，按水位线定期增量扫描新上传的视频，可通过 -Dscan.daemon=true 开启
+    public static final boolean daemon = Boolean.getBoolean("scan.daemon");
+    //增量扫描水位线文件，可通过 -Dscan.watermark 调整
+    public static final String watermarkPath = System.getProperty("scan.watermark", "scan.watermark");
+    //两轮增量扫描的间隔(分钟)
+    public static final int daemonIntervalMinutes = Integer.getInteger("scan.daemonIntervalMinutes", 10);
+    //全量扫描的间隔(小时)，覆盖修改过封面的旧视频
+    public static final int fullSweepHours = Integer.getInteger("scan.fullSweepHours", 168);
+    //相邻两轮增量扫描时间段的重叠(分钟)，防止上传后延迟进入列表的视频被漏掉
+    public static final int deltaOverlapMinutes = Integer.getInteger("scan.deltaOverlapMinutes", 30);
+    //多账号扫描的账号列表文件，每行：名称,userId,secretKey[,权重[,每秒检查数]]，可通过 -Dscan.accounts 指定
+    public static final String accountsPath = System.getProperty("scan.accounts");
+    //多进程扫描的角色，coordinator查询列表写入工作队列并合并结果，worker领取批次检查封面，可通过 -Dscan.role 指定
+    public static final String role = System.getProperty("scan.role");
+    //多进程扫描的工作队列目录，协调进程和检查进程需要使用同一目录，可通过 -Dscan.workQueue 调整
+    public static final String workQueuePath = System.getProperty("scan.workQueue", "work-queue");
+    //工作队列每个批次的视频数
+    public static final int batchSize = Integer.getInteger("scan.batchSize", 500);
+    //批次租约时长(秒)，检查进程超过该时间没有续约时批次退回重新检查
+    public static final int leaseSeconds = Integer.getInteger("scan.leaseSeconds", 120);
+    //封面探测超过该域名实时p95延迟未返回时再发一个对冲请求，先返回的生效，可通过 -Dscan.hedgeProbes=true 开启
+    public static final boolean hedgeProbes = Boolean.getBoolean("scan.hedgeProbes");
+    //开启对冲时单个封面探测的截止时间(毫秒)，超过后记为TIMEOUT
+    public static final int probeDeadlineMillis = Integer.getInteger("scan.probeDeadlineMillis", 5000);
+    //所有检查线程共用的限速器
+    private static final RateLimiter rateLimiter = new RateLimiter(requestsPerSecond);
+    //实际发出的videojson请求数，用于确认列表元数据的命中情况
+    private static final LongAdder videoJsonRequests = new LongAdder();
+    //封面探测结果缓存，只有真正发出请求时才占用限速许可
+    private static final CoverProbeCache probeCache = new CoverProbeCache((url, headMap) -> {
+        acquirePermit();
+        return hedgeProbes ? HttpUtil.probeHedged(url, headMap, probeDeadlineMillis) : HttpUtil.probe(url, headMap);
+    }, TimeUnit.HOURS.toMillis(probeCacheTtlHours), probeCacheMaxEntries);
     
     public static void main(String[] args) throws IOException {
         long currentTimeMillis = System.currentTimeMillis();
         //初始化连接池和用户信息
         VodGlobalConfig.init(userId, secretKey);
         
-        //设置点播视频查询参数(防止循环查询视频过多，对后台产生影响)
-        vodGetVideoListRequest.setFilters("basicInfo")
-                //TODO 视频太多的情况下建议按分类搜索减少数量
-                .setCategoryId(null).setStatus("60,61").setContainSubCate(true).setPageSize(100);
-        //查询出所有视频id
-        List<String> queryVideo = queryVideo(1);
-        System.out.println("当前查询出视频数为：" + queryVideo.size());
-        
-        for (String tempVid : queryVideo) {
-            if (checkVodVId(tempVid)) {
-                errorVId += tempVid + ",";
-            }
+        vodGetVideoListRequest = newVideoListRequest();
+        HttpMetrics.startPrometheusDump(Paths.get(metricsPath), 15);
+        probeCache.load(Paths.get(probeCachePath));
+        if (daemon) {
+            //常驻进程，按水位线增量扫描新上传的视频，定期全量扫描
+            new DeltaScanDaemon(ScanWatermark.load(Paths.get(watermarkPath)),
+                    TimeUnit.MINUTES.toMillis(daemonIntervalMinutes), TimeUnit.HOURS.toMillis(fullSweepHours),
+                    TimeUnit.MINUTES.toMillis(deltaOverlapMinutes), APP::scanWindow).run();
+            return;
         }
-        System.out.println("错误视频封面id：" + errorVId);
-//        FileUtil.writeFile(errorVId.getBytes(StandardCharsets.UTF_8),"D:\\errorVid.txt");
+        if ("coordinator".equals(role)) {
+            coordinate();
+            System.out.println("耗时：" + (System.currentTimeMillis() - currentTimeMillis) / 1000);
+            return;
+        }
+        Map<CheckResult.Reason, Long> counts;
+        try {
+            counts = "worker".equals(role) ? work() : accountsPath != null ? scanAccounts(ScanAccount.load(Paths.get(accountsPath)))
+                    : scan(APP::newVideoListRequest, true, Paths.get(reportPath));
+        } finally {
+            probeCache.save(Paths.get(probeCachePath));
+            HttpMetrics.writePrometheus(Paths.get(metricsPath));
+        }
+        System.out.println("videojson请求数：" + videoJsonRequests.sum());
+        System.out.println("封面探测缓存命中：" + probeCache.getHitCount() + "，未变化(304)：" + probeCache.getNotModifiedCount()
+                + "，完整探测：" + probeCache.getMissCount());
+        System.out.println("检查结果统计：" + counts + "，报告文件：" + reportPath);
         System.out.println("耗时：" + (System.currentTimeMillis() - currentTimeMillis) / 1000);
     }
     
     /**
-     * 循环查询点播视频，直到查询出所有的点播视频，
-     * @param currentPage
-     * @return
+     * 查询并检查一批视频，结果写入报告
+     * @param requestFactory 创建点播视频查询条件
+     * @param useJournal 是否记录扫描进度，中断后可以续扫；增量扫描时间段短，不需要记录
+     * @param report 报告文件
+     * @return 各检查结论的视频数
+     * @throws IOException 读写异常
      */
-    public static List<String> queryVideo(int currentPage) {
-        List<String> vidList = new ArrayList<>();
-        VodGetVideoListResponse vodGetVideoListResponse = null;
+    private static Map<CheckResult.Reason, Long> scan(Supplier<VodGetVideoListRequest> requestFactory,
+            boolean useJournal, Path report) throws IOException {
+        //读取上次中断的扫描进度，跳过已完成的列表页和已检查的视频
+        final ScanJournal journal = useJournal ? ScanJournal.open(Paths.get(journalPath), 1000, 1000) : null;
+        //续扫时追加到已有的报告之后
+        ChannelResultSink sink = ChannelResultSink.open(report, journal != null && journal.isResumed());
+        if (journal != null) {
+            journal.setReport(sink);
+        }
+        Map<CheckResult.Reason, Long> counts;
+        boolean completed = false;
         try {
-            vodGetVideoListRequest.setCurrentPage(currentPage).setSign(null);
-            vodGetVideoListResponse = new VodListServiceImpl().getVideoList(vodGetVideoListRequest);
-            if (vodGetVideoListResponse != null) {
-                for (VodGetVideoListResponse.VodGetVideoList videoList : vodGetVideoListResponse.getContents()) {
-                    vidList.add(videoList.getVideoId());
+            //边查询视频id边检查，队列满时暂停翻页
+            BlockingQueue<VideoItem> queue = new ArrayBlockingQueue<>(queueCapacity);
+            //视频太多的情况下按分类分片并行查询，每个分类的分页互不依赖
+            VideoSource producer = shardByCategory
+                    ? new CategoryShardedProducer(requestFactory, categoryId, queue, listThreads, journal)
+                    : new VideoListProducer(requestFactory.get(), queue, pageIntervalMillis, journal);
+            counts = new CoverCheckPipeline(workerCount, APP::checkVodVId, (item, result) -> {
+                //结果写入报告后才记录进度；超时和异常的视频不记录进度，续扫时重新检查
+                if (journal != null && result.getReason() != CheckResult.Reason.TIMEOUT
+                        && result.getReason() != CheckResult.Reason.ERROR) {
+                    journal.recordCheck(item.getVid(), result.isError());
                 }
-                if (vodGetVideoListResponse.getTotalPage() > vodGetVideoListResponse.getCurrentPage()) {
-                    Thread.sleep(500);
-                    vidList.addAll(queryVideo(currentPage + 1));
+            }).run(producer, queue, sink);
+            System.out.println("当前查询出视频数为：" + producer.getProducedCount());
+            completed = true;
+        } finally {
+            sink.close();
+            if (journal != null) {
+                if (completed) {
+                    journal.complete();
+                } else {
+                    journal.close();
                 }
             }
-        } catch (PloyvSdkException e) {
-            //参数校验不合格 或者 请求服务器端500错误，错误信息见PloyvSdkException.getMessage()
-            // 异常返回做B端异常的业务逻辑，记录log 或者 上报到ETL 或者回滚事务
-            throw e;
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return vidList;
+        return counts;
     }
     
     /**
-     * 传入点播视频id，返回该视频的图片是否存在问题
-     * 已删除视频直接跳过
-     * @param v_id 视频id，如：1b448be3239be11b5a206f26e3baa988_1
-     * @throws IOException
+     * 多个账号共用一组检查线程扫描，按账号权重公平调度，每个账号输出单独的报告
+     * 多账号扫描不记录进度，中断后需要重新扫描
+     * @param accounts 账号列表
+     * @return 所有账号合计的各检查结论视频数
+     * @throws IOException 读写异常
+     */
+    private static Map<CheckResult.Reason, Long> scanAccounts(List<ScanAccount> accounts) throws IOException {
+        final Map<String, Map<CheckResult.Reason, LongAdder>> accountCounts = new LinkedHashMap<>();
+        for (ScanAccount account : accounts) {
+            Map<CheckResult.Reason, LongAdder> reasonCounts = new EnumMap<>(CheckResult.Reason.class);
+            for (CheckResult.Reason reason : CheckResult.Reason.values()) {
+                reasonCounts.put(reason, new LongAdder());
+            }
+            accountCounts.put(account.getName(), reasonCounts);
+        }
+        AccountResultSink sink = AccountResultSink.open(Paths.get(reportPath), accounts);
+        Map<CheckResult.Reason, Long> counts;
+        try {
+            BlockingQueue<VideoItem> queue = new ArrayBlockingQueue<>(queueCapacity);
+            //每个账号单独查询列表，每个请求按账号签名，账号之间不互相等待
+            MultiAccountSource source = new MultiAccountSource(accounts, queue, queueCapacity,
+                    (account, laneQueue) -> new VideoListProducer(newVideoListRequest(), laneQueue,
+                            pageIntervalMillis, null, new AccountListFetcher(account)));
+            counts = new CoverCheckPipeline(workerCount, item -> {
+                CheckResult result = checkVodVId(item).withAccount(item.getAccount());
+                accountCounts.get(item.getAccount()).get(result.getReason()).increment();
+                return result;
+            }).run(source, queue, sink);
+            System.out.println("当前查询出视频数为：" + source.getProducedCount());
+        } finally {
+            sink.close();
+        }
+        for (Map.Entry<String, Map<CheckResult.Reason, LongAdder>> entry : accountCounts.entrySet()) {
+            System.out.println("账号 " + entry.getKey() + " 检查结果统计：" + entry.getValue() + "，报告文件："
+                    + AccountResultSink.pathFor(Paths.get(reportPath), entry.getKey()));
+        }
+        return counts;
+    }
+    
+    /**
+     * 多进程扫描的协调进程：查询视频列表按批次写入工作队列，等待检查进程处理完后合并结果为报告
+     * 列表查询到一半退出时无法确定已写入的批次，重启后开始新的一轮重新查询；列表已完成时直接等待合并
+     * @throws IOException 读写异常
      */
-    private static boolean checkVodVId(String v_id) throws IOException {
-        String s = HttpUtil.get("https://player.polyv.net/videojson/" + v_id + ".js");
-        s = s.replace(",,", ",");
-        JSONObject jsonObject = JSON.parseObject(s);
-        Integer status = jsonObject.getInteger("status");
-        if (status != null) {
-            switch (status) {
-                case -1:
-                    System.out.println("视频已删除");
-                    break;
-                default:
-                    String imgUrl = jsonObject.getString("first_image_b");
-                    int code = HttpUtil.getWebCode(imgUrl);
-                    if (code != 200) {
-                        System.out.println("当前视频有问题" + v_id);
-                        return true;
+    private static void coordinate() throws IOException {
+        WorkQueue workQueue = openWorkQueue();
+        if (!workQueue.isListCompleted()) {
+            workQueue.startRun();
+            BlockingQueue<VideoItem> queue = new ArrayBlockingQueue<>(queueCapacity);
+            VideoSource producer = shardByCategory
+                    ? new CategoryShardedProducer(APP::newVideoListRequest, categoryId, queue, listThreads, null)
+                    : new VideoListProducer(newVideoListRequest(), queue, pageIntervalMillis);
+            Thread producerThread = new Thread(producer, "video-list-producer");
+            producerThread.setDaemon(true);
+            producerThread.start();
+            List<VideoItem> batch = new ArrayList<>(batchSize);
+            try {
+                for (VideoItem item = queue.take(); item != VideoItem.END; item = queue.take()) {
+                    batch.add(item);
+                    if (batch.size() >= batchSize) {
+                        workQueue.offer(batch);
+                        batch.clear();
                     }
-                    break;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("查询视频列表被中断");
+            }
+            if (!batch.isEmpty()) {
+                workQueue.offer(batch);
+            }
+            if (producer.getFailure() != null) {
+                throw new IOException("查询视频列表失败，已写入的批次会被检查进程处理，重启后重新查询", producer.getFailure());
+            }
+            workQueue.completeList();
+            System.out.println("当前查询出视频数为：" + producer.getProducedCount());
+        }
+        //等待检查进程处理完所有批次，期间退回过期的租约
+        long lastProgressMillis = 0;
+        while (!workQueue.isDrained()) {
+            workQueue.reclaimExpired();
+            if (System.currentTimeMillis() - lastProgressMillis >= TimeUnit.SECONDS.toMillis(10)) {
+                lastProgressMillis = System.currentTimeMillis();
+                System.out.println("待检查批次：" + workQueue.getPendingCount() + "，检查中：" + workQueue.getLeasedCount()
+                        + "，已完成：" + workQueue.getDoneCount());
             }
-            return false;
+            try {
+                TimeUnit.SECONDS.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待检查进程被中断");
+            }
+        }
+        long lineCount = workQueue.mergeResults(Paths.get(reportPath));
+        System.out.println("检查完成批次数：" + workQueue.getDoneCount() + "，问题视频数：" + lineCount + "，报告文件：" + reportPath);
+    }
+    
+    /**
+     * 多进程扫描的检查进程：从工作队列领取批次检查，结果写回队列，队列处理完后退出
+     * 检查期间定期续约；检查失败时不释放租约，过期后由其他检查进程重新检查
+     * @return 本进程各检查结论的视频数
+     * @throws IOException 读写异常
+     */
+    private static Map<CheckResult.Reason, Long> work() throws IOException {
+        WorkQueue workQueue = openWorkQueue();
+        String workerId = ManagementFactory.getRuntimeMXBean().getName();
+        long renewMillis = TimeUnit.SECONDS.toMillis(leaseSeconds) / 3;
+        Map<CheckResult.Reason, Long> counts = new EnumMap<>(CheckResult.Reason.class);
+        int batchCount = 0;
+        ScheduledExecutorService renewExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "work-queue-renew");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            while (true) {
+                WorkQueue.Lease lease = workQueue.claim(workerId);
+                if (lease == null) {
+                    if (workQueue.isDrained()) {
+                        break;
+                    }
+                    workQueue.reclaimExpired();
+                    try {
+                        TimeUnit.SECONDS.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("等待批次被中断");
+                    }
+                    continue;
+                }
+                ScheduledFuture<?> renewal = renewExecutor.scheduleWithFixedDelay(lease::renew, renewMillis,
+                        renewMillis, TimeUnit.MILLISECONDS);
+                boolean completed = false;
+                try {
+                    BlockingQueue<VideoItem> queue = new ArrayBlockingQueue<>(queueCapacity);
+                    ChannelResultSink sink = ChannelResultSink.open(lease.getResultTempPath(), false);
+                    Map<CheckResult.Reason, Long> batchCounts;
+                    try {
+                        batchCounts = new CoverCheckPipeline(workerCount, APP::checkVodVId)
+                                .run(lease.newSource(queue), queue, sink);
+                    } finally {
+                        sink.close();
+                    }
+                    lease.complete();
+                    completed = true;
+                    for (Map.Entry<CheckResult.Reason, Long> entry : batchCounts.entrySet()) {
+                        counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+                    }
+                    batchCount++;
+                } finally {
+                    renewal.cancel(false);
+                    if (!completed) {
+                        lease.abandon();
+                    }
+                }
+            }
+        } finally {
+            renewExecutor.shutdownNow();
+        }
+        System.out.println("检查进程 " + workerId + " 完成批次数：" + batchCount);
+        return counts;
+    }
+    
+    private static WorkQueue openWorkQueue() throws IOException {
+        return WorkQueue.open(Paths.get(workQueuePath), TimeUnit.SECONDS.toMillis(leaseSeconds),
+                reportPath.endsWith(".jsonl") ? ".jsonl" : ".csv");
+    }
+    
+    /**
+     * 常驻进程模式下扫描一个上传时间段，全量扫描时记录进度，每轮结束后保存封面探测缓存和指标
+     * 全量扫描写入报告文件，增量扫描每轮写入以本轮开始时间命名的报告
+     * @param startTime 上传时间下限，为null时扫描全部视频
+     * @param endTime 上传时间上限，即本轮开始时间
+     */
+    private static Map<CheckResult.Reason, Long> scanWindow(final Date startTime, final Date endTime)
+            throws IOException {
+        Path report = startTime == null ? Paths.get(reportPath)
+                : DeltaScanDaemon.roundReportPath(Paths.get(reportPath), endTime);
+        try {
+            return scan(() -> DeltaScanDaemon.applyWindow(newVideoListRequest(), startTime, endTime),
+                    startTime == null, report);
+        } finally {
+            probeCache.save(Paths.get(probeCachePath));
+            HttpMetrics.writePrometheus(Paths.get(metricsPath));
+        }
+    }
+    
+    /**
+     * 设置点播视频查询参数(防止循环查询视频过多，对后台产生影响)
+     * @return 新的查询条件
+     */
+    private static VodGetVideoListRequest newVideoListRequest() {
+        return new VodGetVideoListRequest().setFilters("basicInfo")
+                .setCategoryId(categoryId).setStatus("60,61").setContainSubCate(true).setPageSize(100);
+    }
+    
+    /**
+     * 传入点播视频，返回该视频封面的检查结果
+     * 列表接口已返回状态和封面地址时直接探测封面，否则先请求videojson
+     * 已删除视频直接跳过，没有封面地址记为MISSING_COVER，请求超时记为TIMEOUT，其他读写异常记为ERROR
+     * @param item 视频，vid如：1b448be3239be11b5a206f26e3baa988_1
+     * @throws IOException
+     */
+    private static CheckResult checkVodVId(VideoItem item) throws IOException {
+        String v_id = item.getVid();
+        long startTime = System.currentTimeMillis();
+        String imgUrl = null;
+        try {
+            Integer status;
+            String coverUrl;
+            if (useListMetadata && item.hasMetadata()) {
+                status = item.getStatus();
+                coverUrl = item.getCoverUrl();
+            } else {
+                acquirePermit();
+                videoJsonRequests.increment();
+                VideoJson videoJson = HttpUtil.get("https://player.polyv.net/videojson/" + v_id + ".js", null,
+                        VideoJsonParse.INSTANCE);
+                status = videoJson.getStatus();
+                coverUrl = videoJson.getFirstImageB();
+            }
+            if (status == null) {
+                return new CheckResult(v_id, null, null, CheckResult.Reason.MISSING_STATUS, elapsed(startTime));
+            }
+            if (status == -1) {
+                System.out.println("视频已删除");
+                return new CheckResult(v_id, null, null, CheckResult.Reason.DELETED, elapsed(startTime));
+            }
+            if (coverUrl == null || coverUrl.isEmpty()) {
+                return new CheckResult(v_id, null, null, CheckResult.Reason.MISSING_COVER, elapsed(startTime));
+            }
+            imgUrl = coverUrl;
+            int code = probeCache.getStatusCode(imgUrl);
+            if (code != 200) {
+                System.out.println("当前视频有问题" + v_id);
+                return new CheckResult(v_id, imgUrl, code, CheckResult.Reason.NON_200, elapsed(startTime));
+            }
+            return new CheckResult(v_id, imgUrl, code, CheckResult.Reason.OK, elapsed(startTime));
+        } catch (SocketTimeoutException | ConnectTimeoutException e) {
+            System.out.println("当前视频检查超时" + v_id);
+            return new CheckResult(v_id, imgUrl, null, CheckResult.Reason.TIMEOUT, elapsed(startTime));
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            //重试后仍失败或域名熔断，只记录当前视频，不中断整个扫描
+            System.out.println("当前视频检查异常" + v_id + "：" + e.getMessage());
+            return new CheckResult(v_id, imgUrl, null, CheckResult.Reason.ERROR, elapsed(startTime));
+        }
+    }
+    
+    private static long elapsed(long startTime) {
+        return System.currentTimeMillis() - startTime;
+    }
+    
+    /**
+     * 发送请求前获取全局限速许可
+     * @throws InterruptedIOException 等待许可时线程被中断
+     */
+    private static void acquirePermit() throws InterruptedIOException {
+        try {
+            rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("rate limiter interrupted");
         }
-        return true;
     }
     
 }
@@ -0,0 +1,236 @@
+package net.polyv.common.v1.base;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按域名自适应调整并发数的限流器(AIMD)
+ * 延迟正常时每完成约一轮请求并发上限加1，遇到429、5xx或超时时并发上限减半
+ * 保利威API域名(api.开头)与其他域名(图片CDN、播放器)使用不同的并发区间，可通过系统属性调整：
+ * -Dhttp.limit.api.initial、-Dhttp.limit.api.min、-Dhttp.limit.api.max
+ * -Dhttp.limit.cdn.initial、-Dhttp.limit.cdn.min、-Dhttp.limit.cdn.max
+ * @author: sadboy
+ **/
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+    
+    /**
+     * 请求结果对并发数的影响
+     */
+    public enum Outcome {
+        /**
+         * 请求成功，延迟正常时增加并发
+         */
+        SUCCESS,
+        /**
+         * 服务端过载(429、5xx、超时)，减少并发
+         */
+        OVERLOAD,
+        /**
+         * 与服务端负载无关的失败，不调整并发
+         */
+        IGNORE
+    }
+    
+    private static final ConcurrentMap<String, AdaptiveConcurrencyLimiter> LIMITERS = new ConcurrentHashMap<>();
+    
+    /**
+     * 延迟超过基准延迟的倍数时不再增加并发
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+    /**
+     * 两次减半之间的最短间隔，避免同一批失败请求把并发连续减半
+     */
+    private static final long DECREASE_INTERVAL_MILLIS = 1000;
+    /**
+     * 每完成多少个请求放宽一次基准延迟，网络变化后基准可以回升
+     */
+    private static final int BASELINE_DECAY_SAMPLES = 1000;
+    
+    private final String host;
+    private final int minLimit;
+    private final int maxLimit;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    /**
+     * 等待许可的异步请求，归还许可时优先分配
+     */
+    private final Deque<CompletableFuture<Void>> asyncWaiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private double baselineLatencyMillis = Double.MAX_VALUE;
+    private int samplesSinceDecay;
+    private long lastDecreaseMillis;
+    
+    public AdaptiveConcurrencyLimiter(String host, int initialLimit, int minLimit, int maxLimit) {
+        this.host = host;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+    
+    /**
+     * 获取域名对应的限流器，api.开头的域名使用API并发区间，其他使用CDN并发区间
+     * @param host 请求域名
+     * @return 限流器
+     */
+    public static AdaptiveConcurrencyLimiter forHost(String host) {
+        String key = host == null ? "" : host;
+        AdaptiveConcurrencyLimiter limiter = LIMITERS.get(key);
+        if (limiter == null) {
+            boolean api = key.startsWith("api.");
+            String profile = api ? "api" : "cdn";
+            limiter = new AdaptiveConcurrencyLimiter(key,
+                    Integer.getInteger("http.limit." + profile + ".initial", api ? 8 : 32),
+                    Integer.getInteger("http.limit." + profile + ".min", api ? 1 : 4),
+                    Integer.getInteger("http.limit." + profile + ".max", api ? 64 : 512));
+            AdaptiveConcurrencyLimiter existing = LIMITERS.putIfAbsent(key, limiter);
+            if (existing != null) {
+                limiter = existing;
+            }
+        }
+        return limiter;
+    }
+    
+    /**
+     * 获取一个并发许可，达到并发上限时阻塞等待
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                available.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * 异步获取一个并发许可，不阻塞调用线程，供异步客户端在IO线程上使用
+     * 许可分配给已取消的future时立即归还
+     * @return 获得许可时完成的future
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (asyncWaiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                permit.complete(null);
+            } else {
+                asyncWaiters.add(permit);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return permit;
+    }
+    
+    /**
+     * 归还并发许可，并根据请求结果调整并发上限
+     * @param latencyMillis 请求耗时
+     * @param outcome 请求结果
+     */
+    public void release(long latencyMillis, Outcome outcome) {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        lock.lock();
+        try {
+            inFlight--;
+            switch (outcome) {
+                case SUCCESS:
+                    onSuccess(latencyMillis);
+                    break;
+                case OVERLOAD:
+                    onOverload();
+                    break;
+                default:
+                    break;
+            }
+            while (!asyncWaiters.isEmpty() && inFlight < (int) limit) {
+                CompletableFuture<Void> waiter = asyncWaiters.poll();
+                if (!waiter.isDone()) {
+                    inFlight++;
+                    granted.add(waiter);
+                }
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        //在锁外完成，后续动作(发送请求)不在锁内执行
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                release(0, Outcome.IGNORE);
+            }
+        }
+    }
+    
+    private void onSuccess(long latencyMillis) {
+        if (++samplesSinceDecay >= BASELINE_DECAY_SAMPLES) {
+            baselineLatencyMillis *= 1.1;
+            samplesSinceDecay = 0;
+        }
+        baselineLatencyMillis = Math.min(baselineLatencyMillis, Math.max(latencyMillis, 1));
+        if (latencyMillis <= baselineLatencyMillis * LATENCY_TOLERANCE && limit < maxLimit) {
+            //每个许可完成一次请求约增加1个并发
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+    
+    private void onOverload() {
+        long now = System.currentTimeMillis();
+        if (now - lastDecreaseMillis < DECREASE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastDecreaseMillis = now;
+        double previous = limit;
+        limit = Math.max(minLimit, limit / 2);
+        log.debug("{} 服务端过载，并发上限 {} -> {}", host, (int) previous, (int) limit);
+    }
+    
+    /**
+     * 根据状态码判断请求结果
+     * @param statusCode HTTP状态码
+     * @return 429和5xx视为过载
+     */
+    public static Outcome outcomeOf(int statusCode) {
+        return statusCode == 429 || statusCode >= 500 ? Outcome.OVERLOAD : Outcome.SUCCESS;
+    }
+    
+    /**
+     * @return 当前并发上限
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * @return 当前进行中的请求数
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+}
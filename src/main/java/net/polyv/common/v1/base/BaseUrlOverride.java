@@ -0,0 +1,108 @@
+package net.polyv.common.v1.base;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * 请求地址替换，把保利威线上地址指向本地模拟服务做压测
+ * 通过 -Dhttp.baseUrlOverride 配置，多条规则以逗号分隔，域名可以用*.开头匹配子域名，如：
+ * https://api.polyv.net=http://127.0.0.1:18080,https://player.polyv.net=http://127.0.0.1:18080,https://*.videocc.net=http://127.0.0.1:18080
+ * 只替换协议、域名和端口，路径和参数不变；限流、熔断、指标仍按原域名统计
+ * @author: sadboy
+ **/
+public class BaseUrlOverride {
+    private static final List<Rule> RULES = parse(System.getProperty("http.baseUrlOverride"));
+    
+    private static class Rule {
+        private final String scheme;
+        private final String host;
+        private final URI target;
+        
+        private Rule(String scheme, String host, URI target) {
+            this.scheme = scheme;
+            this.host = host;
+            this.target = target;
+        }
+        
+        private boolean matches(URI uri) {
+            if (!scheme.equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+                return false;
+            }
+            if (host.startsWith("*.")) {
+                return uri.getHost().toLowerCase().endsWith(host.substring(1));
+            }
+            return host.equals(uri.getHost().toLowerCase());
+        }
+    }
+    
+    private BaseUrlOverride() {
+    }
+    
+    private static List<Rule> parse(String config) {
+        if (config == null || config.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Rule> rules = new ArrayList<>();
+        for (String item : config.split(",")) {
+            int index = item.indexOf('=');
+            if (index < 0) {
+                throw new IllegalArgumentException("invalid http.baseUrlOverride rule: " + item);
+            }
+            String source = item.substring(0, index).trim();
+            int schemeEnd = source.indexOf("://");
+            if (schemeEnd < 0) {
+                throw new IllegalArgumentException("invalid http.baseUrlOverride rule: " + item);
+            }
+            String scheme = source.substring(0, schemeEnd);
+            String host = source.substring(schemeEnd + 3).toLowerCase();
+            URI target = URI.create(item.substring(index + 1).trim());
+            rules.add(new Rule(scheme, host, target));
+        }
+        return rules;
+    }
+    
+    /**
+     * @return 是否配置了地址替换
+     */
+    public static boolean isEnabled() {
+        return !RULES.isEmpty();
+    }
+    
+    /**
+     * 按规则替换地址，没有匹配的规则时原样返回
+     * @param uri 原地址
+     * @return 替换后的地址
+     */
+    public static URI rewrite(URI uri) {
+        for (Rule rule : RULES) {
+            if (rule.matches(uri)) {
+                StringBuilder url = new StringBuilder();
+                url.append(rule.target.getScheme()).append("://").append(rule.target.getRawAuthority());
+                url.append(uri.getRawPath() == null ? "" : uri.getRawPath());
+                if (uri.getRawQuery() != null) {
+                    url.append('?').append(uri.getRawQuery());
+                }
+                return URI.create(url.toString());
+            }
+        }
+        return uri;
+    }
+    
+    /**
+     * 替换请求对象的地址
+     * @param httpUriRequest 请求对象
+     */
+    public static void apply(HttpUriRequest httpUriRequest) {
+        if (RULES.isEmpty() || !(httpUriRequest instanceof HttpRequestBase)) {
+            return;
+        }
+        HttpRequestBase httpRequestBase = (HttpRequestBase) httpUriRequest;
+        httpRequestBase.setURI(rewrite(httpRequestBase.getURI()));
+    }
+    
+}
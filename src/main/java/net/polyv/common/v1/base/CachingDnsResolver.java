@@ -0,0 +1,68 @@
+package net.polyv.common.v1.base;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 带缓存的DNS解析，高并发建连时同一域名只解析一次
+ * 缓存有效期可通过 -Dhttp.dns.ttlSeconds 调整；过期后重新解析失败时继续使用旧结果，DNS短暂故障不影响扫描
+ * @author: sadboy
+ **/
+@Slf4j
+public class CachingDnsResolver implements DnsResolver {
+    /**
+     * 所有HTTP客户端共用的实例
+     */
+    public static final CachingDnsResolver INSTANCE = new CachingDnsResolver(
+            Integer.getInteger("http.dns.ttlSeconds", 60) * 1000L);
+    
+    private final long ttlMillis;
+    private final DnsResolver delegate = SystemDefaultDnsResolver.INSTANCE;
+    private final ConcurrentMap<String, CachedAddresses> cache = new ConcurrentHashMap<>();
+    
+    /**
+     * @param ttlMillis 解析结果缓存时间，单位毫秒
+     */
+    public CachingDnsResolver(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+    
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        long now = System.currentTimeMillis();
+        CachedAddresses cached = cache.get(host);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.addresses.clone();
+        }
+        InetAddress[] addresses;
+        try {
+            addresses = delegate.resolve(host);
+        } catch (UnknownHostException e) {
+            if (cached == null) {
+                throw e;
+            }
+            log.warn("域名 {} 解析失败，继续使用缓存的解析结果：{}", host, e.getMessage());
+            return cached.addresses.clone();
+        }
+        cache.put(host, new CachedAddresses(addresses, now + ttlMillis));
+        return addresses.clone();
+    }
+    
+    private static class CachedAddresses {
+        private final InetAddress[] addresses;
+        private final long expiresAt;
+        
+        CachedAddresses(InetAddress[] addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+}
@@ -0,0 +1,211 @@
+package net.polyv.common.v1.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.util.EntityUtils;
+
+import lombok.extern.slf4j.Slf4j;
+import net.polyv.common.v1.constant.Constant;
+
+/**
+ * 分片并行上传，实现 {@link HttpUtil#postFileChunked}
+ * 每个分片是一个multipart请求，除调用方参数外带上 uploadId、partNumber、partCount、partSize、fileSize、partMd5
+ * 服务端返回2xx视为该分片已确认，记录到 文件名.upload 进度文件；进度文件第一行为
+ * uploadId\t文件长度\t修改时间\t分片大小\turl，文件或参数变化时重新上传全部分片
+ * @author: sadboy
+ **/
+@Slf4j
+class ChunkedUpload {
+    private static final String PROGRESS_SUFFIX = ".upload";
+    
+    private final String url;
+    private final Map<String, String> paramMap;
+    private final String fileParamName;
+    private final File file;
+    private final Map<String, String> headMap;
+    private final long partSize;
+    private final int parallelism;
+    private final Path progressPath;
+    
+    ChunkedUpload(String url, Map<String, String> paramMap, String fileParamName, File file,
+            Map<String, String> headMap, long partSize, int parallelism) {
+        if (partSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("partSize and parallelism must be positive");
+        }
+        this.url = url;
+        this.paramMap = paramMap;
+        this.fileParamName = fileParamName;
+        this.file = file;
+        this.headMap = headMap;
+        this.partSize = partSize;
+        this.parallelism = parallelism;
+        this.progressPath = Paths.get(file.getPath() + PROGRESS_SUFFIX);
+    }
+    
+    String run() throws IOException {
+        long fileSize = file.length();
+        int partCount = (int) Math.max(1, (fileSize + partSize - 1) / partSize);
+        Set<Integer> acknowledged = new HashSet<>();
+        String uploadId = loadProgress(fileSize, acknowledged);
+        log.info("分片上传 {} ，长度 {} ，共 {} 片，已确认 {} 片，uploadId: {}", file, fileSize, partCount,
+                acknowledged.size(), uploadId);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, partCount), newThreadFactory());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                if (acknowledged.contains(partNumber)) {
+                    continue;
+                }
+                final int number = partNumber;
+                futures.add(executor.submit(() -> {
+                    uploadPart(uploadId, number, partCount, fileSize);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("chunked upload interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        Files.deleteIfExists(progressPath);
+        return uploadId;
+    }
+    
+    /**
+     * 上传单个分片，失败时按RetryPolicy退避重试，同一分片重复上传由服务端按partNumber覆盖
+     */
+    private void uploadPart(String uploadId, int partNumber, int partCount, long fileSize) throws IOException {
+        long offset = (partNumber - 1) * partSize;
+        FileRegionBody body = new FileRegionBody(file, offset, Math.min(partSize, fileSize - offset), file.getName());
+        String md5 = body.md5Hex();
+        RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        retryPolicy.onRequest();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                sendPart(uploadId, partNumber, partCount, fileSize, md5, body);
+                recordPart(partNumber, md5);
+                return;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted() || !retryPolicy.tryRetry(attempt)) {
+                    throw e;
+                }
+                log.debug("分片 {} 上传失败，准备第 {} 次重试：{}", partNumber, attempt, e.toString());
+                try {
+                    Thread.sleep(retryPolicy.backoffMillis(attempt, 0));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("chunked upload interrupted");
+                }
+            }
+        }
+    }
+    
+    private void sendPart(String uploadId, int partNumber, int partCount, long fileSize, String md5,
+            FileRegionBody body) throws IOException {
+        ContentType contentType = ContentType.create("text/plain", Charset.forName(Constant.UTF8));
+        MultipartEntityBuilder entityBuilder = MultipartEntityBuilder.create();
+        if (paramMap != null) {
+            for (Map.Entry<String, String> entry : paramMap.entrySet()) {
+                entityBuilder.addTextBody(entry.getKey(), entry.getValue(), contentType);
+            }
+        }
+        entityBuilder.addTextBody("uploadId", uploadId, contentType);
+        entityBuilder.addTextBody("partNumber", String.valueOf(partNumber), contentType);
+        entityBuilder.addTextBody("partCount", String.valueOf(partCount), contentType);
+        entityBuilder.addTextBody("partSize", String.valueOf(partSize), contentType);
+        entityBuilder.addTextBody("fileSize", String.valueOf(fileSize), contentType);
+        entityBuilder.addTextBody("partMd5", md5, contentType);
+        entityBuilder.addPart(fileParamName, body);
+        HttpEntity entity = entityBuilder.build();
+        CloseableHttpResponse response = HttpUtil.sendMultipart(url, entity, headMap);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String result = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity(), Constant.UTF8);
+            if (statusCode < 200 || statusCode >= 300) {
+                throw new IOException("分片 " + partNumber + " 上传失败，状态码: " + statusCode + "，响应: " + result);
+            }
+            log.debug("分片 {} 上传完成，响应: {}", partNumber, result);
+        } finally {
+            HttpUtil.closeQuietly(response);
+        }
+    }
+    
+    /**
+     * 读取已确认的分片，返回续传使用的uploadId；没有进度或文件已变化时生成新的uploadId
+     */
+    private String loadProgress(long fileSize, Set<Integer> acknowledged) throws IOException {
+        String header = fileSize + "\t" + file.lastModified() + "\t" + partSize + "\t" + url;
+        if (Files.exists(progressPath)) {
+            List<String> lines = Files.readAllLines(progressPath, StandardCharsets.UTF_8);
+            if (!lines.isEmpty()) {
+                String first = lines.get(0);
+                int tab = first.indexOf('\t');
+                if (tab > 0 && first.substring(tab + 1).equals(header)) {
+                    for (String line : lines.subList(1, lines.size())) {
+                        int index = line.indexOf('\t');
+                        if (index > 0) {
+                            acknowledged.add(Integer.parseInt(line.substring(0, index)));
+                        }
+                    }
+                    return first.substring(0, tab);
+                }
+            }
+        }
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+        Files.write(progressPath, Collections.singletonList(uploadId + "\t" + header), StandardCharsets.UTF_8);
+        return uploadId;
+    }
+    
+    private synchronized void recordPart(int partNumber, String md5) throws IOException {
+        Files.write(progressPath, Collections.singletonList(partNumber + "\t" + md5), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+    }
+    
+    private static ThreadFactory newThreadFactory() {
+        final AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "http-upload-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+}
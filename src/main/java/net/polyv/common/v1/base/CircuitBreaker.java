@@ -0,0 +1,109 @@
+package net.polyv.common.v1.base;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按域名熔断，连续失败达到阈值后在一段时间内直接拒绝请求，避免所有线程都卡在超时上
+ * 熔断时间结束后放行一个试探请求，成功则恢复，失败则继续熔断
+ * 可通过 -Dhttp.breaker.failureThreshold、-Dhttp.breaker.openMillis 调整
+ * @author: sadboy
+ **/
+@Slf4j
+public class CircuitBreaker {
+    private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+    private static final int FAILURE_THRESHOLD = Integer.getInteger("http.breaker.failureThreshold", 20);
+    private static final long OPEN_MILLIS = Long.getLong("http.breaker.openMillis", 10000L);
+    
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+    
+    private final String host;
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    
+    public CircuitBreaker(String host, int failureThreshold, long openMillis) {
+        this.host = host;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+    
+    /**
+     * 获取域名对应的熔断器
+     * @param host 请求域名
+     * @return 熔断器
+     */
+    public static CircuitBreaker forHost(String host) {
+        String key = host == null ? "" : host;
+        CircuitBreaker breaker = BREAKERS.get(key);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(key, FAILURE_THRESHOLD, OPEN_MILLIS);
+            CircuitBreaker existing = BREAKERS.putIfAbsent(key, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+    
+    /**
+     * 请求前检查是否允许发送
+     * @throws CircuitBreakerOpenException 熔断中
+     */
+    public synchronized void acquirePermission() throws CircuitBreakerOpenException {
+        switch (state) {
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openMillis) {
+                    throw new CircuitBreakerOpenException(host);
+                }
+                //熔断时间结束，当前请求作为试探请求
+                state = State.HALF_OPEN;
+                break;
+            case HALF_OPEN:
+                //试探请求还没有结果
+                throw new CircuitBreakerOpenException(host);
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * 请求成功
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("{} 熔断恢复", host);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+    
+    /**
+     * 请求失败(读写异常、5xx、429)
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            log.warn("{} 连续失败 {} 次，熔断 {} ms", host, consecutiveFailures, openMillis);
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+    
+    /**
+     * 请求未完成就被中断，试探请求被中断时允许下一个请求继续试探
+     */
+    public synchronized void onAbort() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = 0;
+        }
+    }
+    
+}
@@ -0,0 +1,16 @@
+package net.polyv.common.v1.base;
+
+import java.io.IOException;
+
+/**
+ * 域名处于熔断状态，请求未发送直接失败
+ * @author: sadboy
+ **/
+public class CircuitBreakerOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+    
+    public CircuitBreakerOpenException(String host) {
+        super("circuit breaker open for host: " + host);
+    }
+    
+}
@@ -0,0 +1,162 @@
+package net.polyv.common.v1.base;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个域名+接口的请求指标：延迟直方图、状态码计数、传输字节数、进行中请求数
+ * @author: sadboy
+ **/
+public class EndpointMetrics implements EndpointMetricsMXBean {
+    private final String host;
+    private final String endpoint;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final SlidingLatencyHistogram hostLatency;
+    private final ConcurrentMap<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    
+    public EndpointMetrics(String host, String endpoint) {
+        this.host = host;
+        this.endpoint = endpoint;
+        this.hostLatency = HttpMetrics.hostLatency(host);
+    }
+    
+    /**
+     * 请求开始
+     * @param bytes 请求体长度，未知时小于0
+     */
+    public void onStart(long bytes) {
+        inFlight.incrementAndGet();
+        if (bytes > 0) {
+            requestBytes.add(bytes);
+        }
+    }
+    
+    /**
+     * 收到响应
+     * @param micros 耗时，单位微秒
+     * @param statusCode 状态码
+     * @param bytes 响应体长度，未知时小于0
+     */
+    public void onResponse(long micros, int statusCode, long bytes) {
+        inFlight.decrementAndGet();
+        latency.record(micros);
+        hostLatency.record(micros);
+        statusCounts.computeIfAbsent(statusCode, key -> new LongAdder()).increment();
+        if (bytes > 0) {
+            responseBytes.add(bytes);
+        }
+    }
+    
+    /**
+     * 请求异常
+     * @param micros 耗时，单位微秒
+     * @param throwable 异常
+     */
+    public void onError(long micros, Throwable throwable) {
+        inFlight.decrementAndGet();
+        latency.record(micros);
+        errorCounts.computeIfAbsent(throwable.getClass().getSimpleName(), key -> new LongAdder()).increment();
+    }
+    
+    /**
+     * 请求被调用方取消，如对冲探测中落后的请求，不计入延迟和异常
+     */
+    public void onCancel() {
+        inFlight.decrementAndGet();
+    }
+    
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+    
+    @Override
+    public String getHost() {
+        return host;
+    }
+    
+    @Override
+    public String getEndpoint() {
+        return endpoint;
+    }
+    
+    @Override
+    public long getRequestCount() {
+        return latency.getCount();
+    }
+    
+    @Override
+    public long getErrorCount() {
+        long total = 0;
+        for (LongAdder adder : errorCounts.values()) {
+            total += adder.sum();
+        }
+        return total;
+    }
+    
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    @Override
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+    
+    @Override
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+    
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.quantileMicros(0.5) / 1000.0;
+    }
+    
+    @Override
+    public double getLatencyP90Millis() {
+        return latency.quantileMicros(0.9) / 1000.0;
+    }
+    
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.quantileMicros(0.99) / 1000.0;
+    }
+    
+    @Override
+    public double getLatencyP999Millis() {
+        return latency.quantileMicros(0.999) / 1000.0;
+    }
+    
+    @Override
+    public double getLatencyMaxMillis() {
+        return latency.getMaxMicros() / 1000.0;
+    }
+    
+    @Override
+    public Map<String, Long> getStatusCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : statusCounts.entrySet()) {
+            result.put(String.valueOf(entry.getKey()), entry.getValue().sum());
+        }
+        return result;
+    }
+    
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : errorCounts.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+    
+}
@@ -0,0 +1,45 @@
+package net.polyv.common.v1.base;
+
+import java.util.Map;
+
+/**
+ * 单个域名+接口的请求指标，通过JMX查看
+ * @author: sadboy
+ **/
+public interface EndpointMetricsMXBean {
+    
+    String getHost();
+    
+    String getEndpoint();
+    
+    long getRequestCount();
+    
+    long getErrorCount();
+    
+    int getInFlight();
+    
+    long getRequestBytes();
+    
+    long getResponseBytes();
+    
+    double getLatencyP50Millis();
+    
+    double getLatencyP90Millis();
+    
+    double getLatencyP99Millis();
+    
+    double getLatencyP999Millis();
+    
+    double getLatencyMaxMillis();
+    
+    /**
+     * @return 状态码 -> 次数
+     */
+    Map<String, Long> getStatusCounts();
+    
+    /**
+     * @return 异常类型 -> 次数
+     */
+    Map<String, Long> getErrorCounts();
+    
+}
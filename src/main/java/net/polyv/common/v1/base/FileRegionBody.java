@@ -0,0 +1,109 @@
+package net.polyv.common.v1.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+/**
+ * 文件中的一段内容，作为multipart的文件部分上传
+ * 发送时从文件直接读取，不会把整段内容读入内存
+ * @author: sadboy
+ **/
+public class FileRegionBody extends AbstractContentBody {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final File file;
+    private final long offset;
+    private final long length;
+    private final String filename;
+    
+    /**
+     * @param file 文件
+     * @param offset 起始位置
+     * @param length 长度
+     * @param filename multipart中的文件名
+     */
+    public FileRegionBody(File file, long offset, long length, String filename) {
+        super(ContentType.DEFAULT_BINARY);
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.filename = filename;
+    }
+    
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long written = 0;
+            while (written < length) {
+                long transferred = channel.transferTo(offset + written, length - written, target);
+                if (transferred <= 0) {
+                    throw new IOException("文件 " + file + " 在上传过程中被截断");
+                }
+                written += transferred;
+            }
+        }
+        outputStream.flush();
+    }
+    
+    /**
+     * @return 该段内容的MD5，十六进制小写
+     * @throws IOException 读取文件异常
+     */
+    public String md5Hex() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("文件 " + file + " 长度不足");
+                }
+                buffer.flip();
+                digest.update(buffer);
+                position += read;
+            }
+        }
+        StringBuilder hex = new StringBuilder(32);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+    
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+    
+    @Override
+    public String getTransferEncoding() {
+        return "binary";
+    }
+    
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+    
+}
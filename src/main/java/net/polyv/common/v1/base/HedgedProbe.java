@@ -0,0 +1,231 @@
+package net.polyv.common.v1.base;
+
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 对冲探测：请求超过该域名实时分位延迟仍未返回时，在异步连接池的另一个连接上再发一个相同请求，
+ * 先成功返回的结果生效，另一个请求取消；整体超过截止时间时以SocketTimeoutException结束
+ * 对冲请求数受预算限制，每个探测增加budgetRatio的额度，每次对冲消耗1，CDN整体变慢时不会把请求量翻倍
+ * 两个请求都经过HttpUtil的异步请求，与同步请求共用按域名的熔断、并发限制和重试预算；被取消的请求不计入异常和延迟
+ * 可通过系统属性调整：
+ * -Dhttp.hedge.quantile 对冲延迟取的分位，默认0.95
+ * -Dhttp.hedge.minSamples 接口样本数不足时使用默认对冲延迟 -Dhttp.hedge.defaultDelayMillis
+ * -Dhttp.hedge.minDelayMillis 对冲延迟下限，避免延迟很低时几乎每个请求都对冲
+ * -Dhttp.hedge.budgetRatio 每个探测增加的对冲额度，0.05表示对冲请求最多约占5%
+ * 统计注册为JMX MBean(net.polyv:type=HedgedProbe)，并随HttpMetrics导出
+ * @author: sadboy
+ **/
+@Slf4j
+class HedgedProbe implements HedgedProbeMXBean {
+    static final HedgedProbe INSTANCE = new HedgedProbe(
+            Double.parseDouble(System.getProperty("http.hedge.quantile", "0.95")),
+            Integer.getInteger("http.hedge.minSamples", 100),
+            Long.getLong("http.hedge.defaultDelayMillis", 500L),
+            Long.getLong("http.hedge.minDelayMillis", 20L),
+            Double.parseDouble(System.getProperty("http.hedge.budgetRatio", "0.05")), 10);
+    
+    private final double quantile;
+    private final int minSamples;
+    private final long defaultDelayMillis;
+    private final long minDelayMillis;
+    private final double budgetRatio;
+    private final double maxBudget;
+    /**
+     * 剩余对冲额度，每次对冲消耗1
+     */
+    private double budget;
+    private final LongAdder probeCount = new LongAdder();
+    private final LongAdder hedgeFiredCount = new LongAdder();
+    private final LongAdder hedgeWonCount = new LongAdder();
+    private final LongAdder budgetExhaustedCount = new LongAdder();
+    private final LongAdder deadlineExceededCount = new LongAdder();
+    private volatile ScheduledExecutorService timer;
+    
+    HedgedProbe(double quantile, int minSamples, long defaultDelayMillis, long minDelayMillis, double budgetRatio,
+            double initialBudget) {
+        this.quantile = quantile;
+        this.minSamples = minSamples;
+        this.defaultDelayMillis = defaultDelayMillis;
+        this.minDelayMillis = minDelayMillis;
+        this.budgetRatio = budgetRatio;
+        this.maxBudget = Math.max(initialBudget, 100);
+        this.budget = initialBudget;
+    }
+    
+    /**
+     * 对冲探测网址的状态码
+     * @param url 请求地址
+     * @param headMap 额外的请求头
+     * @param deadlineMillis 整体截止时间
+     * @return 状态码及ETag、Last-Modified响应头，取消时同时取消进行中的请求
+     */
+    CompletableFuture<ProbeResult> probe(final String url, final Map<String, String> headMap,
+            final long deadlineMillis) {
+        probeCount.increment();
+        onProbe();
+        final CompletableFuture<ProbeResult> result = new CompletableFuture<>();
+        //进行中的请求数，全部失败时才以最后一个异常结束
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicReference<CompletableFuture<ProbeResult>> hedgeRef = new AtomicReference<>();
+        final CompletableFuture<ProbeResult> primary = HttpUtil.probeAsync(url, headMap);
+        ScheduledExecutorService timer = getTimer();
+        long hedgeDelayMillis = hedgeDelayMillis(url);
+        final ScheduledFuture<?> hedgeTimer = hedgeDelayMillis < deadlineMillis ? timer.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (!tryHedge()) {
+                budgetExhaustedCount.increment();
+                return;
+            }
+            hedgeFiredCount.increment();
+            pending.incrementAndGet();
+            CompletableFuture<ProbeResult> hedge = HttpUtil.probeAsync(url, headMap);
+            hedgeRef.set(hedge);
+            hedge.whenComplete((probeResult, throwable) -> complete(result, pending, probeResult, throwable, true));
+            if (result.isDone()) {
+                hedge.cancel(false);
+            }
+        }, hedgeDelayMillis, TimeUnit.MILLISECONDS) : null;
+        final ScheduledFuture<?> deadlineTimer = timer.schedule(() -> {
+            if (result.completeExceptionally(new SocketTimeoutException(
+                    "探测超过截止时间 " + deadlineMillis + "ms：" + url))) {
+                deadlineExceededCount.increment();
+            }
+        }, deadlineMillis, TimeUnit.MILLISECONDS);
+        primary.whenComplete((probeResult, throwable) -> complete(result, pending, probeResult, throwable, false));
+        result.whenComplete((probeResult, throwable) -> {
+            //结果已确定，取消计时和仍在进行的请求
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+            deadlineTimer.cancel(false);
+            primary.cancel(false);
+            CompletableFuture<ProbeResult> hedge = hedgeRef.get();
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+        });
+        return result;
+    }
+    
+    private void complete(CompletableFuture<ProbeResult> result, AtomicInteger pending, ProbeResult probeResult,
+            Throwable throwable, boolean hedge) {
+        int remaining = pending.decrementAndGet();
+        if (throwable == null) {
+            if (!hedge) {
+                result.complete(probeResult);
+            } else {
+                //先计数再完成，调用方拿到结果时计数已经可见，没有完成结果时撤回
+                hedgeWonCount.increment();
+                if (!result.complete(probeResult)) {
+                    hedgeWonCount.decrement();
+                }
+            }
+        } else if (remaining == 0) {
+            result.completeExceptionally(throwable);
+        }
+    }
+    
+    /**
+     * 对冲延迟取该域名的实时分位延迟，样本不足时使用默认值
+     * 封面地址各不相同，按接口统计时每个地址都没有样本，所以按域名统计；
+     * 只取最近一个窗口的样本，常驻进程中随CDN状况变化，不会停留在启动以来的累计分位
+     */
+    long hedgeDelayMillis(String url) {
+        SlidingLatencyHistogram latency;
+        try {
+            latency = HttpMetrics.hostLatency(URI.create(url).getHost());
+        } catch (IllegalArgumentException e) {
+            return defaultDelayMillis;
+        }
+        if (latency.getCount() < minSamples) {
+            return defaultDelayMillis;
+        }
+        return Math.max(minDelayMillis, TimeUnit.MICROSECONDS.toMillis(latency.quantileMicros(quantile)));
+    }
+    
+    private synchronized void onProbe() {
+        budget = Math.min(maxBudget, budget + budgetRatio);
+    }
+    
+    private synchronized boolean tryHedge() {
+        if (budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+    
+    private ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            synchronized (this) {
+                if (timer == null) {
+                    timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "http-hedge-timer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    registerMBean();
+                }
+            }
+        }
+        return timer;
+    }
+    
+    private void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("net.polyv:type=HedgedProbe"));
+        } catch (JMException e) {
+            log.warn("注册对冲探测MBean失败：{}", e.getMessage());
+        }
+    }
+    
+    @Override
+    public long getProbeCount() {
+        return probeCount.sum();
+    }
+    
+    @Override
+    public long getHedgeFiredCount() {
+        return hedgeFiredCount.sum();
+    }
+    
+    @Override
+    public long getHedgeWonCount() {
+        return hedgeWonCount.sum();
+    }
+    
+    @Override
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.sum();
+    }
+    
+    @Override
+    public long getDeadlineExceededCount() {
+        return deadlineExceededCount.sum();
+    }
+    
+    @Override
+    public synchronized double getBudget() {
+        return budget;
+    }
+    
+}
@@ -0,0 +1,39 @@
+package net.polyv.common.v1.base;
+
+/**
+ * 对冲探测统计，通过JMX查看
+ * @author: sadboy
+ **/
+public interface HedgedProbeMXBean {
+    
+    /**
+     * @return 对冲探测次数
+     */
+    long getProbeCount();
+    
+    /**
+     * @return 发出对冲请求的次数
+     */
+    long getHedgeFiredCount();
+    
+    /**
+     * @return 对冲请求先返回的次数
+     */
+    long getHedgeWonCount();
+    
+    /**
+     * @return 到达对冲时间但预算不足、没有发出对冲请求的次数
+     */
+    long getBudgetExhaustedCount();
+    
+    /**
+     * @return 超过截止时间的次数
+     */
+    long getDeadlineExceededCount();
+    
+    /**
+     * @return 剩余对冲预算
+     */
+    double getBudget();
+    
+}
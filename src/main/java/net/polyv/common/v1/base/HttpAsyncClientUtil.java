@@ -0,0 +1,120 @@
+package net.polyv.common.v1.base;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于NIO的异步HTTP客户端，少量IO线程即可承载大量并发请求
+ * 连接池参数可通过 -Dhttp.async.maxTotal、-Dhttp.async.maxPerRoute、-Dhttp.async.ioThreads 调整
+ * 与HttpClientProfile的同步客户端共用带缓存的DNS解析和SSLContext
+ * @author: sadboy
+ **/
+@Slf4j
+public class HttpAsyncClientUtil {
+    private static final int MAX_TOTAL = Integer.getInteger("http.async.maxTotal", 2000);
+    private static final int MAX_PER_ROUTE = Integer.getInteger("http.async.maxPerRoute", 500);
+    private static final int IO_THREADS = Integer.getInteger("http.async.ioThreads",
+            Runtime.getRuntime().availableProcessors());
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int SOCKET_TIMEOUT = 20000;
+    
+    private static volatile CloseableHttpAsyncClient httpAsyncClient;
+    
+    private HttpAsyncClientUtil() {
+    }
+    
+    /**
+     * 获取已启动的异步HTTP客户端，首次调用时创建
+     * @return 异步HTTP客户端
+     */
+    public static CloseableHttpAsyncClient getHttpAsyncClient() {
+        if (httpAsyncClient == null) {
+            synchronized (HttpAsyncClientUtil.class) {
+                if (httpAsyncClient == null) {
+                    httpAsyncClient = createHttpAsyncClient();
+                    Runtime.getRuntime().addShutdownHook(new Thread(HttpAsyncClientUtil::close, "http-async-close"));
+                }
+            }
+        }
+        return httpAsyncClient;
+    }
+    
+    /**
+     * 关闭异步HTTP客户端，释放IO线程和连接
+     */
+    public static void close() {
+        synchronized (HttpAsyncClientUtil.class) {
+            if (httpAsyncClient != null) {
+                try {
+                    httpAsyncClient.close();
+                } catch (IOException ex) {
+                    log.error(ex.getMessage(), ex);
+                }
+                httpAsyncClient = null;
+            }
+        }
+    }
+    
+    private static CloseableHttpAsyncClient createHttpAsyncClient() {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(IO_THREADS)
+                .setConnectTimeout(CONNECT_TIMEOUT)
+                .setSoTimeout(SOCKET_TIMEOUT)
+                .build();
+        PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", new SSLIOSessionStrategy(HttpClientProfile.sslContext()))
+                    .build();
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig),
+                    null, registry, CachingDnsResolver.INSTANCE);
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("create http async io reactor failed", e);
+        }
+        connectionManager.setMaxTotal(MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT)
+                .setSocketTimeout(SOCKET_TIMEOUT)
+                .setConnectionRequestTimeout(CONNECT_TIMEOUT)
+                .build();
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setDefaultHeaders(sdkHeaders())
+                .build();
+        client.start();
+        return client;
+    }
+    
+    /**
+     * SDK请求头，与同步客户端保持一致，HttpClientProfile也使用
+     */
+    static List<Header> sdkHeaders() {
+        List<Header> headers = new ArrayList<>();
+        headers.add(new BasicHeader(HttpUtil.SOURCE, "java-sdk"));
+        headers.add(new BasicHeader(HttpUtil.VERSION, HttpUtil.CURRENT_VERSION));
+        headers.add(new BasicHeader(HttpUtil.USER_AGENT, "java-sdk/" + HttpUtil.CURRENT_VERSION));
+        return headers;
+    }
+    
+}
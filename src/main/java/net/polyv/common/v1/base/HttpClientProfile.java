@@ -0,0 +1,219 @@
+package net.polyv.common.v1.base;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.ssl.SSLContexts;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按流量类型区分的HTTP客户端，各自使用独立的连接池和超时，慢速的图片探测不会占满API请求的连接
+ * 参数可通过系统属性调整，属性名为 http.{api|cdn|upload}. 加字段名，如：
+ * -Dhttp.cdn.maxTotal、-Dhttp.cdn.maxPerRoute、-Dhttp.cdn.connectTimeout、-Dhttp.cdn.socketTimeout、
+ * -Dhttp.cdn.connectionRequestTimeout、-Dhttp.cdn.keepAliveMillis
+ * 所有客户端共用带缓存的DNS解析和同一个SSLContext，TLS会话可以跨连接复用；-Dhttp.profiles=false 时退回SDK的HttpClientUtil
+ * @author: sadboy
+ **/
+@Slf4j
+public enum HttpClientProfile implements HttpClientProfileMXBean {
+    /**
+     * 保利威API，请求量小，需要较长的读超时
+     */
+    API(200, 64, 5000, 20000, 5000, 60000),
+    /**
+     * 图片CDN、播放器等静态资源，请求量大、响应快，超时较短以便重试
+     */
+    CDN(1000, 512, 3000, 10000, 3000, 30000),
+    /**
+     * 文件上传，单个请求耗时长，连接数少
+     */
+    UPLOAD(32, 16, 10000, 120000, 30000, 60000);
+    
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("http.profiles"));
+    private static final SSLContext SSL_CONTEXT = createSslContext();
+    
+    private final int maxTotal;
+    private final int maxPerRoute;
+    private final int connectTimeout;
+    private final int socketTimeout;
+    private final int connectionRequestTimeout;
+    private final long keepAliveMillis;
+    private volatile PoolingHttpClientConnectionManager connectionManager;
+    private volatile CloseableHttpClient httpClient;
+    
+    HttpClientProfile(int maxTotal, int maxPerRoute, int connectTimeout, int socketTimeout,
+            int connectionRequestTimeout, int keepAliveMillis) {
+        String prefix = "http." + name().toLowerCase(Locale.ROOT) + ".";
+        this.maxTotal = Integer.getInteger(prefix + "maxTotal", maxTotal);
+        this.maxPerRoute = Integer.getInteger(prefix + "maxPerRoute", maxPerRoute);
+        this.connectTimeout = Integer.getInteger(prefix + "connectTimeout", connectTimeout);
+        this.socketTimeout = Integer.getInteger(prefix + "socketTimeout", socketTimeout);
+        this.connectionRequestTimeout = Integer.getInteger(prefix + "connectionRequestTimeout",
+                connectionRequestTimeout);
+        this.keepAliveMillis = Integer.getInteger(prefix + "keepAliveMillis", keepAliveMillis);
+    }
+    
+    /**
+     * 按请求地址选择客户端，api.开头的域名使用API，其他使用CDN，与AdaptiveConcurrencyLimiter的划分一致
+     * @param url 请求地址
+     * @return 客户端类型
+     */
+    public static HttpClientProfile forUrl(String url) {
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return API;
+        }
+        return host != null && !host.startsWith("api.") ? CDN : API;
+    }
+    
+    /**
+     * 获取该类型的HTTP客户端，首次调用时创建
+     * @return HTTP客户端
+     */
+    public CloseableHttpClient getHttpClient() {
+        if (!ENABLED) {
+            return HttpClientUtil.getHttpClient();
+        }
+        if (httpClient == null) {
+            synchronized (this) {
+                if (httpClient == null) {
+                    httpClient = createHttpClient();
+                    registerMBean();
+                }
+            }
+        }
+        return httpClient;
+    }
+    
+    /**
+     * @return 客户端是否已创建，未创建时连接池状态全部为0
+     */
+    public boolean isCreated() {
+        return connectionManager != null;
+    }
+    
+    /**
+     * @return 连接池整体状态，客户端未创建时返回null
+     */
+    public PoolStats getPoolStats() {
+        PoolingHttpClientConnectionManager manager = connectionManager;
+        return manager == null ? null : manager.getTotalStats();
+    }
+    
+    @Override
+    public int getLeased() {
+        PoolStats stats = getPoolStats();
+        return stats == null ? 0 : stats.getLeased();
+    }
+    
+    @Override
+    public int getAvailable() {
+        PoolStats stats = getPoolStats();
+        return stats == null ? 0 : stats.getAvailable();
+    }
+    
+    @Override
+    public int getPending() {
+        PoolStats stats = getPoolStats();
+        return stats == null ? 0 : stats.getPending();
+    }
+    
+    @Override
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+    
+    @Override
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+    
+    private CloseableHttpClient createHttpClient() {
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(SSL_CONTEXT))
+                .build();
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry, null, null,
+                CachingDnsResolver.INSTANCE, keepAliveMillis, TimeUnit.MILLISECONDS);
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        //空闲超过2秒的连接取出时先检查是否已被服务端关闭
+        manager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .build();
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(manager)
+                .setDefaultRequestConfig(requestConfig)
+                .setDefaultHeaders(HttpAsyncClientUtil.sdkHeaders())
+                .setKeepAliveStrategy(keepAliveStrategy())
+                //只由RetryPolicy重试，重试计入重试预算、熔断和并发限制
+                .disableAutomaticRetries()
+                //连接不绑定TLS客户端身份，任意线程都可以复用
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .build();
+        connectionManager = manager;
+        log.info("创建HTTP客户端 {}，maxTotal={}，maxPerRoute={}，connectTimeout={}，socketTimeout={}", name(), maxTotal,
+                maxPerRoute, connectTimeout, socketTimeout);
+        return client;
+    }
+    
+    /**
+     * 服务端返回Keep-Alive超时时取两者较小值，否则使用该类型的默认保活时间
+     */
+    private ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+    }
+    
+    private void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("net.polyv:type=HttpClientPool,profile=" + name()));
+        } catch (JMException e) {
+            log.warn("注册HTTP连接池MBean失败：{}", e.getMessage());
+        }
+    }
+    
+    /**
+     * @return 所有客户端共用的SSLContext，异步客户端也使用，TLS会话可以与同步客户端共享
+     */
+    static SSLContext sslContext() {
+        return SSL_CONTEXT;
+    }
+    
+    private static SSLContext createSslContext() {
+        SSLContext sslContext = SSLContexts.createDefault();
+        sslContext.getClientSessionContext().setSessionCacheSize(Integer.getInteger("http.tls.sessionCacheSize", 10000));
+        sslContext.getClientSessionContext().setSessionTimeout(Integer.getInteger("http.tls.sessionTimeoutSeconds", 3600));
+        return sslContext;
+    }
+    
+}
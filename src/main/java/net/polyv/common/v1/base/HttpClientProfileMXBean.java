@@ -0,0 +1,28 @@
+package net.polyv.common.v1.base;
+
+/**
+ * HTTP客户端连接池状态，通过JMX查看
+ * @author: sadboy
+ **/
+public interface HttpClientProfileMXBean {
+    
+    /**
+     * @return 正在使用的连接数
+     */
+    int getLeased();
+    
+    /**
+     * @return 空闲可复用的连接数
+     */
+    int getAvailable();
+    
+    /**
+     * @return 等待获取连接的请求数，持续大于0说明连接池偏小
+     */
+    int getPending();
+    
+    int getMaxTotal();
+    
+    int getMaxPerRoute();
+    
+}
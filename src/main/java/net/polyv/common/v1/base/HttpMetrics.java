@@ -0,0 +1,249 @@
+package net.polyv.common.v1.base;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * HTTP请求指标汇总，按 域名+接口 分别统计
+ * 接口路径中的视频id等变化部分替换为{id}，避免指标数量随视频数增长
+ * 每个接口的指标注册为JMX MBean(net.polyv:type=HttpMetrics)，也可以定期导出Prometheus文本格式文件
+ * @author: sadboy
+ **/
+@Slf4j
+public class HttpMetrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.95, 0.99, 0.999};
+    private static final ConcurrentMap<String, EndpointMetrics> ENDPOINTS = new ConcurrentHashMap<>();
+    /**
+     * 按域名汇总的最近一段时间的响应延迟，封面等路径各不相同的资源按域名取实时延迟分位
+     * 窗口可通过 -Dhttp.metrics.hostWindowSeconds 调整
+     */
+    private static final ConcurrentMap<String, SlidingLatencyHistogram> HOST_LATENCY = new ConcurrentHashMap<>();
+    private static final long HOST_WINDOW_MILLIS = TimeUnit.SECONDS.toMillis(
+            Long.getLong("http.metrics.hostWindowSeconds", 60L));
+    private static volatile ScheduledExecutorService dumpExecutor;
+    
+    private HttpMetrics() {
+    }
+    
+    /**
+     * 获取请求地址对应的接口指标，首次出现时注册JMX
+     * @param uri 请求地址
+     * @return 接口指标
+     */
+    public static EndpointMetrics forUri(URI uri) {
+        String host = uri.getHost() == null ? "" : uri.getHost();
+        String endpoint = normalizePath(uri.getPath());
+        String key = host + endpoint;
+        EndpointMetrics metrics = ENDPOINTS.get(key);
+        if (metrics == null) {
+            metrics = new EndpointMetrics(host, endpoint);
+            EndpointMetrics existing = ENDPOINTS.putIfAbsent(key, metrics);
+            if (existing != null) {
+                return existing;
+            }
+            registerMBean(metrics);
+        }
+        return metrics;
+    }
+    
+    /**
+     * 获取域名下所有接口最近一段时间收到响应的延迟，不含异常和取消的请求
+     * @param host 请求域名
+     * @return 滑动窗口延迟直方图
+     */
+    public static SlidingLatencyHistogram hostLatency(String host) {
+        return HOST_LATENCY.computeIfAbsent(host == null ? "" : host,
+                key -> new SlidingLatencyHistogram(HOST_WINDOW_MILLIS, 6));
+    }
+    
+    /**
+     * 把路径中的id替换为{id}：纯数字，或长度超过16且含数字的片段，保留扩展名
+     * 如 /videojson/1b448be3239be11b5a206f26e3baa988_1.js -> /videojson/{id}.js
+     */
+    static String normalizePath(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        String[] segments = path.split("/", -1);
+        StringBuilder result = new StringBuilder(path.length());
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                result.append('/');
+            }
+            String segment = segments[i];
+            int dot = segment.lastIndexOf('.');
+            String name = dot > 0 ? segment.substring(0, dot) : segment;
+            if (isId(name)) {
+                result.append("{id}").append(dot > 0 ? segment.substring(dot) : "");
+            } else {
+                result.append(segment);
+            }
+        }
+        return result.toString();
+    }
+    
+    private static boolean isId(String name) {
+        boolean hasDigit = false;
+        boolean allDigit = true;
+        for (int i = 0; i < name.length(); i++) {
+            boolean digit = Character.isDigit(name.charAt(i));
+            hasDigit |= digit;
+            allDigit &= digit;
+        }
+        return hasDigit && (allDigit || name.length() > 16);
+    }
+    
+    private static void registerMBean(EndpointMetrics metrics) {
+        try {
+            ObjectName objectName = new ObjectName("net.polyv:type=HttpMetrics,host=" + ObjectName.quote(metrics.getHost())
+                    + ",endpoint=" + ObjectName.quote(metrics.getEndpoint()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+        } catch (JMException e) {
+            log.warn("注册HTTP指标MBean失败：{}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 定期把指标以Prometheus文本格式写入文件，可以交给node_exporter textfile collector采集
+     * @param path 输出文件
+     * @param periodSeconds 导出间隔，单位秒
+     */
+    public static synchronized void startPrometheusDump(final Path path, long periodSeconds) {
+        if (dumpExecutor != null) {
+            return;
+        }
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                writePrometheus(path);
+            } catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * 把当前指标以Prometheus文本格式写入文件，先写临时文件再替换
+     * @param path 输出文件
+     * @throws IOException 读写异常
+     */
+    public static void writePrometheus(Path path) throws IOException {
+        Path absolutePath = path.toAbsolutePath();
+        Path parent = absolutePath.getParent() == null ? Paths.get(".") : absolutePath.getParent();
+        Path tempPath = Files.createTempFile(parent, absolutePath.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            writePrometheus(writer);
+        }
+        Files.move(tempPath, absolutePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * 以Prometheus文本格式输出当前指标
+     * @param writer 输出
+     * @throws IOException 读写异常
+     */
+    public static void writePrometheus(Writer writer) throws IOException {
+        List<EndpointMetrics> snapshot = new ArrayList<>(ENDPOINTS.values());
+        writer.write("# TYPE polyv_http_request_duration_seconds summary\n");
+        for (EndpointMetrics metrics : snapshot) {
+            String labels = labels(metrics);
+            LatencyHistogram latency = metrics.getLatency();
+            for (double quantile : QUANTILES) {
+                writer.write("polyv_http_request_duration_seconds{" + labels + ",quantile=\"" + quantile + "\"} "
+                        + seconds(latency.quantileMicros(quantile)) + "\n");
+            }
+            writer.write("polyv_http_request_duration_seconds_sum{" + labels + "} " + seconds(latency.getSumMicros())
+                    + "\n");
+            writer.write("polyv_http_request_duration_seconds_count{" + labels + "} " + latency.getCount() + "\n");
+        }
+        writer.write("# TYPE polyv_http_responses_total counter\n");
+        for (EndpointMetrics metrics : snapshot) {
+            for (Map.Entry<String, Long> entry : metrics.getStatusCounts().entrySet()) {
+                writer.write("polyv_http_responses_total{" + labels(metrics) + ",code=\"" + entry.getKey() + "\"} "
+                        + entry.getValue() + "\n");
+            }
+        }
+        writer.write("# TYPE polyv_http_errors_total counter\n");
+        for (EndpointMetrics metrics : snapshot) {
+            for (Map.Entry<String, Long> entry : metrics.getErrorCounts().entrySet()) {
+                writer.write("polyv_http_errors_total{" + labels(metrics) + ",type=\"" + entry.getKey() + "\"} "
+                        + entry.getValue() + "\n");
+            }
+        }
+        writer.write("# TYPE polyv_http_request_bytes_total counter\n");
+        for (EndpointMetrics metrics : snapshot) {
+            writer.write("polyv_http_request_bytes_total{" + labels(metrics) + "} " + metrics.getRequestBytes() + "\n");
+        }
+        writer.write("# TYPE polyv_http_response_bytes_total counter\n");
+        for (EndpointMetrics metrics : snapshot) {
+            writer.write("polyv_http_response_bytes_total{" + labels(metrics) + "} " + metrics.getResponseBytes()
+                    + "\n");
+        }
+        writer.write("# TYPE polyv_http_in_flight_requests gauge\n");
+        for (EndpointMetrics metrics : snapshot) {
+            writer.write("polyv_http_in_flight_requests{" + labels(metrics) + "} " + metrics.getInFlight() + "\n");
+        }
+        writer.write("# TYPE polyv_http_pool_connections gauge\n");
+        for (HttpClientProfile profile : HttpClientProfile.values()) {
+            if (!profile.isCreated()) {
+                continue;
+            }
+            String labels = "profile=\"" + profile.name().toLowerCase(Locale.ROOT) + "\"";
+            writer.write("polyv_http_pool_connections{" + labels + ",state=\"leased\"} " + profile.getLeased() + "\n");
+            writer.write("polyv_http_pool_connections{" + labels + ",state=\"available\"} " + profile.getAvailable()
+                    + "\n");
+            writer.write("polyv_http_pool_connections{" + labels + ",state=\"pending\"} " + profile.getPending() + "\n");
+            writer.write("polyv_http_pool_connections{" + labels + ",state=\"max\"} " + profile.getMaxTotal() + "\n");
+        }
+        HedgedProbe hedgedProbe = HedgedProbe.INSTANCE;
+        if (hedgedProbe.getProbeCount() > 0) {
+            writer.write("# TYPE polyv_http_hedged_probes_total counter\n");
+            writer.write("polyv_http_hedged_probes_total " + hedgedProbe.getProbeCount() + "\n");
+            writer.write("# TYPE polyv_http_hedges_total counter\n");
+            writer.write("polyv_http_hedges_total{result=\"fired\"} " + hedgedProbe.getHedgeFiredCount() + "\n");
+            writer.write("polyv_http_hedges_total{result=\"won\"} " + hedgedProbe.getHedgeWonCount() + "\n");
+            writer.write("polyv_http_hedges_total{result=\"budget_exhausted\"} "
+                    + hedgedProbe.getBudgetExhaustedCount() + "\n");
+            writer.write("# TYPE polyv_http_probe_deadline_exceeded_total counter\n");
+            writer.write("polyv_http_probe_deadline_exceeded_total " + hedgedProbe.getDeadlineExceededCount() + "\n");
+        }
+    }
+    
+    private static String labels(EndpointMetrics metrics) {
+        return "host=\"" + escape(metrics.getHost()) + "\",endpoint=\"" + escape(metrics.getEndpoint()) + "\"";
+    }
+    
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+    
+    private static double seconds(long micros) {
+        return micros / 1000000.0;
+    }
+    
+}
@@ -2,22 +2,50 @@ package net.polyv.common.v1.base;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
@@ -31,7 +59,6 @@ import com.alibaba.fastjson.JSONObject;
 
 import lombok.extern.slf4j.Slf4j;
 import net.polyv.common.v1.base.DataParse;
-import net.polyv.common.v1.base.HttpClientUtil;
 import net.polyv.common.v1.constant.Constant;
 import net.polyv.common.v1.exception.PloyvSdkException;
 import net.polyv.common.v1.util.MapUtil;
@@ -50,6 +77,10 @@ public class HttpUtil {
     public static final String USER_ID_NAME = "java-sdk-user-id";
     public static final String CURRENT_VERSION = "1.1.12";
     private static final String UTF8 = Constant.UTF8;
+    /**
+     * 流式下载的缓冲区大小
+     */
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
     
     private HttpUtil() {
     }
@@ -114,6 +145,18 @@ public class HttpUtil {
     }
     
     
+    /**
+     * 向url发送get请求，由调用方直接处理响应实体，适合流式读取响应内容
+     * @param url 请求url
+     * @param headMap 请求头
+     * @param dataParse 返回数据反序列化逻辑实现类
+     * @return dataParse处理后的结果
+     * @throws IOException 读写异常
+     */
+    public static <T> T get(String url, Map<String, String> headMap, DataParse<T> dataParse) throws IOException {
+        return get(url, headMap, UTF8, dataParse);
+    }
+    
     /**
      * HTTP GET 内部公共请求处理逻辑
      * @param url 请求地址
@@ -126,8 +169,8 @@ public class HttpUtil {
         log.debug("http 请求 url: {}", url);
         T result = null;
         PloyvSdkException ployvSdkException = null;
-        // 创建httpclient对象
-        CloseableHttpClient httpClient = HttpClientUtil.getHttpClient();
+        // 按域名选择API或CDN连接池
+        CloseableHttpClient httpClient = HttpClientProfile.forUrl(url).getHttpClient();
         // 创建get方式请求对象
         HttpGet httpGet = new HttpGet(url);
         httpGet.addHeader(Constant.CONTENT_TYPE, Constant.APPLICATION_JSON);
@@ -147,18 +190,7 @@ public class HttpUtil {
             if (!(result instanceof byte[])) {
                 log.debug("http 请求结果: {}", result);
             }else{
-                //返回文件时，参数验证错误处理逻辑
-                Header[] headers = response.getHeaders(Constant.CONTENT_TYPE);
-                for (Header responseHead : headers) {
-                    String headStr = responseHead.getValue();
-                    if (headStr.startsWith("application/json")) {
-                        String json = new String((byte[]) result, Constant.UTF8);
-                        JSONObject jsonObject = JSON.parseObject(json);
-                        String message = jsonObject.getString("message");
-                        Integer code = jsonObject.getInteger("code");
-                        ployvSdkException =  new PloyvSdkException(code, message);
-                    }
-                }
+                ployvSdkException = parseBinaryError(response, (byte[]) result);
             }
         }
         try {
@@ -175,34 +207,295 @@ public class HttpUtil {
     }
     
     /**
-     * 返回网址的状态码
-     * @param url
-     * @param <T>
-     * @return
-     * @throws IOException
+     * 返回文件时，参数验证错误处理逻辑
+     * @param response HTTP响应
+     * @param result 响应内容
+     * @return 服务器返回json错误信息时的异常，正常文件返回null
+     * @throws IOException 编码异常
      */
-    public static <T> int getWebCode(String url) throws IOException {
-        log.debug("http 请求 url: {}", url);
-        T result = null;
+    private static PloyvSdkException parseBinaryError(HttpResponse response, byte[] result) throws IOException {
         PloyvSdkException ployvSdkException = null;
-        // 创建httpclient对象
-        CloseableHttpClient httpClient = HttpClientUtil.getHttpClient();
-        // 创建get方式请求对象
+        Header[] headers = response.getHeaders(Constant.CONTENT_TYPE);
+        for (Header responseHead : headers) {
+            String headStr = responseHead.getValue();
+            if (headStr.startsWith("application/json")) {
+                String json = new String(result, Constant.UTF8);
+                JSONObject jsonObject = JSON.parseObject(json);
+                String message = jsonObject.getString("message");
+                Integer code = jsonObject.getInteger("code");
+                ployvSdkException =  new PloyvSdkException(code, message);
+            }
+        }
+        return ployvSdkException;
+    }
+    
+    /**
+     * 向url发送get请求，响应内容以固定大小的缓冲区写入输出流，内存占用与文件大小无关
+     * 服务器返回json错误信息时根据响应头判断，不会写入输出流
+     * @param url 请求url
+     * @param paramMap 需要拼接的参数
+     * @param headMap 请求头
+     * @param outputStream 输出流，由调用方关闭
+     * @return 写入的字节数
+     * @throws IOException 读写异常
+     */
+    public static long download(String url, Map<String, String> paramMap, Map<String, String> headMap,
+            OutputStream outputStream) throws IOException {
+        url = MapUtil.appendUrl(url, paramMap);
+        CloseableHttpResponse response = sendDownloadRequest(url, headMap, null, null);
+        try {
+            checkDownloadResponse(response);
+            if (response.getEntity() == null) {
+                return 0;
+            }
+            long total = 0;
+            byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+            try (InputStream inputStream = response.getEntity().getContent()) {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                    total += read;
+                }
+            }
+            return total;
+        } finally {
+            closeQuietly(response);
+        }
+    }
+    
+    /**
+     * 向url发送get请求，响应内容直接写入文件，不经过内存中的字节数组
+     * @param url 请求url
+     * @param paramMap 需要拼接的参数
+     * @param headMap 请求头
+     * @param path 目标文件
+     * @param resume 文件已存在时是否用Range请求从已有长度处续传，服务器不支持Range时重新下载
+     * @return 文件长度
+     * @throws IOException 读写异常
+     */
+    public static long download(String url, Map<String, String> paramMap, Map<String, String> headMap, Path path,
+            boolean resume) throws IOException {
+        url = MapUtil.appendUrl(url, paramMap);
+        long existing = resume && Files.exists(path) ? Files.size(path) : 0;
+        CloseableHttpResponse response = sendDownloadRequest(url, headMap, existing > 0 ? existing : null, null);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (existing > 0 && statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE
+                    && contentRangeTotal(response) == existing) {
+                //上次已下载完整
+                EntityUtils.consumeQuietly(response.getEntity());
+                return existing;
+            }
+            checkDownloadResponse(response);
+            long position = 0;
+            if (statusCode == HttpStatus.SC_PARTIAL_CONTENT) {
+                position = contentRangeStart(response);
+                if (position != existing) {
+                    throw new IOException("http 续传位置不一致，期望 " + existing + "，实际 " + position + "，url: " + url);
+                }
+            }
+            return writeTo(response, path, position);
+        } finally {
+            closeQuietly(response);
+        }
+    }
+    
+    /**
+     * 把响应内容从指定位置起写入文件并落盘，文件在该位置之后的内容被替换
+     * @return 文件长度
+     */
+    static long writeTo(CloseableHttpResponse response, Path path, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(position);
+            long written = transferTo(response.getEntity(), channel, position);
+            channel.force(false);
+            return position + written;
+        }
+    }
+    
+    /**
+     * 多个Range请求并行下载同一个文件，每段直接写入文件中的对应位置
+     * 已完成的分段记录在 文件名.segments 中，中断后再次调用只下载未完成的分段
+     * 服务器不支持Range或文件较小时退化为单个请求续传下载
+     * @param url 请求url
+     * @param headMap 请求头
+     * @param path 目标文件
+     * @param segmentCount 最大并行分段数
+     * @return 文件长度
+     * @throws IOException 读写异常
+     */
+    public static long downloadSegmented(String url, Map<String, String> headMap, Path path, int segmentCount)
+            throws IOException {
+        return new SegmentedDownload(url, headMap, path, segmentCount).run();
+    }
+    
+    /**
+     * 发送下载请求
+     * @param rangeStart 不为null时只请求从该位置开始的内容
+     * @param rangeEnd 不为null时只请求到该位置(含)为止的内容
+     */
+    static CloseableHttpResponse sendDownloadRequest(String url, Map<String, String> headMap, Long rangeStart,
+            Long rangeEnd) throws IOException {
+        log.debug("http 下载 url: {} , 范围: {}-{}", url, rangeStart, rangeEnd);
+        CloseableHttpClient httpClient = HttpClientProfile.forUrl(url).getHttpClient();
         HttpGet httpGet = new HttpGet(url);
-        // 通过请求对象获取响应对象
-        CloseableHttpResponse response = sendRequestAndGetResult(url, httpClient, httpGet);
+        addHeaders(httpGet, headMap);
+        if (rangeStart != null) {
+            httpGet.addHeader(HttpHeaders.RANGE, "bytes=" + rangeStart + "-" + (rangeEnd == null ? "" : rangeEnd));
+        }
+        return sendRequestAndGetResult(url, httpClient, httpGet);
+    }
+    
+    /**
+     * 下载响应是否可以写入目标：json错误信息抛出PloyvSdkException，其他失败状态码抛出IOException
+     */
+    static void checkDownloadResponse(CloseableHttpResponse response) throws IOException {
+        String contentType = headerValue(response, Constant.CONTENT_TYPE);
+        if (contentType != null && contentType.startsWith("application/json")) {
+            PloyvSdkException ployvSdkException = parseBinaryError(response,
+                    EntityUtils.toByteArray(response.getEntity()));
+            if (ployvSdkException != null) {
+                throw ployvSdkException;
+            }
+        }
         int statusCode = response.getStatusLine().getStatusCode();
-        try {
-            if (null != response) {
-                response.close();
+        if (statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            throw new IOException("http 下载失败，状态码: " + statusCode);
+        }
+    }
+    
+    /**
+     * 把响应内容写入文件的指定位置，由FileChannel使用固定大小的缓冲区搬运
+     * @return 写入的字节数
+     */
+    static long transferTo(HttpEntity entity, FileChannel channel, long position) throws IOException {
+        if (entity == null) {
+            return 0;
+        }
+        long written = 0;
+        try (ReadableByteChannel source = Channels.newChannel(entity.getContent())) {
+            long transferred;
+            while ((transferred = channel.transferFrom(source, position + written, DOWNLOAD_BUFFER_SIZE)) > 0) {
+                written += transferred;
             }
+        }
+        return written;
+    }
+    
+    /**
+     * 读取 Content-Range: bytes start-end/total 中的start，没有时返回-1
+     */
+    static long contentRangeStart(HttpResponse response) {
+        String contentRange = headerValue(response, HttpHeaders.CONTENT_RANGE);
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = contentRange.indexOf('-');
+        try {
+            return dash < 0 ? -1 : Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * 读取 Content-Range 中的文件总长度，没有或未知时返回-1
+     */
+    static long contentRangeTotal(HttpResponse response) {
+        String contentRange = headerValue(response, HttpHeaders.CONTENT_RANGE);
+        int slash = contentRange == null ? -1 : contentRange.lastIndexOf('/');
+        try {
+            return slash < 0 ? -1 : Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    static void closeQuietly(CloseableHttpResponse response) {
+        try {
+            response.close();
         } catch (IOException ex) {
             log.error(ex.getMessage(), ex);
         }
-        if( ployvSdkException != null){
-            throw  ployvSdkException ;
+    }
+    
+    /**
+     * 返回网址的状态码，不下载响应内容，探测方式同 {@link #probe(String)}
+     * @param url 请求地址
+     * @return 状态码
+     * @throws IOException 读写异常
+     */
+    public static int getWebCode(String url) throws IOException {
+        return probe(url);
+    }
+    
+    /**
+     * 探测网址的状态码，不下载响应内容
+     * 优先发送HEAD请求，服务器拒绝HEAD时改为只请求首字节的Range GET
+     * 请求结束后读尽响应内容再关闭，连接可以放回连接池复用
+     * @param url 请求地址
+     * @return 状态码，Range GET返回206时视为200
+     * @throws IOException 客户端和服务器读写通讯异常
+     */
+    public static int probe(String url) throws IOException {
+        return probe(url, null).getStatusCode();
+    }
+    
+    /**
+     * 探测网址的状态码，探测方式同 {@link #probe(String)}
+     * 可以带上If-None-Match、If-Modified-Since等请求头做条件请求，资源未变化时返回304
+     * @param url 请求地址
+     * @param headMap 额外的请求头
+     * @return 状态码及ETag、Last-Modified响应头
+     * @throws IOException 客户端和服务器读写通讯异常
+     */
+    public static ProbeResult probe(String url, Map<String, String> headMap) throws IOException {
+        HttpHead httpHead = new HttpHead(url);
+        addHeaders(httpHead, headMap);
+        ProbeResult probeResult = sendProbe(url, httpHead);
+        int statusCode = probeResult.getStatusCode();
+        if (statusCode == HttpStatus.SC_METHOD_NOT_ALLOWED || statusCode == HttpStatus.SC_NOT_IMPLEMENTED
+                || statusCode == HttpStatus.SC_FORBIDDEN) {
+            HttpGet httpGet = new HttpGet(url);
+            addHeaders(httpGet, headMap);
+            httpGet.addHeader(HttpHeaders.RANGE, "bytes=0-0");
+            probeResult = sendProbe(url, httpGet);
+            if (probeResult.getStatusCode() == HttpStatus.SC_PARTIAL_CONTENT) {
+                probeResult = new ProbeResult(HttpStatus.SC_OK, probeResult.getETag(), probeResult.getLastModified());
+            }
+        }
+        return probeResult;
+    }
+    
+    /**
+     * 发送探测请求，读尽响应内容后返回状态码
+     * @param url 请求地址
+     * @param httpUriRequest HEAD 或 Range GET 请求
+     * @return 状态码及缓存校验头
+     * @throws IOException 客户端和服务器读写通讯异常
+     */
+    private static ProbeResult sendProbe(String url, HttpUriRequest httpUriRequest) throws IOException {
+        log.debug("http 探测 url: {} , 请求方式: {}", url, httpUriRequest.getMethod());
+        CloseableHttpClient httpClient = HttpClientProfile.forUrl(url).getHttpClient();
+        CloseableHttpResponse response = sendRequestAndGetResult(url, httpClient, httpUriRequest);
+        try {
+            //未读完的响应直接关闭会断开连接，读尽后连接才能复用
+            EntityUtils.consume(response.getEntity());
+            return new ProbeResult(response.getStatusLine().getStatusCode(), headerValue(response, HttpHeaders.ETAG),
+                    headerValue(response, HttpHeaders.LAST_MODIFIED));
+        } finally {
+            try {
+                response.close();
+            } catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
         }
-        return statusCode;
+    }
+    
+    static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
     }
     
     
@@ -305,8 +598,8 @@ public class HttpUtil {
             throws IOException {
         T result = null;
         CloseableHttpResponse response = null;
-        // 创建httpclient对象
-        CloseableHttpClient httpClient = HttpClientUtil.getHttpClient();
+        // 按域名选择API或CDN连接池
+        CloseableHttpClient httpClient = HttpClientProfile.forUrl(url).getHttpClient();
         if(headMap != null){
             Set<Map.Entry<String, String>> entries = headMap.entrySet();
             Iterator<Map.Entry<String, String>> iterator = entries.iterator();
@@ -336,21 +629,131 @@ public class HttpUtil {
     
     /**
      * 发送http请求，打印请求耗时、请求头信息
+     * 域名熔断时直接失败；幂等请求遇到读写异常、429、5xx时按RetryPolicy退避重试
      * @param url 请求url
      * @param httpClient httpClient
      * @param httpUriRequest httpUriRequest
      * @return 请求返回的数据
      * @throws IOException 读写异常
      */
-    private static CloseableHttpResponse sendRequestAndGetResult(String url, CloseableHttpClient httpClient,
+    static CloseableHttpResponse sendRequestAndGetResult(String url, CloseableHttpClient httpClient,
+            HttpUriRequest httpUriRequest) throws IOException {
+        //限流、熔断、指标都按原地址统计，再替换为压测地址
+        URI originalUri = httpUriRequest.getURI();
+        BaseUrlOverride.apply(httpUriRequest);
+        CircuitBreaker circuitBreaker = CircuitBreaker.forHost(originalUri.getHost());
+        RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        boolean idempotent = RetryPolicy.isIdempotent(httpUriRequest);
+        retryPolicy.onRequest();
+        for (int attempt = 1; ; attempt++) {
+            circuitBreaker.acquirePermission();
+            CloseableHttpResponse response;
+            try {
+                response = executeWithLimiter(url, originalUri, httpClient, httpUriRequest);
+            } catch (IOException e) {
+                if (isInterrupted(e)) {
+                    circuitBreaker.onAbort();
+                    throw e;
+                }
+                circuitBreaker.onFailure();
+                if (!idempotent || !retryPolicy.tryRetry(attempt)) {
+                    throw e;
+                }
+                log.debug("http 请求异常，准备第 {} 次重试，url: {} ，异常：{}", attempt, url, e.toString());
+                backoff(retryPolicy.backoffMillis(attempt, 0));
+                continue;
+            } catch (RuntimeException e) {
+                //本地异常（如连接池已关闭）与服务端无关，不计失败，但要归还半开状态的试探名额
+                circuitBreaker.onAbort();
+                throw e;
+            }
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != 429 && statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                circuitBreaker.onSuccess();
+                return response;
+            }
+            circuitBreaker.onFailure();
+            if (!idempotent || !retryPolicy.tryRetry(attempt)) {
+                return response;
+            }
+            long retryAfterMillis = retryAfterMillis(response);
+            //读尽后关闭，连接可以复用
+            EntityUtils.consumeQuietly(response.getEntity());
+            response.close();
+            log.debug("http 请求返回 {}，准备第 {} 次重试，url: {}", statusCode, attempt, url);
+            backoff(retryPolicy.backoffMillis(attempt, retryAfterMillis));
+        }
+    }
+    
+    /**
+     * 在域名并发许可内发送一次http请求
+     */
+    private static CloseableHttpResponse executeWithLimiter(String url, URI originalUri, CloseableHttpClient httpClient,
             HttpUriRequest httpUriRequest) throws IOException {
+        //按域名自适应限制并发，服务端过载时自动退让
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.forHost(originalUri.getHost());
+        try {
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("http request interrupted while waiting for concurrency permit");
+        }
+        EndpointMetrics metrics = HttpMetrics.forUri(originalUri);
+        metrics.onStart(requestLength(httpUriRequest));
         long startTime = System.currentTimeMillis();
-        CloseableHttpResponse response = httpClient.execute(httpUriRequest);
+        long startNanos = System.nanoTime();
+        CloseableHttpResponse response;
+        try {
+            response = httpClient.execute(httpUriRequest);
+        } catch (SocketTimeoutException | ConnectTimeoutException e) {
+            metrics.onError(elapsedMicros(startNanos), e);
+            limiter.release(System.currentTimeMillis() - startTime, AdaptiveConcurrencyLimiter.Outcome.OVERLOAD);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            metrics.onError(elapsedMicros(startNanos), e);
+            limiter.release(System.currentTimeMillis() - startTime, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+            throw e;
+        }
         long endTime = System.currentTimeMillis();
-        collectAPISpendTime(url, startTime, endTime,httpUriRequest);
+        limiter.release(endTime - startTime,
+                AdaptiveConcurrencyLimiter.outcomeOf(response.getStatusLine().getStatusCode()));
+        collectAPISpendTime(url, startTime, endTime, httpUriRequest);
+        metrics.onResponse(elapsedMicros(startNanos), response.getStatusLine().getStatusCode(),
+                response.getEntity() == null ? -1 : response.getEntity().getContentLength());
         return response;
     }
     
+    /**
+     * 线程被中断导致的异常，不重试也不计入熔断
+     */
+    private static boolean isInterrupted(IOException e) {
+        return Thread.currentThread().isInterrupted() || e.getClass() == InterruptedIOException.class;
+    }
+    
+    private static void backoff(long delayMillis) throws InterruptedIOException {
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("http retry backoff interrupted");
+        }
+    }
+    
+    /**
+     * 读取Retry-After响应头中的秒数，没有或格式不支持时返回0
+     */
+    private static long retryAfterMillis(HttpResponse response) {
+        String retryAfter = headerValue(response, HttpHeaders.RETRY_AFTER);
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
     /**
      * 打印请求信息
      * @param url 请求url
@@ -358,8 +761,457 @@ public class HttpUtil {
      * @param endTime 请求结束时间
      */
     private static void collectAPISpendTime(String url, long startTime, long endTime,HttpUriRequest httpUriRequest) {
-        log.debug("HTTP请求耗时分析，请求URL: {} ， 请求头信息：{} ，   耗时: {} ms", url, JSON.toJSONString(httpUriRequest.getAllHeaders()), endTime - startTime);
-        //save server
+        //请求头序列化开销较大，只在开启debug时执行，指标统计见HttpMetrics
+        if (log.isDebugEnabled()) {
+            log.debug("HTTP请求耗时分析，请求URL: {} ， 请求头信息：{} ，   耗时: {} ms", url, JSON.toJSONString(httpUriRequest.getAllHeaders()), endTime - startTime);
+        }
+    }
+    
+    private static long requestLength(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) httpUriRequest).getEntity();
+            return entity == null ? -1 : entity.getContentLength();
+        }
+        return -1;
+    }
+    
+    private static long elapsedMicros(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+    
+    /**
+     * 向url发送异步get请求
+     * @param url 请求目标地址
+     * @return 请求返回的数据
+     */
+    public static CompletableFuture<String> getAsync(String url) {
+        return getAsync(url, null, new HashMap<>(), UTF8);
+    }
+    
+    /**
+     * 向url发送异步get请求
+     * @param url 请求url
+     * @param paramMap 需要拼接的参数
+     * @param encoding 编码
+     * @return 请求返回的数据
+     */
+    public static CompletableFuture<String> getAsync(String url, Map<String, String> paramMap,
+            Map<String, String> headMap, String encoding) {
+        encoding = encoding == null ? UTF8 : encoding;
+        url = MapUtil.appendUrl(url, paramMap);
+        return getAsync(url, headMap, encoding, new DataParse<String>() {
+            @Override
+            public String parseData(HttpEntity httpEntity, String encoding) throws IOException {
+                return EntityUtils.toString(httpEntity, encoding);
+            }
+        });
+    }
+    
+    /**
+     * 向url发送异步get请求
+     * @param url 请求url
+     * @param paramMap 需要拼接的参数
+     * @param encoding 编码
+     * @return 请求返回的字节数组，服务器返回json错误信息时以PloyvSdkException异常结束
+     */
+    public static CompletableFuture<byte[]> getBinaryAsync(String url, Map<String, String> paramMap,
+            Map<String, String> headMap, String encoding) {
+        encoding = encoding == null ? UTF8 : encoding;
+        url = MapUtil.appendUrl(url, paramMap);
+        return getAsync(url, headMap, encoding, new DataParse<byte[]>() {
+            @Override
+            public byte[] parseData(HttpEntity httpEntity, String encoding) throws IOException {
+                return EntityUtils.toByteArray(httpEntity);
+            }
+        });
+    }
+    
+    /**
+     * 异步返回网址的状态码，不下载响应内容，探测方式同 {@link #probe(String)}
+     * @param url 请求地址
+     * @return 状态码
+     */
+    public static CompletableFuture<Integer> getWebCodeAsync(String url) {
+        return probeAsync(url);
+    }
+    
+    /**
+     * 异步探测网址的状态码，探测方式同 {@link #probe(String)}
+     * @param url 请求地址
+     * @return 状态码，Range GET返回206时视为200
+     */
+    public static CompletableFuture<Integer> probeAsync(final String url) {
+        return probeAsync(url, null).thenApply(ProbeResult::getStatusCode);
+    }
+    
+    /**
+     * 异步探测网址的状态码，探测方式同 {@link #probe(String, Map)}
+     * 取消返回的future会同时取消正在进行的请求
+     * @param url 请求地址
+     * @param headMap 额外的请求头
+     * @return 状态码及ETag、Last-Modified响应头
+     */
+    public static CompletableFuture<ProbeResult> probeAsync(final String url, final Map<String, String> headMap) {
+        HttpHead httpHead = new HttpHead(url);
+        addHeaders(httpHead, headMap);
+        final CompletableFuture<ProbeResult> headFuture = executeAsync(url, httpHead, PROBE_RESULT_HANDLER);
+        final CompletableFuture<ProbeResult> future = headFuture.thenCompose(probeResult -> {
+            int statusCode = probeResult.getStatusCode();
+            if (statusCode != HttpStatus.SC_METHOD_NOT_ALLOWED && statusCode != HttpStatus.SC_NOT_IMPLEMENTED
+                    && statusCode != HttpStatus.SC_FORBIDDEN) {
+                return CompletableFuture.completedFuture(probeResult);
+            }
+            HttpGet httpGet = new HttpGet(url);
+            addHeaders(httpGet, headMap);
+            httpGet.addHeader(HttpHeaders.RANGE, "bytes=0-0");
+            return executeAsync(url, httpGet, PROBE_RESULT_HANDLER).thenApply(
+                    rangeResult -> rangeResult.getStatusCode() == HttpStatus.SC_PARTIAL_CONTENT
+                            ? new ProbeResult(HttpStatus.SC_OK, rangeResult.getETag(), rangeResult.getLastModified())
+                            : rangeResult);
+        });
+        //thenCompose返回的future取消时不会传递给HEAD请求，需要手动取消
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                headFuture.cancel(false);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * 对冲探测网址的状态码，探测方式同 {@link #probe(String, Map)}
+     * 超过该域名实时p95延迟仍未返回时再发一个相同请求，先返回的结果生效，另一个取消；对冲次数受预算限制
+     * @param url 请求地址
+     * @param headMap 额外的请求头
+     * @param deadlineMillis 整体截止时间，超过后抛出SocketTimeoutException
+     * @return 状态码及ETag、Last-Modified响应头
+     * @throws IOException 客户端和服务器读写通讯异常或超过截止时间
+     */
+    public static ProbeResult probeHedged(String url, Map<String, String> headMap, long deadlineMillis)
+            throws IOException {
+        CompletableFuture<ProbeResult> future = probeHedgedAsync(url, headMap, deadlineMillis);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("探测被中断：" + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    /**
+     * 异步对冲探测网址的状态码，对冲方式同 {@link #probeHedged(String, Map, long)}
+     * @param url 请求地址
+     * @param headMap 额外的请求头
+     * @param deadlineMillis 整体截止时间，超过后以SocketTimeoutException结束
+     * @return 状态码及ETag、Last-Modified响应头
+     */
+    public static CompletableFuture<ProbeResult> probeHedgedAsync(String url, Map<String, String> headMap,
+            long deadlineMillis) {
+        return HedgedProbe.INSTANCE.probe(url, headMap, deadlineMillis);
+    }
+    
+    /**
+     * 向url发送异步post请求
+     * @param url 请求url
+     * @param paramMap 需要拼接的参数
+     * @param encoding 编码
+     * @return 请求返回的数据
+     */
+    public static CompletableFuture<String> postFormBodyAsync(String url, Map<String, String> paramMap,
+            Map<String, String> headMap, String encoding) {
+        log.debug("http 请求 url: {} , 请求参数: {}", url, JSON.toJSONString(paramMap));
+        encoding = encoding == null ? UTF8 : encoding;
+        HttpPost httpPost = new HttpPost(url);
+        List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>();
+        if (paramMap != null) {
+            for (Map.Entry<String, String> entry : paramMap.entrySet()) {
+                String value = entry.getValue();
+                if (value != null) {
+                    nameValuePairs.add(new BasicNameValuePair(entry.getKey(), value));
+                }
+            }
+        }
+        try {
+            httpPost.setEntity(new UrlEncodedFormEntity(nameValuePairs, encoding));
+        } catch (UnsupportedEncodingException e) {
+            return failedFuture(e);
+        }
+        httpPost.setHeader(Constant.CONTENT_TYPE, Constant.APPLICATION_FORM_URLENCODED);
+        addHeaders(httpPost, headMap);
+        return executeAsync(url, httpPost, stringHandler(encoding));
+    }
+    
+    /**
+     * 向url发送异步post请求发送json
+     * @param url 请求url
+     * @param json json字符串
+     * @param encoding 编码
+     * @return 请求返回的数据
+     */
+    public static CompletableFuture<String> postJsonBodyAsync(String url, Map<String, String> headMap, String json,
+            String encoding) {
+        log.debug("http 请求 url: {} , 请求参数: {}", url, json);
+        encoding = encoding == null ? UTF8 : encoding;
+        HttpPost httpPost = new HttpPost(url);
+        StringEntity stringEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
+        stringEntity.setContentEncoding(encoding);
+        httpPost.setEntity(stringEntity);
+        addHeaders(httpPost, headMap);
+        return executeAsync(url, httpPost, stringHandler(encoding));
+    }
+    
+    /**
+     * HTTP GET 异步请求处理逻辑，返回数据处理与同步请求一致
+     * @param url 请求地址
+     * @param encoding 编码字符集
+     * @param dataParse 返回数据反序列化逻辑实现类
+     * @return HTTP 返回的内容
+     */
+    private static <T> CompletableFuture<T> getAsync(String url, Map<String, String> headMap, final String encoding,
+            final DataParse<T> dataParse) {
+        log.debug("http 请求 url: {}", url);
+        HttpGet httpGet = new HttpGet(url);
+        httpGet.addHeader(Constant.CONTENT_TYPE, Constant.APPLICATION_JSON);
+        addHeaders(httpGet, headMap);
+        return executeAsync(url, httpGet, new ResponseHandler<T>() {
+            @Override
+            public T handleResponse(HttpResponse response) throws IOException {
+                T result = dataParse.parseData(response.getEntity(), encoding);
+                if (!(result instanceof byte[])) {
+                    log.debug("http 请求结果: {}", result);
+                } else {
+                    PloyvSdkException ployvSdkException = parseBinaryError(response, (byte[]) result);
+                    if (ployvSdkException != null) {
+                        throw ployvSdkException;
+                    }
+                }
+                return result;
+            }
+        });
+    }
+    
+    /**
+     * 通过异步客户端发送请求，响应在IO线程上交给handler处理
+     * 与同步请求一样按原域名熔断、异步等待并发许可，幂等请求遇到读写异常、429、5xx时按RetryPolicy退避重试
+     * 取消返回的future会同时取消底层请求，被取消的请求不计入熔断和异常指标
+     * @param url 请求url
+     * @param httpUriRequest 请求对象
+     * @param handler 响应处理逻辑
+     * @return 处理后的结果
+     */
+    private static <T> CompletableFuture<T> executeAsync(final String url, final HttpUriRequest httpUriRequest,
+            final ResponseHandler<T> handler) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        //限流、熔断、指标都按原地址统计，再替换为压测地址
+        URI originalUri = httpUriRequest.getURI();
+        BaseUrlOverride.apply(httpUriRequest);
+        RetryPolicy.DEFAULT.onRequest();
+        //当前一次尝试正在等待的许可、请求或重试计时
+        final AtomicReference<Future<?>> current = new AtomicReference<>();
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                Future<?> pending = current.get();
+                if (pending != null) {
+                    pending.cancel(true);
+                }
+            }
+        });
+        executeAsyncAttempt(url, originalUri, httpUriRequest, handler, future, current, 1);
+        return future;
+    }
+    
+    /**
+     * 发送异步请求的一次尝试：熔断检查、等待域名并发许可、发送，失败时安排重试
+     */
+    private static <T> void executeAsyncAttempt(final String url, final URI originalUri,
+            final HttpUriRequest httpUriRequest, final ResponseHandler<T> handler, final CompletableFuture<T> future,
+            final AtomicReference<Future<?>> current, final int attempt) {
+        if (future.isDone()) {
+            return;
+        }
+        final CircuitBreaker circuitBreaker = CircuitBreaker.forHost(originalUri.getHost());
+        try {
+            circuitBreaker.acquirePermission();
+        } catch (CircuitBreakerOpenException e) {
+            future.completeExceptionally(e);
+            return;
+        }
+        final AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.forHost(originalUri.getHost());
+        CompletableFuture<Void> permit = limiter.acquireAsync();
+        current.set(permit);
+        permit.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                //等待许可时被取消
+                circuitBreaker.onAbort();
+                return;
+            }
+            if (future.isDone()) {
+                limiter.release(0, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+                circuitBreaker.onAbort();
+                return;
+            }
+            sendAsync(url, originalUri, httpUriRequest, handler, future, current, attempt, circuitBreaker, limiter);
+        });
+        if (future.isDone()) {
+            permit.cancel(false);
+        }
+    }
+    
+    /**
+     * 在域名并发许可内发送一次异步请求，结束时归还许可
+     */
+    private static <T> void sendAsync(final String url, final URI originalUri, final HttpUriRequest httpUriRequest,
+            final ResponseHandler<T> handler, final CompletableFuture<T> future,
+            final AtomicReference<Future<?>> current, final int attempt, final CircuitBreaker circuitBreaker,
+            final AdaptiveConcurrencyLimiter limiter) {
+        final EndpointMetrics metrics = HttpMetrics.forUri(originalUri);
+        final RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        final boolean idempotent = RetryPolicy.isIdempotent(httpUriRequest);
+        metrics.onStart(requestLength(httpUriRequest));
+        final long startTime = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        final Future<HttpResponse> requestFuture;
+        try {
+            requestFuture = HttpAsyncClientUtil.getHttpAsyncClient()
+                    .execute(httpUriRequest, new FutureCallback<HttpResponse>() {
+                        @Override
+                        public void completed(HttpResponse response) {
+                            long endTime = System.currentTimeMillis();
+                            int statusCode = response.getStatusLine().getStatusCode();
+                            limiter.release(endTime - startTime, AdaptiveConcurrencyLimiter.outcomeOf(statusCode));
+                            collectAPISpendTime(url, startTime, endTime, httpUriRequest);
+                            metrics.onResponse(elapsedMicros(startNanos), statusCode,
+                                    response.getEntity() == null ? -1 : response.getEntity().getContentLength());
+                            if (statusCode != 429 && statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                                circuitBreaker.onSuccess();
+                            } else {
+                                circuitBreaker.onFailure();
+                                if (idempotent && retryPolicy.tryRetry(attempt)) {
+                                    long retryAfterMillis = retryAfterMillis(response);
+                                    EntityUtils.consumeQuietly(response.getEntity());
+                                    log.debug("http 请求返回 {}，准备第 {} 次重试，url: {}", statusCode, attempt, url);
+                                    scheduleAsyncRetry(url, originalUri, httpUriRequest, handler, future, current, attempt,
+                                            retryPolicy.backoffMillis(attempt, retryAfterMillis));
+                                    return;
+                                }
+                            }
+                            try {
+                                future.complete(handler.handleResponse(response));
+                            } catch (Exception e) {
+                                future.completeExceptionally(e);
+                            }
+                        }
+                        
+                        @Override
+                        public void failed(Exception ex) {
+                            if (future.isCancelled()) {
+                                //调用方取消后连接被关闭引起的失败，按取消处理
+                                cancelled();
+                                return;
+                            }
+                            boolean timeout = ex instanceof SocketTimeoutException || ex instanceof ConnectTimeoutException;
+                            limiter.release(System.currentTimeMillis() - startTime, timeout
+                                    ? AdaptiveConcurrencyLimiter.Outcome.OVERLOAD : AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+                            metrics.onError(elapsedMicros(startNanos), ex);
+                            circuitBreaker.onFailure();
+                            if (ex instanceof IOException && idempotent && retryPolicy.tryRetry(attempt)) {
+                                log.debug("http 请求异常，准备第 {} 次重试，url: {} ，异常：{}", attempt, url, ex.toString());
+                                scheduleAsyncRetry(url, originalUri, httpUriRequest, handler, future, current, attempt,
+                                        retryPolicy.backoffMillis(attempt, 0));
+                                return;
+                            }
+                            future.completeExceptionally(ex);
+                        }
+                        
+                        @Override
+                        public void cancelled() {
+                            //调用方取消，如对冲探测中落后的请求，与服务端状态无关
+                            limiter.release(System.currentTimeMillis() - startTime,
+                                    AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+                            metrics.onCancel();
+                            circuitBreaker.onAbort();
+                            future.cancel(false);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            //IO反应器已停止等本地异常，回调不会被调用，在这里归还许可和试探名额
+            limiter.release(System.currentTimeMillis() - startTime, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+            metrics.onError(elapsedMicros(startNanos), e);
+            circuitBreaker.onAbort();
+            future.completeExceptionally(e);
+            return;
+        }
+        current.set(requestFuture);
+        if (future.isDone()) {
+            requestFuture.cancel(true);
+        }
+    }
+    
+    /**
+     * 退避后重新发送异步请求，退避期间不占用线程
+     */
+    private static <T> void scheduleAsyncRetry(final String url, final URI originalUri,
+            final HttpUriRequest httpUriRequest, final ResponseHandler<T> handler, final CompletableFuture<T> future,
+            final AtomicReference<Future<?>> current, final int attempt, long delayMillis) {
+        ScheduledFuture<?> retry = AsyncRetryTimer.INSTANCE.schedule(() -> executeAsyncAttempt(url, originalUri,
+                httpUriRequest, handler, future, current, attempt + 1), delayMillis, TimeUnit.MILLISECONDS);
+        current.set(retry);
+        if (future.isDone()) {
+            retry.cancel(false);
+        }
+    }
+    
+    /**
+     * 异步请求重试的计时线程，首次重试时创建
+     */
+    private static class AsyncRetryTimer {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                    Thread thread = new Thread(runnable, "http-async-retry");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+    
+    private static ResponseHandler<String> stringHandler(final String encoding) {
+        return new ResponseHandler<String>() {
+            @Override
+            public String handleResponse(HttpResponse response) throws IOException {
+                String result = EntityUtils.toString(response.getEntity(), encoding);
+                log.debug("http 请求结果: {}", result);
+                return result;
+            }
+        };
+    }
+    
+    private static final ResponseHandler<ProbeResult> PROBE_RESULT_HANDLER = new ResponseHandler<ProbeResult>() {
+        @Override
+        public ProbeResult handleResponse(HttpResponse response) throws IOException {
+            EntityUtils.consume(response.getEntity());
+            return new ProbeResult(response.getStatusLine().getStatusCode(), headerValue(response, HttpHeaders.ETAG),
+                    headerValue(response, HttpHeaders.LAST_MODIFIED));
+        }
+    };
+    
+    private static void addHeaders(HttpUriRequest httpUriRequest, Map<String, String> headMap) {
+        if (headMap != null) {
+            for (Map.Entry<String, String> entry : headMap.entrySet()) {
+                httpUriRequest.addHeader(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    private static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
     }
     
     /**
@@ -421,8 +1273,6 @@ public class HttpUtil {
         log.debug("http 请求 url: {} , 请求参数: {}", url, JSON.toJSONString(paramMap));
         encoding = encoding == null ? UTF8 : encoding;
         T result = null;
-        CloseableHttpClient httpClient = HttpClientUtil.getHttpClient();
-        HttpPost httpPost = new HttpPost(url);
         MultipartEntityBuilder entityBuilder = MultipartEntityBuilder.create();
         
         ContentType contentType = ContentType.create("text/plain", Charset.forName(encoding));
@@ -444,16 +1294,7 @@ public class HttpUtil {
         }
         
         HttpEntity entity = entityBuilder.build();
-        httpPost.setEntity(entity);
-        if(headMap != null){
-            Set<Map.Entry<String, String>> entries = headMap.entrySet();
-            Iterator<Map.Entry<String, String>> iterator = entries.iterator();
-            while (iterator.hasNext()){
-                Map.Entry<String, String> next = iterator.next();
-                httpPost.addHeader(next.getKey(),next.getValue());
-            }
-        }
-        CloseableHttpResponse response = sendRequestAndGetResult(url, httpClient, httpPost);
+        CloseableHttpResponse response = sendMultipart(url, entity, headMap);
         if (null != response) {
             result = dataParse.parseData(response.getEntity(), encoding);
             log.debug("http 请求结果: {}", result);
@@ -468,4 +1309,41 @@ public class HttpUtil {
         return result;
     }
     
+    /**
+     * 发送multipart上传请求
+     * @param url 请求url
+     * @param entity multipart请求体
+     * @param headMap 请求头
+     * @return 响应，由调用方关闭
+     * @throws IOException 读写异常
+     */
+    static CloseableHttpResponse sendMultipart(String url, HttpEntity entity, Map<String, String> headMap)
+            throws IOException {
+        //上传使用单独的连接池和较长的读超时，不占用API连接
+        CloseableHttpClient httpClient = HttpClientProfile.UPLOAD.getHttpClient();
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setEntity(entity);
+        addHeaders(httpPost, headMap);
+        return sendRequestAndGetResult(url, httpClient, httpPost);
+    }
+    
+    /**
+     * 分片并行上传大文件，每个分片单独发送multipart请求，直接从文件读取，内存占用与文件大小无关
+     * 已确认的分片记录在 文件名.upload 中，中断后使用相同参数再次调用只上传未确认的分片
+     * 除paramMap外每个分片带上 uploadId、partNumber(从1开始)、partCount、partSize、fileSize、partMd5 表单参数
+     * @param url 分片上传地址
+     * @param paramMap 每个分片都带上的表单参数
+     * @param fileParamName 文件部分的参数名
+     * @param file 需要上传的文件
+     * @param headMap 请求头
+     * @param partSize 分片大小，单位字节
+     * @param parallelism 同时上传的分片数
+     * @return 本次上传的uploadId，服务端据此合并分片
+     * @throws IOException 读写异常，已确认的分片保留在进度文件中
+     */
+    public static String postFileChunked(String url, Map<String, String> paramMap, String fileParamName, File file,
+            Map<String, String> headMap, long partSize, int parallelism) throws IOException {
+        return new ChunkedUpload(url, paramMap, fileParamName, file, headMap, partSize, parallelism).run();
+    }
+    
 }
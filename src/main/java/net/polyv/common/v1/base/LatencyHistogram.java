@@ -0,0 +1,118 @@
+package net.polyv.common.v1.base;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁延迟直方图，按对数分段、段内线性分桶(与HdrHistogram相同的思路)
+ * 每个2的幂区间内分32个桶，相对误差约3%，单位微秒，最大约1.1天
+ * @author: sadboy
+ **/
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 36;
+    static final int BUCKET_COUNT = SUB_COUNT + (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+    
+    /**
+     * 记录一次耗时
+     * @param micros 耗时，单位微秒
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalMicros.add(value);
+        maxMicros.accumulateAndGet(value, Math::max);
+    }
+    
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_COUNT;
+        return SUB_COUNT + (exponent - SUB_BITS) * SUB_COUNT + sub;
+    }
+    
+    /**
+     * @return 桶的上界(不含)
+     */
+    private static long upperBoundOf(int index) {
+        if (index < SUB_COUNT) {
+            return index + 1;
+        }
+        int exponent = SUB_BITS + (index - SUB_COUNT) / SUB_COUNT;
+        int sub = (index - SUB_COUNT) % SUB_COUNT;
+        return (long) (SUB_COUNT + sub + 1) << (exponent - SUB_BITS);
+    }
+    
+    /**
+     * 计算分位数，结果为所在桶的上界，不超过最大值
+     * @param quantile 分位，如0.99
+     * @return 耗时，单位微秒，没有记录时返回0
+     */
+    public long quantileMicros(double quantile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        addCountsTo(snapshot);
+        return quantileOf(snapshot, quantile, maxMicros.get());
+    }
+    
+    /**
+     * 把各桶的计数累加到target，用于合并多个直方图
+     * @param target 长度为BUCKET_COUNT的计数数组
+     */
+    void addCountsTo(long[] target) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            target[i] += counts.get(i);
+        }
+    }
+    
+    /**
+     * 按各桶计数计算分位数
+     * @param snapshot 各桶计数
+     * @param quantile 分位
+     * @param maxMicros 记录过的最大值，结果不超过该值
+     * @return 耗时，单位微秒，没有记录时返回0
+     */
+    static long quantileOf(long[] snapshot, double quantile, long maxMicros) {
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i) - 1, maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+    
+    public long getCount() {
+        return totalCount.sum();
+    }
+    
+    public long getSumMicros() {
+        return totalMicros.sum();
+    }
+    
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+    
+}
@@ -0,0 +1,36 @@
+package net.polyv.common.v1.base;
+
+/**
+ * 探测请求的结果，包含状态码和用于条件请求的缓存校验头
+ * @author: sadboy
+ **/
+public class ProbeResult {
+    private final int statusCode;
+    /**
+     * 响应头ETag，没有时为null
+     */
+    private final String eTag;
+    /**
+     * 响应头Last-Modified，没有时为null
+     */
+    private final String lastModified;
+    
+    public ProbeResult(int statusCode, String eTag, String lastModified) {
+        this.statusCode = statusCode;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+    
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
+    public String getETag() {
+        return eTag;
+    }
+    
+    public String getLastModified() {
+        return lastModified;
+    }
+    
+}
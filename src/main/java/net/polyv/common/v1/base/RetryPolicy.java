@@ -0,0 +1,92 @@
+package net.polyv.common.v1.base;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * HTTP请求重试策略，只重试幂等请求(GET、HEAD、OPTIONS)
+ * 重试间隔为带随机抖动的指数退避，重试次数受全局重试预算限制，服务端大面积故障时不会成倍放大请求量
+ * 可通过系统属性调整：
+ * -Dhttp.retry.maxAttempts 每个请求最多尝试次数，包含第一次
+ * -Dhttp.retry.baseDelayMillis、-Dhttp.retry.maxDelayMillis 退避间隔
+ * -Dhttp.retry.budgetRatio 每个新请求增加的重试额度，0.1表示重试请求最多约占10%
+ * @author: sadboy
+ **/
+public class RetryPolicy {
+    /**
+     * 默认重试策略
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(Integer.getInteger("http.retry.maxAttempts", 3),
+            Long.getLong("http.retry.baseDelayMillis", 200L), Long.getLong("http.retry.maxDelayMillis", 5000L),
+            Double.parseDouble(System.getProperty("http.retry.budgetRatio", "0.1")), 10);
+    
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final double budgetRatio;
+    private final double maxBudget;
+    /**
+     * 剩余重试额度，每次重试消耗1
+     */
+    private double budget;
+    
+    /**
+     * @param maxAttempts 每个请求最多尝试次数，包含第一次
+     * @param baseDelayMillis 第一次重试的最大退避间隔
+     * @param maxDelayMillis 退避间隔上限
+     * @param budgetRatio 每个新请求增加的重试额度
+     * @param initialBudget 初始重试额度，也是额度累积的下限保障
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double budgetRatio,
+            double initialBudget) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.budgetRatio = budgetRatio;
+        this.maxBudget = Math.max(initialBudget, 100);
+        this.budget = initialBudget;
+    }
+    
+    /**
+     * @param httpUriRequest 请求对象
+     * @return 是否为可以安全重试的幂等请求
+     */
+    public static boolean isIdempotent(HttpUriRequest httpUriRequest) {
+        String method = httpUriRequest.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+    
+    /**
+     * 新请求开始时调用，累积重试额度
+     */
+    public synchronized void onRequest() {
+        budget = Math.min(maxBudget, budget + budgetRatio);
+    }
+    
+    /**
+     * 判断失败后能否再次尝试，可以时消耗一个重试额度
+     * @param attempt 已经尝试的次数
+     * @return 是否可以重试
+     */
+    public synchronized boolean tryRetry(int attempt) {
+        if (attempt >= maxAttempts || budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+    
+    /**
+     * 计算重试前的等待时间，full jitter：在[0, min(max, base * 2^(attempt-1))]中随机取值
+     * @param attempt 已经尝试的次数
+     * @param retryAfterMillis 服务端Retry-After要求的等待时间，没有时小于等于0
+     * @return 等待时间，单位毫秒
+     */
+    public long backoffMillis(int attempt, long retryAfterMillis) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return Math.min(maxDelayMillis, Math.max(delay, retryAfterMillis));
+    }
+    
+}
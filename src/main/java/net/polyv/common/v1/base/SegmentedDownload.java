@@ -0,0 +1,214 @@
+package net.polyv.common.v1.base;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 分段并行下载，实现 {@link HttpUtil#downloadSegmented}
+ * 先用 Range: bytes=0-0 取得文件长度和ETag，按长度预分配文件，各分段直接写入文件中的对应位置；
+ * 服务器不支持Range返回200时直接把这次的响应写入文件，不重复下载
+ * 进度文件第一行为 长度\t分段大小\tETag，之后每行一个已完成的分段序号
+ * 长度、ETag或分段大小(随调用方的segmentCount变化)与进度文件不一致时重新下载全部分段
+ * 最小分段大小可通过 -Dhttp.download.minSegmentBytes 调整
+ * @author: sadboy
+ **/
+@Slf4j
+class SegmentedDownload {
+    private static final long MIN_SEGMENT_BYTES = Long.getLong("http.download.minSegmentBytes", 8L * 1024 * 1024);
+    private static final String PROGRESS_SUFFIX = ".segments";
+    
+    private final String url;
+    private final Map<String, String> headMap;
+    private final Path path;
+    private final Path progressPath;
+    private final int segmentCount;
+    private final long minSegmentBytes;
+    
+    SegmentedDownload(String url, Map<String, String> headMap, Path path, int segmentCount) {
+        this(url, headMap, path, segmentCount, MIN_SEGMENT_BYTES);
+    }
+    
+    /**
+     * @param minSegmentBytes 最小分段大小，文件小于两个分段时不分段
+     */
+    SegmentedDownload(String url, Map<String, String> headMap, Path path, int segmentCount, long minSegmentBytes) {
+        this.url = url;
+        this.headMap = headMap;
+        this.path = path;
+        this.progressPath = Paths.get(path.toString() + PROGRESS_SUFFIX);
+        this.segmentCount = segmentCount;
+        this.minSegmentBytes = minSegmentBytes;
+    }
+    
+    long run() throws IOException {
+        long total;
+        String eTag;
+        CloseableHttpResponse response = HttpUtil.sendDownloadRequest(url, headMap, 0L, 0L);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == HttpStatus.SC_OK) {
+                //服务器忽略了Range，响应就是完整文件
+                HttpUtil.checkDownloadResponse(response);
+                Files.deleteIfExists(progressPath);
+                return HttpUtil.writeTo(response, path, 0);
+            }
+            total = statusCode == HttpStatus.SC_PARTIAL_CONTENT ? HttpUtil.contentRangeTotal(response) : -1;
+            eTag = HttpUtil.headerValue(response, HttpHeaders.ETAG);
+            if (statusCode == HttpStatus.SC_PARTIAL_CONTENT) {
+                //只有1字节，读完后连接可以复用；其他状态码直接关闭连接，不读取响应内容
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        } finally {
+            HttpUtil.closeQuietly(response);
+        }
+        if (segmentCount <= 1 || total < 2 * minSegmentBytes) {
+            //不支持Range、长度未知或文件较小
+            Files.deleteIfExists(progressPath);
+            return HttpUtil.download(url, null, headMap, path, true);
+        }
+        long segmentSize = Math.max(minSegmentBytes, (total + segmentCount - 1) / segmentCount);
+        int segments = (int) ((total + segmentSize - 1) / segmentSize);
+        Set<Integer> completed = loadProgress(total, segmentSize, eTag);
+        Map<String, String> segmentHeadMap = new HashMap<>();
+        if (headMap != null) {
+            segmentHeadMap.putAll(headMap);
+        }
+        if (eTag != null) {
+            //文件在下载过程中变化时服务器返回200整个文件，分段校验失败
+            segmentHeadMap.put(HttpHeaders.IF_RANGE, eTag);
+        }
+        log.info("分段下载 {} ，长度 {} ，共 {} 段，已完成 {} 段", url, total, segments, completed.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(segmentCount, segments),
+                newThreadFactory());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (completed.isEmpty()) {
+                channel.truncate(0);
+            }
+            if (channel.size() < total) {
+                //预分配到完整长度，各分段的写入位置都在文件范围内
+                channel.write(ByteBuffer.wrap(new byte[1]), total - 1);
+            }
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < segments; i++) {
+                if (completed.contains(i)) {
+                    continue;
+                }
+                final int index = i;
+                final long start = i * segmentSize;
+                final long end = Math.min(total, start + segmentSize) - 1;
+                futures.add(executor.submit(() -> {
+                    downloadSegment(segmentHeadMap, channel, start, end);
+                    recordSegment(channel, index);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            channel.force(false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("segmented download interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        Files.deleteIfExists(progressPath);
+        return total;
+    }
+    
+    private void downloadSegment(Map<String, String> segmentHeadMap, FileChannel channel, long start, long end)
+            throws IOException {
+        CloseableHttpResponse response = HttpUtil.sendDownloadRequest(url, segmentHeadMap, start, end);
+        try {
+            HttpUtil.checkDownloadResponse(response);
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT
+                    || HttpUtil.contentRangeStart(response) != start) {
+                //可能是200整个文件，不读取响应内容，关闭响应时断开连接
+                throw new IOException("http 分段下载未返回请求的范围 " + start + "-" + end + "，文件可能已变化，url: " + url);
+            }
+            long written = HttpUtil.transferTo(response.getEntity(), channel, start);
+            if (written != end - start + 1) {
+                throw new IOException("http 分段下载长度不完整，期望 " + (end - start + 1) + "，实际 " + written + "，url: " + url);
+            }
+        } finally {
+            HttpUtil.closeQuietly(response);
+        }
+    }
+    
+    /**
+     * 读取已完成的分段，文件长度、分段大小或ETag与进度文件不一致时重新开始
+     * 分段序号只在分段大小相同时对应同一段字节，segmentCount变化后沿用旧序号会跳过未下载的范围
+     */
+    private Set<Integer> loadProgress(long total, long segmentSize, String eTag) throws IOException {
+        String header = total + "\t" + segmentSize + "\t" + (eTag == null ? "" : eTag);
+        if (Files.exists(progressPath) && Files.exists(path) && Files.size(path) == total) {
+            List<String> lines = Files.readAllLines(progressPath, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(header)) {
+                Set<Integer> completed = new HashSet<>();
+                for (String line : lines.subList(1, lines.size())) {
+                    if (!line.isEmpty()) {
+                        completed.add(Integer.parseInt(line.trim()));
+                    }
+                }
+                return completed;
+            }
+        }
+        Files.write(progressPath, Collections.singletonList(header), StandardCharsets.UTF_8);
+        return new HashSet<>();
+    }
+    
+    /**
+     * 分段写入完成后记录进度；分段数据先刷盘，进度中的分段一定已完整写入
+     */
+    private synchronized void recordSegment(FileChannel channel, int index) throws IOException {
+        channel.force(false);
+        Files.write(progressPath, Collections.singletonList(String.valueOf(index)), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+    }
+    
+    private static ThreadFactory newThreadFactory() {
+        final AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "http-download-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+}
@@ -0,0 +1,99 @@
+package net.polyv.common.v1.base;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 只统计最近一段时间的延迟直方图，用于需要跟随实时状况变化的分位数，如对冲探测的等待时间
+ * 时间窗口分成若干片，每片是一个LatencyHistogram，按时间轮换，过期的片在下次写入时替换为新的
+ * 累计指标仍使用LatencyHistogram
+ * @author: sadboy
+ **/
+public class SlidingLatencyHistogram {
+    private final long sliceMillis;
+    private final Slice[] slices;
+    private final LongSupplier clock;
+    
+    /**
+     * @param windowMillis 时间窗口，单位毫秒
+     * @param sliceCount 窗口分片数，越多过期越平滑
+     */
+    public SlidingLatencyHistogram(long windowMillis, int sliceCount) {
+        this(windowMillis, sliceCount, System::currentTimeMillis);
+    }
+    
+    SlidingLatencyHistogram(long windowMillis, int sliceCount, LongSupplier clock) {
+        if (sliceCount <= 0 || windowMillis < sliceCount) {
+            throw new IllegalArgumentException("invalid window: " + windowMillis + "ms / " + sliceCount);
+        }
+        this.sliceMillis = windowMillis / sliceCount;
+        this.slices = new Slice[sliceCount];
+        for (int i = 0; i < sliceCount; i++) {
+            slices[i] = new Slice();
+        }
+        this.clock = clock;
+    }
+    
+    /**
+     * 记录一次耗时
+     * @param micros 耗时，单位微秒
+     */
+    public void record(long micros) {
+        long epoch = clock.getAsLong() / sliceMillis;
+        Slice slice = slices[(int) (epoch % slices.length)];
+        if (slice.epoch != epoch) {
+            synchronized (slice) {
+                if (slice.epoch != epoch) {
+                    //替换而不是清零，正在读取的线程不会看到一半被清空的计数
+                    slice.histogram = new LatencyHistogram();
+                    slice.epoch = epoch;
+                }
+            }
+        }
+        slice.histogram.record(micros);
+    }
+    
+    /**
+     * 计算窗口内的分位数
+     * @param quantile 分位，如0.95
+     * @return 耗时，单位微秒，窗口内没有记录时返回0
+     */
+    public long quantileMicros(double quantile) {
+        long[] snapshot = new long[LatencyHistogram.BUCKET_COUNT];
+        long maxMicros = 0;
+        long currentEpoch = clock.getAsLong() / sliceMillis;
+        for (Slice slice : slices) {
+            LatencyHistogram histogram = slice.histogram;
+            if (isLive(slice, currentEpoch)) {
+                histogram.addCountsTo(snapshot);
+                maxMicros = Math.max(maxMicros, histogram.getMaxMicros());
+            }
+        }
+        return LatencyHistogram.quantileOf(snapshot, quantile, maxMicros);
+    }
+    
+    /**
+     * @return 窗口内的记录数
+     */
+    public long getCount() {
+        long count = 0;
+        long currentEpoch = clock.getAsLong() / sliceMillis;
+        for (Slice slice : slices) {
+            LatencyHistogram histogram = slice.histogram;
+            if (isLive(slice, currentEpoch)) {
+                count += histogram.getCount();
+            }
+        }
+        return count;
+    }
+    
+    private boolean isLive(Slice slice, long currentEpoch) {
+        long epoch = slice.epoch;
+        return epoch >= 0 && epoch > currentEpoch - slices.length;
+    }
+    
+    private static class Slice {
+        private volatile long epoch = -1;
+        private volatile LatencyHistogram histogram = new LatencyHistogram();
+    }
+    
+}
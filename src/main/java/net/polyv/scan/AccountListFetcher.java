@@ -0,0 +1,139 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import net.polyv.common.v1.base.HttpUtil;
+import net.polyv.common.v1.exception.PloyvSdkException;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListRequest;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListResponse;
+
+/**
+ * 使用指定账号查询一页点播视频，每个请求按账号计算userId、timestamp和sign，不读写全局的VodGlobalConfig
+ * 多个账号可以同时翻页，请求经过HttpUtil，与SDK调用共用按域名的限流、熔断和重试
+ * 签名：除sign外的参数按名称排序，拼接为 secretKey + 名称1值1名称2值2... + secretKey，取MD5的32位大写十六进制
+ * @author: sadboy
+ **/
+public class AccountListFetcher implements VideoListFetcher {
+    /**
+     * 点播视频列表接口
+     */
+    public static final String LIST_URL = "https://api.polyv.net/v4/video/list";
+    
+    private final ScanAccount account;
+    private final String url;
+    
+    /**
+     * @param account 账号
+     */
+    public AccountListFetcher(ScanAccount account) {
+        this(account, LIST_URL);
+    }
+    
+    /**
+     * @param account 账号
+     * @param url 列表接口地址
+     */
+    AccountListFetcher(ScanAccount account, String url) {
+        this.account = account;
+        this.url = url;
+    }
+    
+    @Override
+    public VodGetVideoListResponse fetch(VodGetVideoListRequest request) throws IOException {
+        Map<String, String> params = toParams(request);
+        params.put("userId", account.getUserId());
+        params.put("timestamp", String.valueOf(System.currentTimeMillis()));
+        params.put("sign", sign(params, account.getSecretKey()));
+        Map<String, String> headMap = new HashMap<>();
+        headMap.put(HttpUtil.USER_ID_NAME, account.getUserId());
+        String body = HttpUtil.get(url + "?" + encode(params), null, headMap);
+        JSONObject json = JSON.parseObject(body);
+        if (json == null) {
+            throw new IOException("账号" + account.getName() + "查询视频列表返回空内容");
+        }
+        Integer code = json.getInteger("code");
+        if (code == null || code != 200) {
+            throw new PloyvSdkException(code, "账号" + account.getName() + "查询视频列表失败：" + json.getString("message"));
+        }
+        return json.getObject("data", VodGetVideoListResponse.class);
+    }
+    
+    /**
+     * 列表查询条件转换为请求参数，值为null的条件不发送
+     * @param request 查询条件
+     * @return 按参数名排序的请求参数
+     */
+    static Map<String, String> toParams(VodGetVideoListRequest request) {
+        Map<String, String> params = new TreeMap<>();
+        put(params, "filters", request.getFilters());
+        put(params, "categoryId", request.getCategoryId());
+        put(params, "containSubCate", request.getContainSubCate());
+        put(params, "status", request.getStatus());
+        put(params, "currentPage", request.getCurrentPage());
+        put(params, "pageSize", request.getPageSize());
+        put(params, "startTime", format(request.getStartTime()));
+        put(params, "endTime", format(request.getEndTime()));
+        return params;
+    }
+    
+    /**
+     * @param params 除sign外的请求参数
+     * @param secretKey 账号的secretKey
+     * @return 32位大写的MD5签名
+     */
+    static String sign(Map<String, String> params, String secretKey) {
+        StringBuilder plain = new StringBuilder(secretKey);
+        for (Map.Entry<String, String> entry : new TreeMap<>(params).entrySet()) {
+            if (!"sign".equals(entry.getKey())) {
+                plain.append(entry.getKey()).append(entry.getValue());
+            }
+        }
+        plain.append(secretKey);
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(plain.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString().toUpperCase();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static void put(Map<String, String> params, String name, Object value) {
+        if (value != null) {
+            params.put(name, value.toString());
+        }
+    }
+    
+    private static String format(Date date) {
+        return date == null ? null : new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(date);
+    }
+    
+    private static String encode(Map<String, String> params) throws UnsupportedEncodingException {
+        StringBuilder query = new StringBuilder();
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            if (query.length() > 0) {
+                query.append('&');
+            }
+            query.append(URLEncoder.encode(entry.getKey(), "UTF-8")).append('=')
+                    .append(URLEncoder.encode(entry.getValue(), "UTF-8"));
+        }
+        return query.toString();
+    }
+    
+}
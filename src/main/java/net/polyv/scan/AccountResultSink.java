@@ -0,0 +1,84 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按账号分别输出检查结果，每个账号一个报告文件
+ * 报告文件名为原文件名加 -账号名，如 report.csv 对应 report-accountA.csv
+ * 账号名中字母、数字、_、-、.以外的字符替换为_，不能通过账号名写到报告目录之外
+ * @author: sadboy
+ **/
+public class AccountResultSink implements ResultSink {
+    private final Map<String, ChannelResultSink> sinks = new LinkedHashMap<>();
+    
+    private AccountResultSink() {
+    }
+    
+    /**
+     * @param reportPath 报告文件，按账号名派生出各账号的报告文件
+     * @param accounts 账号列表
+     * @return 结果输出
+     * @throws IOException 读写异常
+     */
+    public static AccountResultSink open(Path reportPath, List<ScanAccount> accounts) throws IOException {
+        AccountResultSink sink = new AccountResultSink();
+        try {
+            Set<Path> paths = new HashSet<>();
+            for (ScanAccount account : accounts) {
+                Path path = pathFor(reportPath, account.getName());
+                if (!paths.add(path)) {
+                    throw new IOException("账号的报告文件重复：" + account.getName() + "，" + path);
+                }
+                sink.sinks.put(account.getName(), ChannelResultSink.open(path, false));
+            }
+        } catch (IOException e) {
+            sink.close();
+            throw e;
+        }
+        return sink;
+    }
+    
+    /**
+     * @return 账号的报告文件，与报告文件在同一目录
+     */
+    public static Path pathFor(Path reportPath, String account) {
+        account = account.replaceAll("[^\\p{L}\\p{N}_.-]", "_");
+        String fileName = reportPath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String accountFileName = dot > 0
+                ? fileName.substring(0, dot) + "-" + account + fileName.substring(dot)
+                : fileName + "-" + account;
+        return reportPath.resolveSibling(accountFileName);
+    }
+    
+    @Override
+    public void write(CheckResult result) throws IOException {
+        ChannelResultSink sink = sinks.get(result.getAccount());
+        if (sink == null) {
+            throw new IOException("未知的账号：" + result.getAccount() + "，vid：" + result.getVid());
+        }
+        sink.write(result);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (ChannelResultSink sink : sinks.values()) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+}
@@ -0,0 +1,238 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListRequest;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListResponse;
+import net.polyv.vod.v1.service.manage.impl.VodListServiceImpl;
+
+/**
+ * 按分类分片并行查询点播视频
+ * 每个分类只查询本分类下的视频(containSubCate=false)，分片之间互不重叠；再按vid去重，防止扫描期间视频移动分类被重复检查
+ * 各分类的视频数之和与不分片查询的视频总数不一致时以异常结束，避免不在分类树中的视频被静默漏掉
+ * 每个分类先查询第一页得到总页数，剩余页按区间二分成任务放入ForkJoinPool，空闲线程窃取大分类的后半区间，避免单个大分类拖尾
+ * 续扫时重新查询全部分类，跳过进度日志中已检查的视频
+ * @author: sadboy
+ **/
+@Slf4j
+public class CategoryShardedProducer implements VideoSource {
+    private final Supplier<VodGetVideoListRequest> requestFactory;
+    private final String rootCategoryId;
+    private final BlockingQueue<VideoItem> queue;
+    private final int listThreads;
+    /**
+     * 扫描进度日志，为null时不记录进度
+     */
+    private final ScanJournal journal;
+    private final CompactVidSet seenVids = new CompactVidSet();
+    private final AtomicLong producedCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+    /**
+     * 各分类第一页返回的视频数之和
+     */
+    private final AtomicLong shardedTotal = new AtomicLong();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    
+    /**
+     * @param requestFactory 创建点播视频查询条件，每个列表请求使用新的实例，categoryId、containSubCate和currentPage由生产者设置
+     * @param rootCategoryId 只扫描该分类及其子分类，为null时扫描全部分类
+     * @param queue 检查线程消费的队列
+     * @param listThreads 并发查询列表的线程数
+     * @param journal 扫描进度日志，先放入上次未检查完的视频，查询时跳过已检查的视频
+     */
+    public CategoryShardedProducer(Supplier<VodGetVideoListRequest> requestFactory, String rootCategoryId,
+            BlockingQueue<VideoItem> queue, int listThreads, ScanJournal journal) {
+        if (listThreads <= 0) {
+            throw new IllegalArgumentException("listThreads must be positive: " + listThreads);
+        }
+        this.requestFactory = requestFactory;
+        this.rootCategoryId = rootCategoryId;
+        this.queue = queue;
+        this.listThreads = listThreads;
+        this.journal = journal;
+    }
+    
+    @Override
+    public void run() {
+        ForkJoinPool pool = new ForkJoinPool(listThreads);
+        try {
+            if (journal != null) {
+                for (String vid : journal.getPendingVids()) {
+                    offer(new VideoItem(vid));
+                }
+            }
+            long total = fetchTotal();
+            List<String> categoryIds = CategoryTree.listCategoryIds(rootCategoryId);
+            log.info("按 {} 个分类分片查询视频列表，并发数 {}，视频总数 {}", categoryIds.size(), listThreads, total);
+            List<CategoryTask> tasks = new ArrayList<>();
+            for (String categoryId : categoryIds) {
+                tasks.add(new CategoryTask(categoryId));
+            }
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).get();
+            if (failure.get() == null && shardedTotal.get() != total) {
+                throw new IOException("各分类视频数之和 " + shardedTotal.get() + " 与视频总数 " + total
+                        + " 不一致，有视频不在分类树中或扫描期间有视频上传、删除，请不分片重新扫描");
+            }
+            log.info("分类分片查询完成，共 {} 个视频，去重 {} 个", producedCount.get(), duplicateCount.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            //分片任务内的异常已先记录，这里只记录查询分类树、视频总数及总数校验的异常
+            failure.compareAndSet(null, e);
+        } finally {
+            pool.shutdownNow();
+        }
+        try {
+            queue.put(VideoItem.END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 不分片查询一条视频，得到指定分类及其子分类下的视频总数
+     */
+    private long fetchTotal() throws Exception {
+        VodGetVideoListRequest request = requestFactory.get();
+        request.setCategoryId(rootCategoryId).setContainSubCate(true).setCurrentPage(1).setPageSize(1).setSign(null);
+        VodGetVideoListResponse response = new VodListServiceImpl().getVideoList(request);
+        if (response == null || response.getTotalItems() == null) {
+            throw new IOException("视频列表缺少总数，无法校验分类分片");
+        }
+        return response.getTotalItems();
+    }
+    
+    /**
+     * 查询一个分类的一页视频并写入队列
+     * @return 查询结果，没有结果时返回null
+     */
+    private VodGetVideoListResponse fetchPage(String categoryId, int page) throws Exception {
+        VodGetVideoListRequest request = requestFactory.get();
+        request.setCategoryId(categoryId).setContainSubCate(false).setCurrentPage(page).setSign(null);
+        VodGetVideoListResponse response = new VodListServiceImpl().getVideoList(request);
+        if (response != null && response.getContents() != null) {
+            for (VodGetVideoListResponse.VodGetVideoList videoList : response.getContents()) {
+                offer(VideoItem.of(videoList));
+            }
+        }
+        return response;
+    }
+    
+    private void offer(VideoItem item) throws InterruptedException {
+        String vid = item.getVid();
+        if (!seenVids.add(vid)) {
+            duplicateCount.incrementAndGet();
+            return;
+        }
+        if (journal != null && journal.isChecked(vid)) {
+            return;
+        }
+        queue.put(item);
+        producedCount.incrementAndGet();
+    }
+    
+    /**
+     * 任务内出现的异常记录后跳过剩余任务，由调用方在检查结束后抛出
+     * 任务只在当前进程的ForkJoinPool中执行，不会被序列化
+     */
+    @SuppressWarnings("serial")
+    private abstract class ShardTask extends RecursiveAction {
+        @Override
+        protected final void compute() {
+            if (failure.get() != null) {
+                return;
+            }
+            try {
+                fetch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+        
+        protected abstract void fetch() throws Exception;
+    }
+    
+    /**
+     * 查询分类的第一页，再拆分剩余页
+     */
+    @SuppressWarnings("serial")
+    private class CategoryTask extends ShardTask {
+        private final String categoryId;
+        
+        CategoryTask(String categoryId) {
+            this.categoryId = categoryId;
+        }
+        
+        @Override
+        protected void fetch() throws Exception {
+            VodGetVideoListResponse response = fetchPage(categoryId, 1);
+            if (response == null || response.getTotalPage() == null || response.getTotalItems() == null) {
+                throw new IOException("分类 " + categoryId + " 的视频列表缺少分页信息");
+            }
+            shardedTotal.addAndGet(response.getTotalItems());
+            int totalPage = response.getTotalPage();
+            if (totalPage > 1) {
+                new PageRangeTask(categoryId, 2, totalPage).invoke();
+            }
+        }
+    }
+    
+    /**
+     * 查询分类的[fromPage, toPage]页，区间大于一页时二分，后半区间可被空闲线程窃取
+     */
+    @SuppressWarnings("serial")
+    private class PageRangeTask extends ShardTask {
+        private final String categoryId;
+        private final int fromPage;
+        private final int toPage;
+        
+        PageRangeTask(String categoryId, int fromPage, int toPage) {
+            this.categoryId = categoryId;
+            this.fromPage = fromPage;
+            this.toPage = toPage;
+        }
+        
+        @Override
+        protected void fetch() throws Exception {
+            if (fromPage == toPage) {
+                fetchPage(categoryId, fromPage);
+                return;
+            }
+            int middle = (fromPage + toPage) >>> 1;
+            invokeAll(new PageRangeTask(categoryId, fromPage, middle),
+                    new PageRangeTask(categoryId, middle + 1, toPage));
+        }
+    }
+    
+    @Override
+    public long getProducedCount() {
+        return producedCount.get();
+    }
+    
+    /**
+     * @return 重复出现而被跳过的视频数
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+    
+    @Override
+    public Exception getFailure() {
+        return failure.get();
+    }
+    
+}
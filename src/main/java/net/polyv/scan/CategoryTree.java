@@ -0,0 +1,80 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.polyv.vod.v1.entity.manage.category.VodGetCategoryRequest;
+import net.polyv.vod.v1.entity.manage.category.VodGetCategoryResponse;
+import net.polyv.vod.v1.service.manage.impl.VodCategoryServiceImpl;
+
+/**
+ * 查询点播后台的分类树，展开为分类id列表，作为并行扫描的分片
+ * @author: sadboy
+ **/
+public class CategoryTree {
+    /**
+     * 默认分类，未指定分类上传的视频都在该分类下，分类树接口不一定返回
+     */
+    public static final String DEFAULT_CATEGORY_ID = "1";
+    
+    private CategoryTree() {
+    }
+    
+    /**
+     * 查询分类树并按先序遍历展开
+     * @param rootCategoryId 只展开该分类及其子分类，为null时展开全部分类，并包含默认分类
+     * @return 分类id列表，指定的分类不在分类树中时只返回该分类
+     * @throws IOException 查询分类异常
+     */
+    public static List<String> listCategoryIds(String rootCategoryId) throws IOException {
+        List<VodGetCategoryResponse> categories;
+        try {
+            categories = new VodCategoryServiceImpl().getCategory(new VodGetCategoryRequest());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        return expand(categories, rootCategoryId);
+    }
+    
+    /**
+     * 按先序遍历展开分类树
+     * @param categories 分类树的顶层分类
+     * @param rootCategoryId 只展开该分类及其子分类，为null时展开全部分类，并包含默认分类
+     * @return 分类id列表
+     */
+    static List<String> expand(List<VodGetCategoryResponse> categories, String rootCategoryId) {
+        List<String> categoryIds = new ArrayList<>();
+        if (categories != null) {
+            for (VodGetCategoryResponse category : categories) {
+                collect(category, rootCategoryId == null, rootCategoryId, categoryIds);
+            }
+        }
+        if (rootCategoryId == null && !categoryIds.contains(DEFAULT_CATEGORY_ID)) {
+            categoryIds.add(0, DEFAULT_CATEGORY_ID);
+        }
+        if (categoryIds.isEmpty() && rootCategoryId != null) {
+            categoryIds.add(rootCategoryId);
+        }
+        return categoryIds;
+    }
+    
+    /**
+     * @param inSubtree 当前节点是否在指定的分类之下
+     */
+    private static void collect(VodGetCategoryResponse node, boolean inSubtree, String rootCategoryId,
+            List<String> categoryIds) {
+        String categoryId = node.getCategoryId();
+        boolean selected = inSubtree || (categoryId != null && categoryId.equals(rootCategoryId));
+        if (selected && categoryId != null && !categoryId.isEmpty()) {
+            categoryIds.add(categoryId);
+        }
+        if (node.getNodes() != null) {
+            for (VodGetCategoryResponse child : node.getNodes()) {
+                collect(child, selected, rootCategoryId, categoryIds);
+            }
+        }
+    }
+    
+}
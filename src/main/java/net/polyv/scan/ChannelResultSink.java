@@ -0,0 +1,171 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 通过带缓冲的FileChannel逐行写出检查结果
+ * 缓冲区写满或每隔一秒写入文件，运行过程中可以用tail查看报告
+ * 记录扫描进度时，进度日志在记录已检查之前调用 {@link #sync()}，保证已记录的视频的结果都在报告文件中
+ * @author: sadboy
+ **/
+@Slf4j
+public abstract class ChannelResultSink implements ResultSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ScheduledExecutorService flushExecutor;
+    
+    protected ChannelResultSink(Path path, boolean append) throws IOException {
+        this.channel = append
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+        if (append) {
+            dropPartialLastLine();
+            channel.position(channel.size());
+        }
+        if (channel.size() == 0) {
+            String header = header();
+            if (header != null) {
+                writeLine(header);
+            }
+        }
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "result-sink-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 进程异常退出时报告可能只写了最后一行的一部分，续写前去掉
+     */
+    private void dropPartialLastLine() throws IOException {
+        long position = channel.size();
+        ByteBuffer last = ByteBuffer.allocate(1);
+        while (position > 0) {
+            last.clear();
+            channel.read(last, position - 1);
+            if (last.get(0) == '\n') {
+                break;
+            }
+            position--;
+        }
+        if (position < channel.size()) {
+            log.warn("丢弃报告中写了一半的最后一行，共 {} 字节", channel.size() - position);
+            channel.truncate(position);
+        }
+    }
+    
+    /**
+     * 按文件扩展名选择报告格式，.jsonl 输出JSON Lines，其他输出CSV
+     * @param path 报告文件
+     * @param append 是否追加到已有报告之后，续扫时使用
+     * @return 结果输出
+     * @throws IOException 读写异常
+     */
+    public static ChannelResultSink open(Path path, boolean append) throws IOException {
+        if (path.getFileName().toString().endsWith(".jsonl")) {
+            return new JsonlResultSink(path, append);
+        }
+        return new CsvResultSink(path, append);
+    }
+    
+    /**
+     * @return 文件第一行，没有表头时返回null
+     */
+    protected abstract String header();
+    
+    /**
+     * @param result 检查结果
+     * @return 结果对应的一行内容，不含换行符
+     */
+    protected abstract String format(CheckResult result);
+    
+    @Override
+    public void write(CheckResult result) throws IOException {
+        writeLine(format(result));
+    }
+    
+    private synchronized void writeLine(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.remaining()) {
+            flush();
+        }
+        if (bytes.length > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+            return;
+        }
+        buffer.put(bytes);
+    }
+    
+    /**
+     * 把缓冲区内容写入文件
+     * @throws IOException 读写异常
+     */
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * 把缓冲区内容写入文件并落盘，force在锁外执行，不阻塞检查线程写入
+     * @throws IOException 读写异常
+     */
+    public void sync() throws IOException {
+        synchronized (this) {
+            if (!channel.isOpen()) {
+                //关闭时已落盘
+                return;
+            }
+            flush();
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            //并发关闭，关闭时已落盘
+        }
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        flushExecutor.shutdownNow();
+        synchronized (this) {
+            if (channel.isOpen()) {
+                flush();
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+    
+}
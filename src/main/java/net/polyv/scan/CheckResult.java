@@ -0,0 +1,120 @@
+package net.polyv.scan;
+
+/**
+ * 单个视频封面的检查结果
+ * @author: sadboy
+ **/
+public class CheckResult {
+    
+    /**
+     * 检查结论
+     */
+    public enum Reason {
+        /**
+         * 封面正常
+         */
+        OK,
+        /**
+         * 视频已删除，跳过检查
+         */
+        DELETED,
+        /**
+         * videojson中没有status
+         */
+        MISSING_STATUS,
+        /**
+         * 视频没有封面地址
+         */
+        MISSING_COVER,
+        /**
+         * 封面图片返回非200状态码
+         */
+        NON_200,
+        /**
+         * 请求超时
+         */
+        TIMEOUT,
+        /**
+         * 其他读写异常
+         */
+        ERROR;
+        
+        /**
+         * @return 是否属于封面有问题的视频
+         */
+        public boolean isError() {
+            return this != OK && this != DELETED;
+        }
+    }
+    
+    private final String vid;
+    private final String imgUrl;
+    private final Integer httpStatus;
+    private final Reason reason;
+    private final long latencyMillis;
+    /**
+     * 多账号扫描时视频所属的账号，单账号时为null
+     */
+    private final String account;
+    
+    /**
+     * @param vid 视频id
+     * @param imgUrl 封面地址，未取到时为null
+     * @param httpStatus 封面图片状态码，未请求时为null
+     * @param reason 检查结论
+     * @param latencyMillis 检查耗时，单位毫秒
+     */
+    public CheckResult(String vid, String imgUrl, Integer httpStatus, Reason reason, long latencyMillis) {
+        this(vid, imgUrl, httpStatus, reason, latencyMillis, null);
+    }
+    
+    private CheckResult(String vid, String imgUrl, Integer httpStatus, Reason reason, long latencyMillis,
+            String account) {
+        this.vid = vid;
+        this.imgUrl = imgUrl;
+        this.httpStatus = httpStatus;
+        this.reason = reason;
+        this.latencyMillis = latencyMillis;
+        this.account = account;
+    }
+    
+    /**
+     * @param account 视频所属的账号
+     * @return 带上账号的检查结果
+     */
+    public CheckResult withAccount(String account) {
+        return new CheckResult(vid, imgUrl, httpStatus, reason, latencyMillis, account);
+    }
+    
+    public String getVid() {
+        return vid;
+    }
+    
+    public String getImgUrl() {
+        return imgUrl;
+    }
+    
+    public Integer getHttpStatus() {
+        return httpStatus;
+    }
+    
+    public Reason getReason() {
+        return reason;
+    }
+    
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+    
+    public String getAccount() {
+        return account;
+    }
+    
+    /**
+     * @return 封面是否有问题
+     */
+    public boolean isError() {
+        return reason.isError();
+    }
+    
+}
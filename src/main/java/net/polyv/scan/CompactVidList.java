@@ -0,0 +1,66 @@
+package net.polyv.scan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按添加顺序保存vid的紧凑列表，标准vid每个占17字节，不符合格式的vid另存为String
+ * 非线程安全
+ * @author: sadboy
+ **/
+public class CompactVidList {
+    private long[] highs;
+    private long[] lows;
+    /**
+     * 后缀加1；0表示该位置是非标准vid，值在others中
+     */
+    private byte[] tags;
+    private int size;
+    private final List<String> others = new ArrayList<>();
+    
+    public CompactVidList() {
+        this(1024);
+    }
+    
+    public CompactVidList(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        highs = new long[capacity];
+        lows = new long[capacity];
+        tags = new byte[capacity];
+    }
+    
+    public void add(String vid) {
+        if (size == tags.length) {
+            int capacity = size + (size >> 1);
+            highs = Arrays.copyOf(highs, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+        }
+        if (VidCodec.isEncodable(vid)) {
+            highs[size] = VidCodec.high(vid);
+            lows[size] = VidCodec.low(vid);
+            tags[size] = VidCodec.tag(vid);
+        } else {
+            //非标准vid在others中的下标存放在highs里
+            highs[size] = others.size();
+            others.add(vid);
+        }
+        size++;
+    }
+    
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        if (tags[index] == 0) {
+            return others.get((int) highs[index]);
+        }
+        return VidCodec.decode(highs[index], lows[index], tags[index]);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+}
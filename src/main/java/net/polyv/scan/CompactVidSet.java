@@ -0,0 +1,201 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 紧凑存储的vid集合，标准vid每个占17字节(开放寻址，装载因子0.75时约23字节)，String存储每个约100字节以上
+ * 槽位存放在一个ByteBuffer中，可以在堆内、堆外(direct)或内存映射的临时文件中，千万级vid也只占很小的堆
+ * 不符合标准格式的vid，以及槽位数达到上限后新增的vid，退回HashSet保存；线程安全
+ * 存储位置可通过 -Dscan.vidStorage=heap|direct|mapped 调整，默认heap
+ * @author: sadboy
+ **/
+public class CompactVidSet {
+    
+    /**
+     * 槽位存储位置
+     */
+    public enum Storage {
+        HEAP, DIRECT, MAPPED;
+        
+        /**
+         * @return -Dscan.vidStorage 指定的存储位置
+         */
+        public static Storage fromSystemProperty() {
+            return valueOf(System.getProperty("scan.vidStorage", "heap").toUpperCase(Locale.ROOT));
+        }
+    }
+    
+    private static final int SLOT_SIZE = 17;
+    private static final int MAX_CAPACITY = 1 << 26;
+    
+    private final Storage storage;
+    private final int maxCapacity;
+    private ByteBuffer slots;
+    private int capacity;
+    private int size;
+    private final Set<String> others = new HashSet<>();
+    
+    public CompactVidSet() {
+        this(1024, Storage.fromSystemProperty());
+    }
+    
+    /**
+     * @param expectedSize 预计的vid数，避免扩容
+     * @param storage 槽位存储位置
+     */
+    public CompactVidSet(int expectedSize, Storage storage) {
+        this(expectedSize, storage, MAX_CAPACITY);
+    }
+    
+    /**
+     * @param expectedSize 预计的vid数，避免扩容
+     * @param storage 槽位存储位置
+     * @param maxCapacity 槽位数上限，2的幂
+     */
+    CompactVidSet(int expectedSize, Storage storage, int maxCapacity) {
+        if (maxCapacity < 16 || Integer.bitCount(maxCapacity) != 1) {
+            throw new IllegalArgumentException("maxCapacity must be a power of two >= 16: " + maxCapacity);
+        }
+        this.storage = storage;
+        this.maxCapacity = maxCapacity;
+        int initialCapacity = 16;
+        while (initialCapacity < maxCapacity && initialCapacity * 3L / 4 < expectedSize) {
+            initialCapacity <<= 1;
+        }
+        this.capacity = initialCapacity;
+        this.slots = allocate(initialCapacity);
+    }
+    
+    /**
+     * @param vid 视频id
+     * @return 集合中原来没有该vid时返回true
+     */
+    public synchronized boolean add(String vid) {
+        if (!VidCodec.isEncodable(vid)) {
+            return others.add(vid);
+        }
+        long high = VidCodec.high(vid);
+        long low = VidCodec.low(vid);
+        byte tag = VidCodec.tag(vid);
+        int slot = find(high, low, tag);
+        if (slots.get(slot * SLOT_SIZE + 16) != 0) {
+            return false;
+        }
+        if ((size + 1) * 4L > capacity * 3L) {
+            if (capacity >= maxCapacity) {
+                //槽位数已达上限，继续扩容会超出ByteBuffer的长度，之后的vid退回HashSet
+                return others.add(vid);
+            }
+            resize();
+            slot = find(high, low, tag);
+        }
+        write(slot, high, low, tag);
+        size++;
+        return true;
+    }
+    
+    /**
+     * @param vid 视频id
+     * @return 集合中是否有该vid
+     */
+    public synchronized boolean contains(String vid) {
+        if (!VidCodec.isEncodable(vid)) {
+            return others.contains(vid);
+        }
+        long high = VidCodec.high(vid);
+        long low = VidCodec.low(vid);
+        byte tag = VidCodec.tag(vid);
+        return slots.get(find(high, low, tag) * SLOT_SIZE + 16) != 0 || (!others.isEmpty() && others.contains(vid));
+    }
+    
+    /**
+     * @return vid数
+     */
+    public synchronized int size() {
+        return size + others.size();
+    }
+    
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    /**
+     * 线性探测，返回该vid所在的槽位，不存在时返回应插入的空槽位
+     */
+    private int find(long high, long low, byte tag) {
+        int mask = capacity - 1;
+        int slot = VidCodec.hash(high, low, tag) & mask;
+        while (true) {
+            int offset = slot * SLOT_SIZE;
+            byte slotTag = slots.get(offset + 16);
+            if (slotTag == 0 || (slotTag == tag && slots.getLong(offset) == high && slots.getLong(offset + 8) == low)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    private void write(int slot, long high, long low, byte tag) {
+        int offset = slot * SLOT_SIZE;
+        slots.putLong(offset, high);
+        slots.putLong(offset + 8, low);
+        slots.put(offset + 16, tag);
+    }
+    
+    private void resize() {
+        if (capacity >= maxCapacity) {
+            throw new IllegalStateException("CompactVidSet capacity exceeded: " + capacity);
+        }
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity;
+        capacity = oldCapacity << 1;
+        slots = allocate(capacity);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int offset = slot * SLOT_SIZE;
+            byte tag = oldSlots.get(offset + 16);
+            if (tag != 0) {
+                long high = oldSlots.getLong(offset);
+                long low = oldSlots.getLong(offset + 8);
+                write(find(high, low, tag), high, low, tag);
+            }
+        }
+    }
+    
+    private ByteBuffer allocate(int slotCount) {
+        int bytes = slotCount * SLOT_SIZE;
+        switch (storage) {
+            case DIRECT:
+                return ByteBuffer.allocateDirect(bytes);
+            case MAPPED:
+                return map(bytes);
+            default:
+                return ByteBuffer.allocate(bytes);
+        }
+    }
+    
+    /**
+     * 映射一个临时文件，文件在映射建立后即删除，由操作系统按需换入换出
+     */
+    private static ByteBuffer map(int bytes) {
+        try {
+            Path path = Files.createTempFile("vid-set", ".slots");
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+}
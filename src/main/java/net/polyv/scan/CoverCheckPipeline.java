@@ -0,0 +1,160 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 并发检查视频封面，工作线程共用HttpClientUtil连接池
+ * 除正常以外的检查结果逐个写入ResultSink，内存占用与视频数无关
+ * @author: sadboy
+ **/
+public class CoverCheckPipeline {
+    
+    /**
+     * 单个视频的检查逻辑
+     */
+    public interface VidChecker {
+        /**
+         * @param item 视频，列表接口返回了封面地址时可以直接检查封面
+         * @return 检查结果
+         * @throws IOException 读写异常
+         */
+        CheckResult check(VideoItem item) throws IOException;
+    }
+    
+    /**
+     * 检查结果已写入ResultSink之后的回调
+     */
+    public interface CheckListener {
+        /**
+         * @param item 视频
+         * @param result 检查结果，非正常的结果已写入ResultSink
+         * @throws IOException 读写异常
+         */
+        void onChecked(VideoItem item, CheckResult result) throws IOException;
+    }
+    
+    private final int workerCount;
+    private final VidChecker checker;
+    private final CheckListener listener;
+    
+    /**
+     * @param workerCount 并发检查线程数
+     * @param checker 单个视频的检查逻辑
+     */
+    public CoverCheckPipeline(int workerCount, VidChecker checker) {
+        this(workerCount, checker, null);
+    }
+    
+    /**
+     * @param workerCount 并发检查线程数
+     * @param checker 单个视频的检查逻辑
+     * @param listener 结果写出后的回调，如记录扫描进度，为null时不回调
+     */
+    public CoverCheckPipeline(int workerCount, VidChecker checker, CheckListener listener) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive: " + workerCount);
+        }
+        this.workerCount = workerCount;
+        this.checker = checker;
+        this.listener = listener;
+    }
+    
+    /**
+     * 启动视频来源，并发检查其写入队列的视频，列表查询与检查同时进行
+     * @param producer 视频来源，需要与本方法使用同一个队列
+     * @param queue 生产者写入的有界队列
+     * @param sink 检查结果输出
+     * @return 各检查结论的视频数
+     * @throws IOException 任一视频检查出现读写异常
+     */
+    public Map<CheckResult.Reason, Long> run(VideoSource producer, final BlockingQueue<VideoItem> queue,
+            final ResultSink sink) throws IOException {
+        Thread producerThread = new Thread(producer, "video-list-producer");
+        producerThread.setDaemon(true);
+        producerThread.start();
+        final Map<CheckResult.Reason, LongAdder> counters = new EnumMap<>(CheckResult.Reason.class);
+        for (CheckResult.Reason reason : CheckResult.Reason.values()) {
+            counters.put(reason, new LongAdder());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount, newThreadFactory());
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                completionService.submit(() -> {
+                    while (true) {
+                        VideoItem item = queue.take();
+                        if (item == VideoItem.END) {
+                            //放回结束标记，通知其他检查线程
+                            queue.put(item);
+                            return null;
+                        }
+                        CheckResult result = checker.check(item);
+                        counters.get(result.getReason()).increment();
+                        if (result.getReason() != CheckResult.Reason.OK) {
+                            sink.write(result);
+                        }
+                        if (listener != null) {
+                            listener.onChecked(item, result);
+                        }
+                    }
+                });
+            }
+            for (int i = 0; i < workerCount; i++) {
+                completionService.take().get();
+            }
+            producerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("cover check interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+            producerThread.interrupt();
+        }
+        Exception failure = producer.getFailure();
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure != null) {
+            throw new IOException(failure);
+        }
+        Map<CheckResult.Reason, Long> counts = new EnumMap<>(CheckResult.Reason.class);
+        for (Map.Entry<CheckResult.Reason, LongAdder> entry : counters.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+    
+    private static ThreadFactory newThreadFactory() {
+        final AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "cover-check-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+}
@@ -0,0 +1,271 @@
+package net.polyv.scan;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+
+import lombok.extern.slf4j.Slf4j;
+import net.polyv.common.v1.base.ProbeResult;
+
+/**
+ * 封面图片探测结果缓存，记录 url -> (状态码, ETag, Last-Modified, 检查时间)
+ * 有效期内直接返回缓存结果，过期后带If-None-Match/If-Modified-Since重新校验，图片未变化时只需一个304
+ * 同一个url同时只发送一个请求，其他线程等待该请求的结果
+ * 超过容量时淘汰最久未使用的记录，缓存可以持久化到文件供下次运行使用
+ * @author: sadboy
+ **/
+@Slf4j
+public class CoverProbeCache {
+    
+    /**
+     * 实际发送探测请求的逻辑
+     */
+    public interface Prober {
+        /**
+         * @param url 请求地址
+         * @param headMap 条件请求头
+         * @return 探测结果
+         * @throws IOException 读写异常
+         */
+        ProbeResult probe(String url, Map<String, String> headMap) throws IOException;
+    }
+    
+    private static class CacheEntry {
+        private final int statusCode;
+        private final String eTag;
+        private final String lastModified;
+        private final long checkedAt;
+        
+        private CacheEntry(int statusCode, String eTag, String lastModified, long checkedAt) {
+            this.statusCode = statusCode;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.checkedAt = checkedAt;
+        }
+    }
+    
+    private final Prober prober;
+    private final long ttlMillis;
+    private final Map<String, CacheEntry> entries;
+    private final ConcurrentMap<String, CompletableFuture<Integer>> inFlight = new ConcurrentHashMap<>();
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    
+    /**
+     * @param prober 实际发送探测请求的逻辑
+     * @param ttlMillis 缓存有效期，有效期内不发送请求
+     * @param maxEntries 最多缓存的url数
+     */
+    public CoverProbeCache(Prober prober, long ttlMillis, final int maxEntries) {
+        this.prober = prober;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * 返回url的状态码，优先使用缓存
+     * @param url 图片地址
+     * @return 状态码
+     * @throws IOException 读写异常，图片地址为空时也抛出
+     */
+    public int getStatusCode(String url) throws IOException {
+        if (url == null || url.isEmpty()) {
+            throw new IOException("封面地址为空");
+        }
+        CacheEntry cached = getFresh(url);
+        if (cached != null) {
+            hitCount.incrementAndGet();
+            return cached.statusCode;
+        }
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        CompletableFuture<Integer> existing = inFlight.putIfAbsent(url, future);
+        if (existing != null) {
+            hitCount.incrementAndGet();
+            return await(existing);
+        }
+        try {
+            //等待期间其他线程可能刚刚完成了同一个url的请求
+            cached = getFresh(url);
+            int statusCode = cached != null ? cached.statusCode : revalidate(url);
+            future.complete(statusCode);
+            return statusCode;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(url, future);
+        }
+    }
+    
+    private int revalidate(String url) throws IOException {
+        CacheEntry stale;
+        synchronized (entries) {
+            stale = entries.get(url);
+        }
+        Map<String, String> headMap = new HashMap<>();
+        if (stale != null && stale.eTag != null) {
+            headMap.put(HttpHeaders.IF_NONE_MATCH, stale.eTag);
+        }
+        if (stale != null && stale.lastModified != null) {
+            headMap.put(HttpHeaders.IF_MODIFIED_SINCE, stale.lastModified);
+        }
+        ProbeResult probeResult = prober.probe(url, headMap);
+        long now = System.currentTimeMillis();
+        if (probeResult.getStatusCode() == HttpStatus.SC_NOT_MODIFIED && !headMap.isEmpty()) {
+            notModifiedCount.incrementAndGet();
+            put(url, new CacheEntry(stale.statusCode, stale.eTag, stale.lastModified, now));
+            return stale.statusCode;
+        }
+        missCount.incrementAndGet();
+        int statusCode = probeResult.getStatusCode();
+        //限流和服务端错误是临时状态，不缓存；没有发送校验头时的304不代表图片状态，也不缓存
+        if (statusCode != 429 && statusCode != HttpStatus.SC_NOT_MODIFIED
+                && statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            put(url, new CacheEntry(statusCode, probeResult.getETag(), probeResult.getLastModified(), now));
+        }
+        return statusCode;
+    }
+    
+    private CacheEntry getFresh(String url) {
+        synchronized (entries) {
+            CacheEntry entry = entries.get(url);
+            if (entry != null && System.currentTimeMillis() - entry.checkedAt < ttlMillis) {
+                return entry;
+            }
+            return null;
+        }
+    }
+    
+    private void put(String url, CacheEntry entry) {
+        synchronized (entries) {
+            entries.put(url, entry);
+        }
+    }
+    
+    private static int await(CompletableFuture<Integer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("probe cache wait interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    /**
+     * 从文件读取缓存，文件不存在时忽略，无法识别的行跳过
+     * 每行一条记录：url、状态码、ETag、Last-Modified、检查时间，以tab分隔
+     * @param path 缓存文件
+     * @throws IOException 读写异常
+     */
+    public void load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 5) {
+                    log.warn("无法识别的封面缓存记录：{}", line);
+                    continue;
+                }
+                try {
+                    put(fields[0], new CacheEntry(Integer.parseInt(fields[1]), emptyToNull(fields[2]),
+                            emptyToNull(fields[3]), Long.parseLong(fields[4])));
+                } catch (NumberFormatException e) {
+                    //写入中断留下的残行等，跳过后该url重新探测
+                    log.warn("无法识别的封面缓存记录：{}", line);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 把缓存写入文件，先写临时文件再替换，写入中断不会损坏原文件
+     * @param path 缓存文件
+     * @throws IOException 读写异常
+     */
+    public void save(Path path) throws IOException {
+        List<Map.Entry<String, CacheEntry>> snapshot;
+        synchronized (entries) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        Path absolutePath = path.toAbsolutePath();
+        Path parent = absolutePath.getParent() == null ? Paths.get(".") : absolutePath.getParent();
+        Path tempPath = Files.createTempFile(parent, absolutePath.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, CacheEntry> mapEntry : snapshot) {
+                CacheEntry entry = mapEntry.getValue();
+                writer.write(mapEntry.getKey() + "\t" + entry.statusCode + "\t" + nullToEmpty(entry.eTag) + "\t"
+                        + nullToEmpty(entry.lastModified) + "\t" + entry.checkedAt);
+                writer.newLine();
+            }
+        }
+        Files.move(tempPath, absolutePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+    
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+    
+    /**
+     * @return 缓存命中（含合并到同一请求）的次数
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    
+    /**
+     * @return 重新校验返回304的次数
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+    
+    /**
+     * @return 需要完整探测的次数
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+    
+}
@@ -0,0 +1,38 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * CSV格式的检查结果报告
+ * @author: sadboy
+ **/
+public class CsvResultSink extends ChannelResultSink {
+    
+    public CsvResultSink(Path path, boolean append) throws IOException {
+        super(path, append);
+    }
+    
+    @Override
+    protected String header() {
+        return "vid,imgUrl,httpStatus,reason,latencyMillis";
+    }
+    
+    @Override
+    protected String format(CheckResult result) {
+        return escape(result.getVid()) + "," + escape(result.getImgUrl()) + ","
+                + (result.getHttpStatus() == null ? "" : result.getHttpStatus()) + "," + result.getReason() + ","
+                + result.getLatencyMillis();
+    }
+    
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    
+}
@@ -0,0 +1,129 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListRequest;
+
+/**
+ * 常驻进程模式，按水位线只扫描新上传的视频
+ * 每轮查询上传时间在 [水位线-重叠时间, 本轮开始时间) 内的视频，成功后水位线前移到本轮开始时间
+ * 列表接口只能按上传时间过滤，封面被修改的旧视频由定期的全量扫描覆盖；第一次运行时先做一次全量扫描
+ * 一轮失败时水位线不变，下一轮重新扫描同一时间段
+ * 每轮增量扫描写单独的报告，重叠时间段内的视频会在相邻两轮的报告中各出现一次，但不会在同一报告中重复
+ * @author: sadboy
+ **/
+@Slf4j
+public class DeltaScanDaemon implements Runnable {
+    
+    /**
+     * 扫描一个上传时间段内的视频
+     */
+    public interface WindowScanner {
+        /**
+         * @param startTime 上传时间下限(含)，为null时扫描全部视频
+         * @param endTime 上传时间上限(不含)，为null时扫描全部视频
+         * @return 各检查结论的视频数
+         * @throws IOException 读写异常
+         */
+        Map<CheckResult.Reason, Long> scan(Date startTime, Date endTime) throws IOException;
+    }
+    
+    private final ScanWatermark watermark;
+    private final long intervalMillis;
+    private final long fullSweepIntervalMillis;
+    private final long overlapMillis;
+    private final WindowScanner scanner;
+    
+    /**
+     * @param watermark 水位线
+     * @param intervalMillis 两轮增量扫描之间的间隔
+     * @param fullSweepIntervalMillis 全量扫描的间隔
+     * @param overlapMillis 相邻两轮时间段的重叠，防止上传后延迟进入列表的视频被漏掉
+     * @param scanner 扫描逻辑
+     */
+    public DeltaScanDaemon(ScanWatermark watermark, long intervalMillis, long fullSweepIntervalMillis,
+            long overlapMillis, WindowScanner scanner) {
+        this.watermark = watermark;
+        this.intervalMillis = intervalMillis;
+        this.fullSweepIntervalMillis = fullSweepIntervalMillis;
+        this.overlapMillis = overlapMillis;
+        this.scanner = scanner;
+    }
+    
+    /**
+     * 按上传时间过滤视频列表，SDK的startTime/endTime为Date，由SDK按接口要求的格式序列化
+     * @param request 视频列表查询条件
+     * @param startTime 上传时间下限，为null时不过滤
+     * @param endTime 上传时间上限
+     * @return 传入的查询条件
+     */
+    public static VodGetVideoListRequest applyWindow(VodGetVideoListRequest request, Date startTime, Date endTime) {
+        if (startTime != null) {
+            request.setStartTime(startTime).setEndTime(endTime);
+        }
+        return request;
+    }
+    
+    /**
+     * 增量扫描一轮的报告文件，文件名为原文件名加本轮开始时间，如 report.csv 对应 report-20240101-120000.csv
+     * @param reportPath 报告文件
+     * @param roundStart 本轮开始时间，即时间段的上限
+     * @return 本轮的报告文件
+     */
+    public static Path roundReportPath(Path reportPath, Date roundStart) {
+        String round = new SimpleDateFormat("yyyyMMdd-HHmmss").format(roundStart);
+        String fileName = reportPath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String roundFileName = dot > 0
+                ? fileName.substring(0, dot) + "-" + round + fileName.substring(dot)
+                : fileName + "-" + round;
+        return reportPath.resolveSibling(roundFileName);
+    }
+    
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            runOnce();
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("增量扫描已停止，水位线：{}", new Date(watermark.getScannedUntil()));
+    }
+    
+    /**
+     * 执行一轮扫描，到了全量扫描的时间时做全量扫描，否则做增量扫描
+     */
+    public void runOnce() {
+        long roundStart = System.currentTimeMillis();
+        boolean fullSweep = watermark.getLastFullSweep() == 0
+                || roundStart - watermark.getLastFullSweep() >= fullSweepIntervalMillis;
+        try {
+            Map<CheckResult.Reason, Long> counts;
+            if (fullSweep) {
+                log.info("开始全量扫描");
+                counts = scanner.scan(null, null);
+                watermark.setLastFullSweep(roundStart);
+            } else {
+                Date startTime = new Date(Math.max(0, watermark.getScannedUntil() - overlapMillis));
+                Date endTime = new Date(roundStart);
+                log.info("开始增量扫描，上传时间 {} ~ {}", startTime, endTime);
+                counts = scanner.scan(startTime, endTime);
+            }
+            watermark.setScannedUntil(roundStart);
+            watermark.save();
+            log.info("{}扫描完成，耗时 {} 秒，检查结果统计：{}", fullSweep ? "全量" : "增量",
+                    (System.currentTimeMillis() - roundStart) / 1000, counts);
+        } catch (IOException | RuntimeException e) {
+            log.error((fullSweep ? "全量" : "增量") + "扫描失败，水位线保持不变，下一轮重试", e);
+        }
+    }
+    
+}
@@ -0,0 +1,36 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.alibaba.fastjson.JSON;
+
+/**
+ * JSON Lines格式的检查结果报告，每行一个json对象
+ * @author: sadboy
+ **/
+public class JsonlResultSink extends ChannelResultSink {
+    
+    public JsonlResultSink(Path path, boolean append) throws IOException {
+        super(path, append);
+    }
+    
+    @Override
+    protected String header() {
+        return null;
+    }
+    
+    @Override
+    protected String format(CheckResult result) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("vid", result.getVid());
+        line.put("imgUrl", result.getImgUrl());
+        line.put("httpStatus", result.getHttpStatus());
+        line.put("reason", result.getReason().name());
+        line.put("latencyMillis", result.getLatencyMillis());
+        return JSON.toJSONString(line);
+    }
+    
+}
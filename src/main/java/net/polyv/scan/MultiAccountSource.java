@@ -0,0 +1,167 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 多个账号共用一组检查线程的视频来源
+ * 每个账号的列表生产者写入各自的队列，调度线程按权重公平地(stride调度)把视频转入检查队列，
+ * 同时按账号的每秒检查数限速；一个账号视频多或列表慢都不会饿死其他账号
+ * 写入检查队列的视频带上账号名，用于按账号输出报告
+ * @author: sadboy
+ **/
+@Slf4j
+public class MultiAccountSource implements VideoSource {
+    
+    /**
+     * 创建单个账号的列表生产者
+     */
+    public interface ProducerFactory {
+        /**
+         * @param account 账号
+         * @param queue 该账号的队列，生产者结束时写入 {@link VideoItem#END}
+         * @return 生产者
+         */
+        VideoSource create(ScanAccount account, BlockingQueue<VideoItem> queue);
+    }
+    
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final List<ScanAccount> accounts;
+    private final BlockingQueue<VideoItem> queue;
+    private final int laneCapacity;
+    private final ProducerFactory producerFactory;
+    private final AtomicLong producedCount = new AtomicLong();
+    private volatile Exception failure;
+    
+    /**
+     * @param accounts 账号列表
+     * @param queue 检查线程消费的队列
+     * @param laneCapacity 每个账号队列的容量
+     * @param producerFactory 创建单个账号的列表生产者
+     */
+    public MultiAccountSource(List<ScanAccount> accounts, BlockingQueue<VideoItem> queue, int laneCapacity,
+            ProducerFactory producerFactory) {
+        this.accounts = accounts;
+        this.queue = queue;
+        this.laneCapacity = laneCapacity;
+        this.producerFactory = producerFactory;
+    }
+    
+    @Override
+    public void run() {
+        List<Lane> lanes = new ArrayList<>();
+        for (ScanAccount account : accounts) {
+            lanes.add(new Lane(account));
+        }
+        List<String> failedAccounts = new ArrayList<>();
+        try {
+            int active = lanes.size();
+            //最近一次调度的虚拟时间，空闲后重新有视频的账号从这里开始计算，不会因为之前空闲而连续抢占
+            double virtualTime = 0;
+            while (active > 0) {
+                Lane chosen = null;
+                long minWaitNanos = IDLE_PARK_NANOS;
+                for (Lane lane : lanes) {
+                    if (lane.finished) {
+                        continue;
+                    }
+                    VideoItem head = lane.queue.peek();
+                    if (head == null) {
+                        continue;
+                    }
+                    if (head == VideoItem.END) {
+                        lane.queue.poll();
+                        lane.finished = true;
+                        active--;
+                        if (lane.producer.getFailure() != null) {
+                            log.error("账号 " + lane.account.getName() + " 查询视频列表失败", lane.producer.getFailure());
+                            failedAccounts.add(lane.account.getName());
+                        }
+                        continue;
+                    }
+                    long waitNanos = lane.limiter.nanosUntilAvailable();
+                    if (waitNanos > 0) {
+                        minWaitNanos = Math.min(minWaitNanos, waitNanos);
+                        continue;
+                    }
+                    lane.pass = Math.max(lane.pass, virtualTime);
+                    if (chosen == null || lane.pass < chosen.pass) {
+                        chosen = lane;
+                    }
+                }
+                if (chosen == null) {
+                    LockSupport.parkNanos(minWaitNanos);
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
+                    continue;
+                }
+                VideoItem item = chosen.queue.poll();
+                chosen.limiter.acquire();
+                virtualTime = chosen.pass;
+                chosen.pass += 1 / chosen.account.getWeight();
+                queue.put(item.withAccount(chosen.account.getName()));
+                producedCount.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Lane lane : lanes) {
+                lane.thread.interrupt();
+            }
+            return;
+        }
+        if (!failedAccounts.isEmpty()) {
+            failure = new IOException("以下账号查询视频列表失败，报告不完整：" + failedAccounts);
+        }
+        try {
+            queue.put(VideoItem.END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Override
+    public long getProducedCount() {
+        return producedCount.get();
+    }
+    
+    @Override
+    public Exception getFailure() {
+        return failure;
+    }
+    
+    /**
+     * 单个账号的队列、生产者和调度状态
+     */
+    private class Lane {
+        private final ScanAccount account;
+        private final BlockingQueue<VideoItem> queue = new ArrayBlockingQueue<>(laneCapacity);
+        private final VideoSource producer;
+        private final Thread thread;
+        private final RateLimiter limiter;
+        /**
+         * stride调度的进度，每调度一个视频增加 1/权重
+         */
+        private double pass;
+        private boolean finished;
+        
+        Lane(ScanAccount account) {
+            this.account = account;
+            this.limiter = new RateLimiter(account.getRequestsPerSecond());
+            this.producer = producerFactory.create(account, queue);
+            this.thread = new Thread(producer, "video-list-" + account.getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+    
+}
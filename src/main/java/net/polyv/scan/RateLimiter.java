@@ -0,0 +1,60 @@
+package net.polyv.scan;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全局请求速率限制器，按固定间隔平滑放行请求
+ * @author: sadboy
+ **/
+public class RateLimiter {
+    /**
+     * 两次放行之间的间隔，单位纳秒
+     */
+    private final long intervalNanos;
+    /**
+     * 下一次可以放行的时间点
+     */
+    private long nextFreeNanos;
+    
+    /**
+     * @param permitsPerSecond 每秒允许的请求数，小于等于0表示不限速
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond <= 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.nextFreeNanos = System.nanoTime();
+    }
+    
+    /**
+     * 获取一次请求许可，超过速率时阻塞等待
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    public void acquire() throws InterruptedException {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextFreeNanos < now) {
+                nextFreeNanos = now;
+            }
+            waitNanos = nextFreeNanos - now;
+            nextFreeNanos += intervalNanos;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+    
+    /**
+     * 不占用许可，查询距离下一次放行还需等待的时间，供不能阻塞的调度线程使用
+     * @return 需要等待的时间，单位纳秒，0表示可以立即放行
+     */
+    public synchronized long nanosUntilAvailable() {
+        if (intervalNanos == 0) {
+            return 0;
+        }
+        return Math.max(0, nextFreeNanos - System.nanoTime());
+    }
+    
+}
@@ -0,0 +1,19 @@
+package net.polyv.scan;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 检查结果输出，每得到一个结果立即写出，不在内存中累积
+ * @author: sadboy
+ **/
+public interface ResultSink extends Closeable {
+    
+    /**
+     * 写出一个检查结果，需要支持多个检查线程同时调用
+     * @param result 检查结果
+     * @throws IOException 读写异常
+     */
+    void write(CheckResult result) throws IOException;
+    
+}
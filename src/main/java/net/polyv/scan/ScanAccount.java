@@ -0,0 +1,89 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多账号扫描时的单个点播账号
+ * @author: sadboy
+ **/
+public class ScanAccount {
+    private final String name;
+    private final String userId;
+    private final String secretKey;
+    /**
+     * 共享检查线程时的权重，权重越大分到的检查次数越多
+     */
+    private final double weight;
+    /**
+     * 该账号每秒最多检查的视频数，小于等于0不限速
+     */
+    private final double requestsPerSecond;
+    
+    public ScanAccount(String name, String userId, String secretKey, double weight, double requestsPerSecond) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive: " + weight);
+        }
+        this.name = name;
+        this.userId = userId;
+        this.secretKey = secretKey;
+        this.weight = weight;
+        this.requestsPerSecond = requestsPerSecond;
+    }
+    
+    /**
+     * 读取账号列表，每行一个账号：名称,userId,secretKey[,权重[,每秒检查数]]，空行和#开头的行忽略
+     * 权重默认1，每秒检查数默认不限速
+     * @param path 账号列表文件
+     * @return 账号列表
+     * @throws IOException 读取异常
+     */
+    public static List<ScanAccount> load(Path path) throws IOException {
+        List<ScanAccount> accounts = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 3) {
+                throw new IllegalArgumentException("账号配置格式错误，应为 名称,userId,secretKey[,权重[,每秒检查数]]：" + line);
+            }
+            double weight = fields.length > 3 ? Double.parseDouble(fields[3].trim()) : 1;
+            double requestsPerSecond = fields.length > 4 ? Double.parseDouble(fields[4].trim()) : 0;
+            accounts.add(new ScanAccount(fields[0].trim(), fields[1].trim(), fields[2].trim(), weight,
+                    requestsPerSecond));
+        }
+        return accounts;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public String getSecretKey() {
+        return secretKey;
+    }
+    
+    public double getWeight() {
+        return weight;
+    }
+    
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+    
+}
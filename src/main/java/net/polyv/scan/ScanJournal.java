@@ -0,0 +1,323 @@
+package net.polyv.scan;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 扫描进度日志，只追加写入，按批次刷盘
+ * 记录已完成的列表页及每个vid的检查结果，进程异常退出后重新启动可以跳过已完成的部分
+ * 每行一条记录，字段以tab分隔：
+ * P 页码 vid1,vid2,...   列表页已查询
+ * L                      列表已全部查询完
+ * V vid E|O              vid已检查，E封面有问题，O正常
+ * 检查记录先暂存在内存中，刷盘时先让报告落盘再写入，异常退出后已记录的视频的结果一定在报告中
+ * @author: sadboy
+ **/
+@Slf4j
+public class ScanJournal implements Closeable {
+    private static final String PAGE = "P";
+    private static final String LIST_END = "L";
+    private static final String CHECK = "V";
+    private static final String ERROR = "E";
+    private static final String OK = "O";
+    
+    private final Path path;
+    private final FileChannel channel;
+    private final int syncBatchSize;
+    private final ScheduledExecutorService syncExecutor;
+    private int unsyncedCount;
+    /**
+     * 已提交给后台线程但还没有执行的刷盘
+     */
+    private boolean syncScheduled;
+    /**
+     * 还没有写入文件的检查记录，报告落盘之后才能写入
+     */
+    private final StringBuilder pendingChecks = new StringBuilder();
+    private int pendingCheckCount;
+    /**
+     * 检查结果报告，写入检查记录前先落盘
+     */
+    private ChannelResultSink report;
+    
+    private int lastPage;
+    private boolean listCompleted;
+    /**
+     * 已检查的vid，千万级视频时占用的堆远小于HashSet<String>
+     */
+    private final CompactVidSet checkedVids = new CompactVidSet();
+    /**
+     * 列表页中出现过的vid，按列表顺序，去掉已检查的即为待检查的vid
+     */
+    private final CompactVidList listedVids = new CompactVidList();
+    
+    private ScanJournal(Path path, int syncBatchSize, long syncIntervalMillis) throws IOException {
+        this.path = path;
+        this.syncBatchSize = syncBatchSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long validLength = load();
+        //丢弃异常退出时写了一半的最后一行
+        channel.truncate(validLength);
+        channel.position(validLength);
+        this.syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scan-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncExecutor.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 打开进度日志，文件已存在时读取上次的扫描进度
+     * @param path 日志文件
+     * @param syncBatchSize 累计多少条记录刷一次盘
+     * @param syncIntervalMillis 最长刷盘间隔，单位毫秒
+     * @return 进度日志
+     * @throws IOException 读写异常
+     */
+    public static ScanJournal open(Path path, int syncBatchSize, long syncIntervalMillis) throws IOException {
+        return new ScanJournal(path, syncBatchSize, syncIntervalMillis);
+    }
+    
+    /**
+     * 读取已有记录
+     * @return 最后一个完整行结束的位置
+     */
+    private long load() throws IOException {
+        long validLength = 0;
+        long position = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        InputStream inputStream = new BufferedInputStream(Channels.newInputStream(channel));
+        int b;
+        while ((b = inputStream.read()) != -1) {
+            position++;
+            if (b == '\n') {
+                apply(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                line.reset();
+                validLength = position;
+            } else {
+                line.write(b);
+            }
+        }
+        if (validLength > 0) {
+            log.info("读取扫描进度 {} ，已查询到第 {} 页，已查询 {} 个视频，已检查 {} 个视频", path, lastPage,
+                    listedVids.size(), checkedVids.size());
+        }
+        return validLength;
+    }
+    
+    private void apply(String line) {
+        String[] fields = line.split("\t", -1);
+        switch (fields[0]) {
+            case PAGE:
+                lastPage = Math.max(lastPage, Integer.parseInt(fields[1]));
+                if (!fields[2].isEmpty()) {
+                    for (String vid : fields[2].split(",")) {
+                        listedVids.add(vid);
+                    }
+                }
+                break;
+            case LIST_END:
+                listCompleted = true;
+                break;
+            case CHECK:
+                checkedVids.add(fields[1]);
+                break;
+            default:
+                log.warn("无法识别的扫描进度记录：{}", line);
+                break;
+        }
+    }
+    
+    /**
+     * 记录一页列表已查询完成
+     * @param page 页码
+     * @param vids 该页的视频id
+     * @throws IOException 读写异常
+     */
+    public synchronized void recordPage(int page, List<String> vids) throws IOException {
+        append(PAGE + "\t" + page + "\t" + String.join(",", vids));
+        lastPage = page;
+    }
+    
+    /**
+     * 记录列表已全部查询完成
+     * @throws IOException 读写异常
+     */
+    public synchronized void recordListEnd() throws IOException {
+        append(LIST_END);
+        listCompleted = true;
+    }
+    
+    /**
+     * 设置检查结果报告，之后每次写入检查记录前先把报告落盘
+     * @param report 检查结果报告
+     */
+    public synchronized void setReport(ChannelResultSink report) {
+        this.report = report;
+    }
+    
+    /**
+     * 记录单个视频的检查结果，需要在结果写入报告之后调用
+     * 记录在下次刷盘时、报告落盘之后写入文件
+     * @param vid 视频id
+     * @param error 封面是否有问题
+     */
+    public synchronized void recordCheck(String vid, boolean error) {
+        pendingChecks.append(CHECK).append('\t').append(vid).append('\t').append(error ? ERROR : OK).append('\n');
+        pendingCheckCount++;
+        scheduleSyncIfNeeded();
+    }
+    
+    private void append(String line) throws IOException {
+        write(line + "\n");
+        unsyncedCount++;
+        scheduleSyncIfNeeded();
+    }
+    
+    private void write(String lines) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private void scheduleSyncIfNeeded() {
+        if (unsyncedCount + pendingCheckCount >= syncBatchSize && !syncScheduled) {
+            //由后台线程刷盘，检查线程不在持有日志锁时等待fsync
+            syncScheduled = true;
+            syncExecutor.execute(this::syncQuietly);
+        }
+    }
+    
+    /**
+     * 只在锁内取走待写入的记录，报告和日志的force都在锁外执行，刷盘期间其他线程可以继续追加
+     * 先让报告落盘再写入检查记录，进程在任意时刻退出，已记录的视频的结果都已在报告文件中
+     */
+    private void sync() throws IOException {
+        String checks;
+        ChannelResultSink report;
+        synchronized (this) {
+            syncScheduled = false;
+            if ((unsyncedCount == 0 && pendingCheckCount == 0) || !channel.isOpen()) {
+                return;
+            }
+            checks = pendingChecks.toString();
+            pendingChecks.setLength(0);
+            pendingCheckCount = 0;
+            unsyncedCount = 0;
+            report = this.report;
+        }
+        if (!checks.isEmpty()) {
+            if (report != null) {
+                report.sync();
+            }
+            synchronized (this) {
+                write(checks);
+            }
+        }
+        channel.force(false);
+    }
+    
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+    }
+    
+    /**
+     * @return 上次已查询完成的最后一页，没有记录时返回0
+     */
+    public synchronized int getLastPage() {
+        return lastPage;
+    }
+    
+    /**
+     * @return 上次是否已查询完全部列表
+     */
+    public synchronized boolean isListCompleted() {
+        return listCompleted;
+    }
+    
+    /**
+     * @return 上次已查询出但还没有检查的视频id，按列表顺序
+     */
+    public synchronized List<String> getPendingVids() {
+        List<String> pendingVids = new ArrayList<>();
+        CompactVidSet seen = new CompactVidSet(listedVids.size(), CompactVidSet.Storage.HEAP);
+        for (int i = 0; i < listedVids.size(); i++) {
+            String vid = listedVids.get(i);
+            if (!checkedVids.contains(vid) && seen.add(vid)) {
+                pendingVids.add(vid);
+            }
+        }
+        return pendingVids;
+    }
+    
+    /**
+     * @param vid 视频id
+     * @return 上次是否已检查过该视频
+     */
+    public synchronized boolean isChecked(String vid) {
+        return checkedVids.contains(vid);
+    }
+    
+    /**
+     * @return 是否读取到了上次的扫描进度
+     */
+    public synchronized boolean isResumed() {
+        return lastPage > 0 || !checkedVids.isEmpty();
+    }
+    
+    /**
+     * 刷盘并关闭，保留日志文件供下次继续扫描
+     * @throws IOException 读写异常
+     */
+    @Override
+    public void close() throws IOException {
+        //不能中断正在force的线程，中断会直接关闭FileChannel
+        syncExecutor.shutdown();
+        try {
+            syncExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        synchronized (this) {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        }
+    }
+    
+    /**
+     * 扫描全部完成，关闭并删除日志文件，下次重新开始扫描
+     * @throws IOException 读写异常
+     */
+    public void complete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+    
+}
@@ -0,0 +1,74 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * 增量扫描的水位线，只在一轮扫描成功后前移，进程重启后从上次成功的位置继续
+ * 文件内容为两行毫秒时间戳：已扫描到的上传时间、上次全量扫描完成的时间
+ * @author: sadboy
+ **/
+public class ScanWatermark {
+    private final Path path;
+    /**
+     * 上传时间早于该时间的视频已检查过，0表示还没有扫描过
+     */
+    private long scannedUntil;
+    /**
+     * 上次全量扫描开始的时间，0表示还没有全量扫描过
+     */
+    private long lastFullSweep;
+    
+    private ScanWatermark(Path path) {
+        this.path = path;
+    }
+    
+    /**
+     * 读取水位线，文件不存在时从头开始
+     * @param path 水位线文件
+     * @return 水位线
+     * @throws IOException 读取异常
+     */
+    public static ScanWatermark load(Path path) throws IOException {
+        ScanWatermark watermark = new ScanWatermark(path);
+        if (Files.exists(path)) {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            if (lines.size() >= 2) {
+                watermark.scannedUntil = Long.parseLong(lines.get(0).trim());
+                watermark.lastFullSweep = Long.parseLong(lines.get(1).trim());
+            }
+        }
+        return watermark;
+    }
+    
+    /**
+     * 写临时文件后替换，写入过程中退出不会损坏原水位线
+     * @throws IOException 写入异常
+     */
+    public void save() throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tempPath, (scannedUntil + "\n" + lastFullSweep + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    public long getScannedUntil() {
+        return scannedUntil;
+    }
+    
+    public void setScannedUntil(long scannedUntil) {
+        this.scannedUntil = scannedUntil;
+    }
+    
+    public long getLastFullSweep() {
+        return lastFullSweep;
+    }
+    
+    public void setLastFullSweep(long lastFullSweep) {
+        this.lastFullSweep = lastFullSweep;
+    }
+    
+}
@@ -0,0 +1,99 @@
+package net.polyv.scan;
+
+/**
+ * 点播vid与紧凑表示之间的转换
+ * 标准vid为32位小写十六进制加 _ 和0~254的数字后缀，如 1b448be3239be11b5a206f26e3baa988_1，
+ * 前32位存成两个long，后缀加1存成一个byte(0表示空)，每个vid共17字节
+ * 不符合该格式的vid无法编码，由调用方另行保存
+ * @author: sadboy
+ **/
+final class VidCodec {
+    static final int HEX_LENGTH = 32;
+    static final int MAX_SUFFIX = 254;
+    
+    private VidCodec() {
+    }
+    
+    /**
+     * @return 是否为可以无损编码的标准vid
+     */
+    static boolean isEncodable(String vid) {
+        int length = vid.length();
+        if (length < HEX_LENGTH + 2 || length > HEX_LENGTH + 4 || vid.charAt(HEX_LENGTH) != '_') {
+            return false;
+        }
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            char c = vid.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        //后缀不能有前导0，保证解码后与原字符串一致
+        if (vid.charAt(HEX_LENGTH + 1) == '0' && length > HEX_LENGTH + 2) {
+            return false;
+        }
+        int suffix = 0;
+        for (int i = HEX_LENGTH + 1; i < length; i++) {
+            char c = vid.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            suffix = suffix * 10 + (c - '0');
+        }
+        return suffix <= MAX_SUFFIX;
+    }
+    
+    /**
+     * @return 前16位十六进制，调用前需确认 {@link #isEncodable}
+     */
+    static long high(String vid) {
+        return parseHex(vid, 0);
+    }
+    
+    /**
+     * @return 第17~32位十六进制
+     */
+    static long low(String vid) {
+        return parseHex(vid, 16);
+    }
+    
+    /**
+     * @return 后缀加1，取值1~255
+     */
+    static byte tag(String vid) {
+        return (byte) (Integer.parseInt(vid.substring(HEX_LENGTH + 1)) + 1);
+    }
+    
+    static String decode(long high, long low, byte tag) {
+        char[] chars = new char[HEX_LENGTH + 4];
+        writeHex(high, chars, 0);
+        writeHex(low, chars, 16);
+        chars[HEX_LENGTH] = '_';
+        String suffix = String.valueOf((tag & 0xFF) - 1);
+        suffix.getChars(0, suffix.length(), chars, HEX_LENGTH + 1);
+        return new String(chars, 0, HEX_LENGTH + 1 + suffix.length());
+    }
+    
+    static int hash(long high, long low, byte tag) {
+        long hash = high * 0x9E3779B97F4A7C15L ^ low * 0xC2B2AE3D27D4EB4FL ^ tag;
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+    
+    private static long parseHex(String vid, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 16; i++) {
+            value = (value << 4) | Character.digit(vid.charAt(i), 16);
+        }
+        return value;
+    }
+    
+    private static void writeHex(long value, char[] chars, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = Character.forDigit((int) (value & 0xF), 16);
+            value >>>= 4;
+        }
+    }
+    
+}
@@ -0,0 +1,91 @@
+package net.polyv.scan;
+
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListResponse;
+
+/**
+ * 列表阶段产出、检查阶段消费的单个视频
+ * 列表接口返回了basicInfo时带上封面地址和状态，检查时可以跳过videojson请求
+ * @author: sadboy
+ **/
+public class VideoItem {
+    /**
+     * 队列结束标记，生产者写入后表示没有更多视频
+     */
+    public static final VideoItem END = new VideoItem(null);
+    
+    private final String vid;
+    /**
+     * 列表接口返回的封面地址，没有时为null
+     */
+    private final String coverUrl;
+    /**
+     * 列表接口返回的视频状态，没有时为null
+     */
+    private final Integer status;
+    /**
+     * 多账号扫描时视频所属的账号，单账号时为null
+     */
+    private final String account;
+    
+    public VideoItem(String vid) {
+        this(vid, null, null);
+    }
+    
+    public VideoItem(String vid, String coverUrl, Integer status) {
+        this(vid, coverUrl, status, null);
+    }
+    
+    private VideoItem(String vid, String coverUrl, Integer status, String account) {
+        this.vid = vid;
+        this.coverUrl = coverUrl;
+        this.status = status;
+        this.account = account;
+    }
+    
+    /**
+     * 从列表接口的单个视频读取vid及basicInfo中的封面地址、状态
+     * @param videoList 列表接口返回的视频
+     * @return 视频
+     */
+    public static VideoItem of(VodGetVideoListResponse.VodGetVideoList videoList) {
+        String vid = videoList.getVideoId();
+        VodGetVideoListResponse.BasicInfo basicInfo = videoList.getBasicInfo();
+        if (basicInfo == null) {
+            return new VideoItem(vid);
+        }
+        String coverUrl = basicInfo.getCoverURL();
+        return new VideoItem(vid, coverUrl == null || coverUrl.isEmpty() ? null : coverUrl, basicInfo.getStatus());
+    }
+    
+    public String getVid() {
+        return vid;
+    }
+    
+    public String getCoverUrl() {
+        return coverUrl;
+    }
+    
+    public Integer getStatus() {
+        return status;
+    }
+    
+    public String getAccount() {
+        return account;
+    }
+    
+    /**
+     * @param account 视频所属的账号
+     * @return 带上账号的视频
+     */
+    public VideoItem withAccount(String account) {
+        return new VideoItem(vid, coverUrl, status, account);
+    }
+    
+    /**
+     * @return 列表接口是否已返回封面地址和状态
+     */
+    public boolean hasMetadata() {
+        return coverUrl != null && status != null;
+    }
+    
+}
@@ -0,0 +1,35 @@
+package net.polyv.scan;
+
+/**
+ * videojson中封面检查需要的字段
+ * @author: sadboy
+ **/
+public class VideoJson {
+    /**
+     * 视频状态，-1为已删除，没有该字段时为null
+     */
+    private final Integer status;
+    /**
+     * 封面大图地址，没有该字段时为null
+     */
+    private final String firstImageB;
+    
+    public VideoJson(Integer status, String firstImageB) {
+        this.status = status;
+        this.firstImageB = firstImageB;
+    }
+    
+    public Integer getStatus() {
+        return status;
+    }
+    
+    public String getFirstImageB() {
+        return firstImageB;
+    }
+    
+    @Override
+    public String toString() {
+        return "VideoJson{status=" + status + ", firstImageB=" + firstImageB + "}";
+    }
+    
+}
@@ -0,0 +1,363 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+
+import net.polyv.common.v1.base.DataParse;
+
+/**
+ * 从videojson响应流中直接读取status和first_image_b，不生成完整的字符串和JSONObject
+ * 只解析最外层对象的字段，其他字段跳过；兼容videojson中连续逗号(,,)的情况
+ * 两个字段都读到后停止解析，剩余内容读尽丢弃以便连接复用；字段读完之前内容就结束时抛出IOException
+ * @author: sadboy
+ **/
+public class VideoJsonParse implements DataParse<VideoJson> {
+    public static final VideoJsonParse INSTANCE = new VideoJsonParse();
+    
+    private static final byte[] STATUS = "status".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FIRST_IMAGE_B = "first_image_b".getBytes(StandardCharsets.US_ASCII);
+    private static final int KEY_OTHER = 0;
+    private static final int KEY_STATUS = 1;
+    private static final int KEY_FIRST_IMAGE_B = 2;
+    private static final int BUFFER_SIZE = 8192;
+    
+    /**
+     * 每个检查线程复用读缓冲区
+     */
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    
+    @Override
+    public VideoJson parseData(HttpEntity httpEntity, String encoding) throws IOException {
+        if (httpEntity == null) {
+            return new VideoJson(null, null);
+        }
+        try {
+            return parse(httpEntity.getContent());
+        } finally {
+            EntityUtils.consume(httpEntity);
+        }
+    }
+    
+    /**
+     * 从输入流读取videojson字段，不关闭输入流
+     * @param inputStream videojson内容
+     * @return status和first_image_b
+     * @throws IOException 读取异常或内容不是json对象
+     */
+    public static VideoJson parse(InputStream inputStream) throws IOException {
+        return new Parser(inputStream, BUFFER.get()).parse();
+    }
+    
+    private static final class Parser {
+        private final InputStream inputStream;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+        /**
+         * 字符串值的字节，按需扩容
+         */
+        private byte[] value = new byte[128];
+        private int valueLength;
+        
+        private Parser(InputStream inputStream, byte[] buffer) {
+            this.inputStream = inputStream;
+            this.buffer = buffer;
+        }
+        
+        private VideoJson parse() throws IOException {
+            Integer status = null;
+            String firstImageB = null;
+            boolean statusFound = false;
+            boolean firstImageFound = false;
+            if (nextNonWhitespace() != '{') {
+                throw new IOException("videojson is not a json object");
+            }
+            while (!(statusFound && firstImageFound)) {
+                int c = nextNonWhitespace();
+                if (c == '}') {
+                    break;
+                }
+                if (c == -1) {
+                    throw new IOException("truncated videojson");
+                }
+                if (c == ',') {
+                    //连续逗号直接跳过
+                    continue;
+                }
+                if (c != '"') {
+                    throw new IOException("unexpected character in videojson: " + (char) c);
+                }
+                int key = readKey();
+                if (nextNonWhitespace() != ':') {
+                    throw new IOException("videojson key without value");
+                }
+                c = nextNonWhitespace();
+                if (c == -1) {
+                    throw new IOException("truncated videojson");
+                }
+                switch (key) {
+                    case KEY_STATUS:
+                        status = readInteger(c);
+                        statusFound = true;
+                        break;
+                    case KEY_FIRST_IMAGE_B:
+                        firstImageB = readString(c);
+                        firstImageFound = true;
+                        break;
+                    default:
+                        skipValue(c);
+                        break;
+                }
+            }
+            return new VideoJson(status, firstImageB);
+        }
+        
+        private int next() throws IOException {
+            if (position == limit) {
+                limit = inputStream.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+        
+        /**
+         * 退回刚读取的一个字节
+         */
+        private void unread() {
+            position--;
+        }
+        
+        private int nextNonWhitespace() throws IOException {
+            int c;
+            do {
+                c = next();
+            } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+            return c;
+        }
+        
+        /**
+         * 读取字段名，边读边与目标字段比较，开头的引号已读取
+         */
+        private int readKey() throws IOException {
+            boolean statusMatch = true;
+            boolean firstImageMatch = true;
+            int index = 0;
+            int c;
+            while ((c = next()) != '"') {
+                if (c == -1) {
+                    throw new IOException("unterminated videojson key");
+                }
+                if (c == '\\') {
+                    next();
+                    statusMatch = false;
+                    firstImageMatch = false;
+                } else {
+                    statusMatch = statusMatch && index < STATUS.length && STATUS[index] == c;
+                    firstImageMatch = firstImageMatch && index < FIRST_IMAGE_B.length && FIRST_IMAGE_B[index] == c;
+                }
+                index++;
+            }
+            if (statusMatch && index == STATUS.length) {
+                return KEY_STATUS;
+            }
+            if (firstImageMatch && index == FIRST_IMAGE_B.length) {
+                return KEY_FIRST_IMAGE_B;
+            }
+            return KEY_OTHER;
+        }
+        
+        /**
+         * 读取整数值，兼容带引号的数字，null、无法解析或超出int范围时返回null
+         */
+        private Integer readInteger(int c) throws IOException {
+            if (c == '"') {
+                String text = readStringContent();
+                try {
+                    return Integer.valueOf(text.trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            boolean negative = c == '-';
+            if (negative) {
+                c = next();
+                if (c == -1) {
+                    throw new IOException("truncated videojson number");
+                }
+            }
+            if (c < '0' || c > '9') {
+                skipValue(c);
+                return null;
+            }
+            long result = 0;
+            boolean overflow = false;
+            while (c >= '0' && c <= '9') {
+                if (!overflow) {
+                    result = result * 10 + (c - '0');
+                    overflow = result > Integer.MAX_VALUE + 1L;
+                }
+                c = next();
+            }
+            if (c != -1) {
+                unread();
+            }
+            //小数部分直接跳过
+            skipScalar();
+            result = negative ? -result : result;
+            if (overflow || result > Integer.MAX_VALUE || result < Integer.MIN_VALUE) {
+                return null;
+            }
+            return (int) result;
+        }
+        
+        /**
+         * 读取字符串值，不是字符串时跳过并返回null
+         */
+        private String readString(int c) throws IOException {
+            if (c != '"') {
+                skipValue(c);
+                return null;
+            }
+            return readStringContent();
+        }
+        
+        /**
+         * 读取字符串内容并处理转义，开头的引号已读取
+         */
+        private String readStringContent() throws IOException {
+            valueLength = 0;
+            int c;
+            while ((c = next()) != '"') {
+                if (c == -1) {
+                    throw new IOException("unterminated videojson string");
+                }
+                if (c == '\\') {
+                    c = next();
+                    switch (c) {
+                        case 'n':
+                            append('\n');
+                            break;
+                        case 't':
+                            append('\t');
+                            break;
+                        case 'r':
+                            append('\r');
+                            break;
+                        case 'b':
+                            append('\b');
+                            break;
+                        case 'f':
+                            append('\f');
+                            break;
+                        case 'u':
+                            appendCodeUnit(readHex());
+                            break;
+                        default:
+                            //  \" \\ \/ 直接取转义后的字符
+                            append(c);
+                            break;
+                    }
+                } else {
+                    append(c);
+                }
+            }
+            return new String(value, 0, valueLength, StandardCharsets.UTF_8);
+        }
+        
+        private int readHex() throws IOException {
+            int result = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(next(), 16);
+                if (digit < 0) {
+                    throw new IOException("invalid unicode escape in videojson");
+                }
+                result = (result << 4) | digit;
+            }
+            return result;
+        }
+        
+        /**
+         * 以UTF-8写入\\u转义的字符，代理对分开写入后由String解码为替换字符，封面地址中不会出现
+         */
+        private void appendCodeUnit(int codeUnit) {
+            if (codeUnit < 0x80) {
+                append(codeUnit);
+            } else if (codeUnit < 0x800) {
+                append(0xC0 | (codeUnit >> 6));
+                append(0x80 | (codeUnit & 0x3F));
+            } else {
+                append(0xE0 | (codeUnit >> 12));
+                append(0x80 | ((codeUnit >> 6) & 0x3F));
+                append(0x80 | (codeUnit & 0x3F));
+            }
+        }
+        
+        private void append(int b) {
+            if (valueLength == value.length) {
+                value = Arrays.copyOf(value, value.length * 2);
+            }
+            value[valueLength++] = (byte) b;
+        }
+        
+        /**
+         * 跳过任意值，c为值的第一个字符
+         */
+        private void skipValue(int c) throws IOException {
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                int depth = 1;
+                while (depth > 0) {
+                    c = next();
+                    if (c == -1) {
+                        throw new IOException("unterminated videojson value");
+                    }
+                    if (c == '"') {
+                        skipString();
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                }
+            } else if (c != -1) {
+                skipScalar();
+            }
+        }
+        
+        private void skipString() throws IOException {
+            int c;
+            while ((c = next()) != '"') {
+                if (c == -1) {
+                    throw new IOException("unterminated videojson string");
+                }
+                if (c == '\\') {
+                    next();
+                }
+            }
+        }
+        
+        /**
+         * 跳过数字、true、false、null的剩余部分，保留结束符
+         */
+        private void skipScalar() throws IOException {
+            int c;
+            while ((c = next()) != -1) {
+                if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    unread();
+                    return;
+                }
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,24 @@
+package net.polyv.scan;
+
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListRequest;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListResponse;
+import net.polyv.vod.v1.service.manage.impl.VodListServiceImpl;
+
+/**
+ * 查询一页点播视频，多账号扫描时由 {@link AccountListFetcher} 按账号签名
+ * @author: sadboy
+ **/
+public interface VideoListFetcher {
+    /**
+     * 直接使用当前VodGlobalConfig中的账号
+     */
+    VideoListFetcher DEFAULT = request -> new VodListServiceImpl().getVideoList(request);
+    
+    /**
+     * @param request 查询条件
+     * @return 一页视频
+     * @throws Exception 参数校验不合格、请求服务器端500错误或读写异常
+     */
+    VodGetVideoListResponse fetch(VodGetVideoListRequest request) throws Exception;
+    
+}
@@ -0,0 +1,148 @@
+package net.polyv.scan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListRequest;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListResponse;
+
+/**
+ * 逐页查询点播视频，边查询边把vid写入有界队列供检查线程消费
+ * 队列满时阻塞，内存占用与视频总数无关
+ * @author: sadboy
+ **/
+public class VideoListProducer implements VideoSource {
+    private final VodGetVideoListRequest request;
+    private final BlockingQueue<VideoItem> queue;
+    /**
+     * 翻页间隔，防止循环查询对后台产生影响
+     */
+    private final long pageIntervalMillis;
+    /**
+     * 扫描进度日志，为null时不记录进度
+     */
+    private final ScanJournal journal;
+    /**
+     * 查询一页视频，多账号扫描时在账号上下文中调用
+     */
+    private final VideoListFetcher fetcher;
+    private final AtomicLong producedCount = new AtomicLong();
+    private volatile Exception failure;
+    
+    /**
+     * @param request 点播视频查询条件，currentPage由生产者维护
+     * @param queue 检查线程消费的队列
+     * @param pageIntervalMillis 翻页间隔，单位毫秒
+     */
+    public VideoListProducer(VodGetVideoListRequest request, BlockingQueue<VideoItem> queue,
+            long pageIntervalMillis) {
+        this(request, queue, pageIntervalMillis, null);
+    }
+    
+    /**
+     * @param request 点播视频查询条件，currentPage由生产者维护
+     * @param queue 检查线程消费的队列
+     * @param pageIntervalMillis 翻页间隔，单位毫秒
+     * @param journal 扫描进度日志，先放入上次未检查完的视频，再从上次最后一页之后继续查询
+     */
+    public VideoListProducer(VodGetVideoListRequest request, BlockingQueue<VideoItem> queue,
+            long pageIntervalMillis, ScanJournal journal) {
+        this(request, queue, pageIntervalMillis, journal, VideoListFetcher.DEFAULT);
+    }
+    
+    /**
+     * @param request 点播视频查询条件，currentPage由生产者维护
+     * @param queue 检查线程消费的队列
+     * @param pageIntervalMillis 翻页间隔，单位毫秒
+     * @param journal 扫描进度日志，为null时不记录进度
+     * @param fetcher 查询一页视频
+     */
+    public VideoListProducer(VodGetVideoListRequest request, BlockingQueue<VideoItem> queue,
+            long pageIntervalMillis, ScanJournal journal, VideoListFetcher fetcher) {
+        this.request = request;
+        this.queue = queue;
+        this.pageIntervalMillis = pageIntervalMillis;
+        this.journal = journal;
+        this.fetcher = fetcher;
+    }
+    
+    @Override
+    public void run() {
+        int currentPage = 1;
+        try {
+            if (journal != null) {
+                for (String vid : journal.getPendingVids()) {
+                    queue.put(new VideoItem(vid));
+                    producedCount.incrementAndGet();
+                }
+                if (journal.isListCompleted()) {
+                    queue.put(VideoItem.END);
+                    return;
+                }
+                currentPage = journal.getLastPage() + 1;
+            }
+            while (true) {
+                request.setCurrentPage(currentPage).setSign(null);
+                VodGetVideoListResponse response = fetcher.fetch(request);
+                if (response == null) {
+                    break;
+                }
+                List<String> vids = new ArrayList<>();
+                List<VideoItem> items = new ArrayList<>();
+                if (response.getContents() != null) {
+                    for (VodGetVideoListResponse.VodGetVideoList videoList : response.getContents()) {
+                        VideoItem item = VideoItem.of(videoList);
+                        vids.add(item.getVid());
+                        items.add(item);
+                    }
+                }
+                if (journal != null) {
+                    journal.recordPage(currentPage, vids);
+                }
+                for (VideoItem item : items) {
+                    queue.put(item);
+                    producedCount.incrementAndGet();
+                }
+                if (response.getTotalPage() == null || response.getCurrentPage() == null) {
+                    throw new IOException("视频列表第" + currentPage + "页缺少分页信息");
+                }
+                if (response.getTotalPage() <= response.getCurrentPage()) {
+                    if (journal != null) {
+                        journal.recordListEnd();
+                    }
+                    break;
+                }
+                currentPage++;
+                if (pageIntervalMillis > 0) {
+                    Thread.sleep(pageIntervalMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            //PloyvSdkException：参数校验不合格 或者 请求服务器端500错误
+            //其他异常：HttpUtil重试后仍失败，不能静默跳过该页，由调用方在检查结束后抛出
+            failure = e;
+        }
+        try {
+            queue.put(VideoItem.END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Override
+    public long getProducedCount() {
+        return producedCount.get();
+    }
+    
+    @Override
+    public Exception getFailure() {
+        return failure;
+    }
+    
+}
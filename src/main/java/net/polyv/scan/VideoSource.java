@@ -0,0 +1,19 @@
+package net.polyv.scan;
+
+/**
+ * 视频来源，在单独的线程中运行，把视频写入检查队列，结束时写入 {@link VideoItem#END}
+ * @author: sadboy
+ **/
+public interface VideoSource extends Runnable {
+    
+    /**
+     * @return 已写入队列的视频数
+     */
+    long getProducedCount();
+    
+    /**
+     * @return 运行中出现的异常，视频未全部写入队列；没有异常返回null
+     */
+    Exception getFailure();
+    
+}
@@ -0,0 +1,518 @@
+package net.polyv.scan;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于本地目录的持久化工作队列，协调进程写入视频批次，任意多个检查进程领取批次并写回结果
+ * 目录结构：
+ * pending/  待检查的批次，每行一个视频：vid\t封面地址\t状态
+ * leased/   已被领取的批次，文件名为 批次名@检查进程，修改时间为最近一次续约时间
+ * done/     已完成的批次
+ * results/  每个批次的检查结果，格式与报告文件一致
+ * list.done 列表查询完成的标记
+ * run       当前一轮的编号，批次名为 batch-编号-序号，协调进程每次重新查询列表时换新编号
+ * 领取、退回、完成都通过同一文件系统内的原子重命名完成，多个进程同时领取同一批次时只有一个成功
+ * 检查进程退出或卡住后租约不再续约，超过租约时长的批次由任一进程退回pending重新检查；
+ * 同一批次被检查两次时结果文件整体替换，合并后的报告不会重复
+ * 协调进程重启开始新一轮时不删除正在检查的批次，旧一轮的批次名与新一轮不同，其结果不会被合并，也不会完成新一轮的批次
+ * @author: sadboy
+ **/
+@Slf4j
+public class WorkQueue {
+    private static final String BATCH_PREFIX = "batch-";
+    private static final char LEASE_SEPARATOR = '@';
+    private static final char RUN_SEPARATOR = '-';
+    private static final String RECLAIM_SUFFIX = ".reclaim";
+    
+    private final Path pendingDir;
+    private final Path leasedDir;
+    private final Path doneDir;
+    private final Path resultsDir;
+    private final Path listDoneMarker;
+    private final Path runFile;
+    private final long leaseMillis;
+    /**
+     * 结果文件扩展名，与报告文件一致，ChannelResultSink按扩展名选择格式
+     */
+    private final String resultSuffix;
+    /**
+     * 协调进程当前一轮的编号，只在协调进程中使用
+     */
+    private String runId;
+    private long nextBatch;
+    
+    private WorkQueue(Path root, long leaseMillis, String resultSuffix) {
+        this.pendingDir = root.resolve("pending");
+        this.leasedDir = root.resolve("leased");
+        this.doneDir = root.resolve("done");
+        this.resultsDir = root.resolve("results");
+        this.listDoneMarker = root.resolve("list.done");
+        this.runFile = root.resolve("run");
+        this.leaseMillis = leaseMillis;
+        this.resultSuffix = resultSuffix;
+    }
+    
+    /**
+     * 打开工作队列，目录不存在时创建
+     * @param root 队列目录，协调进程和检查进程需要使用同一目录
+     * @param leaseMillis 租约时长，超过该时间没有续约的批次可以被退回
+     * @param resultSuffix 结果文件扩展名，如 .csv、.jsonl
+     * @return 工作队列
+     * @throws IOException 读写异常
+     */
+    public static WorkQueue open(Path root, long leaseMillis, String resultSuffix) throws IOException {
+        WorkQueue workQueue = new WorkQueue(root, leaseMillis, resultSuffix);
+        Files.createDirectories(workQueue.pendingDir);
+        Files.createDirectories(workQueue.leasedDir);
+        Files.createDirectories(workQueue.doneDir);
+        Files.createDirectories(workQueue.resultsDir);
+        return workQueue;
+    }
+    
+    /**
+     * 开始新的一轮，协调进程重新查询列表前调用
+     * 删除旧一轮待检查、已完成的批次和结果；旧一轮正在检查的批次保留，由检查进程完成或过期后删除
+     * @throws IOException 读写异常
+     */
+    public synchronized void startRun() throws IOException {
+        Files.deleteIfExists(listDoneMarker);
+        String previousRunId = getRunId();
+        String newRunId = Long.toString(System.currentTimeMillis(), 36);
+        if (newRunId.equals(previousRunId)) {
+            newRunId = Long.toString(System.currentTimeMillis() + 1, 36);
+        }
+        Path tempPath = runFile.resolveSibling("." + runFile.getFileName() + ".tmp");
+        Files.write(tempPath, newRunId.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempPath, runFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        runId = newRunId;
+        nextBatch = 0;
+        for (Path dir : new Path[]{pendingDir, doneDir, resultsDir}) {
+            for (Path path : list(dir)) {
+                if (!runId.equals(runOf(path.getFileName().toString()))) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return 当前一轮的编号，还没有开始过时返回null
+     * @throws IOException 读写异常
+     */
+    public String getRunId() throws IOException {
+        try {
+            return new String(Files.readAllBytes(runFile), StandardCharsets.UTF_8).trim();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 写入一个批次，先写临时文件再重命名进pending，检查进程不会读到写了一半的批次
+     * @param items 视频
+     * @throws IOException 读写异常
+     */
+    public synchronized void offer(List<VideoItem> items) throws IOException {
+        if (runId == null) {
+            throw new IllegalStateException("startRun must be called before offer");
+        }
+        String batch = String.format("%s%s%c%08d", BATCH_PREFIX, runId, RUN_SEPARATOR, ++nextBatch);
+        Path tempPath = pendingDir.resolve("." + batch + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            for (VideoItem item : items) {
+                writer.write(item.getVid());
+                writer.write('\t');
+                writer.write(item.getCoverUrl() == null ? "" : item.getCoverUrl());
+                writer.write('\t');
+                writer.write(item.getStatus() == null ? "" : item.getStatus().toString());
+                writer.write('\n');
+            }
+        }
+        Files.move(tempPath, pendingDir.resolve(batch), StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * 标记列表查询完成，之后没有新批次
+     * @throws IOException 读写异常
+     */
+    public void completeList() throws IOException {
+        Files.write(listDoneMarker, new byte[0]);
+    }
+    
+    /**
+     * @return 列表是否已查询完成
+     */
+    public boolean isListCompleted() {
+        return Files.exists(listDoneMarker);
+    }
+    
+    /**
+     * 退回中的批次既不在pending也不在leased，按检查中统计；
+     * 批次领取时从pending移到leased、退回时反向移动，先后各查一次leased，移动途中的批次至少被看到一次
+     * 协调进程还要求本轮写入的批次都已完成
+     * @return 列表已查询完成且当前一轮的所有批次都已检查完
+     * @throws IOException 读写异常
+     */
+    public boolean isDrained() throws IOException {
+        String currentRunId = getRunId();
+        if (!isListCompleted() || countLeased(currentRunId) > 0 || !listRun(pendingDir, currentRunId).isEmpty()
+                || countLeased(currentRunId) > 0) {
+            return false;
+        }
+        synchronized (this) {
+            if (runId != null && runId.equals(currentRunId)) {
+                return listRun(doneDir, currentRunId).size() >= nextBatch;
+            }
+        }
+        return true;
+    }
+    
+    public int getPendingCount() throws IOException {
+        return listRun(pendingDir, getRunId()).size();
+    }
+    
+    /**
+     * @return 当前一轮检查中的批次数，包含正在退回的批次
+     * @throws IOException 读写异常
+     */
+    public int getLeasedCount() throws IOException {
+        return countLeased(getRunId());
+    }
+    
+    private int countLeased(String currentRunId) throws IOException {
+        int count = listRun(leasedDir, currentRunId).size();
+        if (currentRunId == null) {
+            return count;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(leasedDir, ".*" + RECLAIM_SUFFIX)) {
+            for (Path reclaiming : stream) {
+                if (currentRunId.equals(runOf(leaseNameOf(reclaiming)))) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    public int getDoneCount() throws IOException {
+        return listRun(doneDir, getRunId()).size();
+    }
+    
+    /**
+     * 领取一个待检查的批次
+     * 先更新pending文件的修改时间再重命名，租约文件出现时修改时间已经是领取时间，不会被立即退回
+     * @param workerId 检查进程标识，写入租约文件名
+     * @return 租约，没有待检查的批次时返回null
+     * @throws IOException 读写异常
+     */
+    public Lease claim(String workerId) throws IOException {
+        for (Path pending : listRun(pendingDir, getRunId())) {
+            String batch = pending.getFileName().toString();
+            Path leased = leasedDir.resolve(batch + LEASE_SEPARATOR + workerId);
+            try {
+                Files.setLastModifiedTime(pending, FileTime.fromMillis(System.currentTimeMillis()));
+                Files.move(pending, leased, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                //已被其他检查进程领取
+                continue;
+            }
+            return new Lease(batch, leased);
+        }
+        return null;
+    }
+    
+    /**
+     * 把超过租约时长没有续约的批次退回pending，旧一轮的批次直接删除
+     * 先把租约文件重命名为退回中的临时文件，再按临时文件的修改时间决定去向，检查与重命名之间续约的租约会被放回；
+     * 退回中途退出留下的临时文件在下次调用时按同样规则处理，多个进程同时处理同一文件时只有一个重命名成功
+     * @return 退回的批次数
+     * @throws IOException 读写异常
+     */
+    public int reclaimExpired() throws IOException {
+        long expiredBefore = System.currentTimeMillis() - leaseMillis;
+        String currentRunId = getRunId();
+        int reclaimed = 0;
+        for (Path leased : list(leasedDir)) {
+            String name = leased.getFileName().toString();
+            Path reclaiming = leasedDir.resolve("." + name + "." + UUID.randomUUID() + RECLAIM_SUFFIX);
+            try {
+                if (Files.getLastModifiedTime(leased).toMillis() >= expiredBefore) {
+                    continue;
+                }
+                Files.move(leased, reclaiming, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                //检查进程刚好完成或已被其他进程退回
+                continue;
+            }
+            if (settleReclaiming(reclaiming, name, expiredBefore, currentRunId)) {
+                reclaimed++;
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(leasedDir, ".*" + RECLAIM_SUFFIX)) {
+            for (Path reclaiming : stream) {
+                if (settleReclaiming(reclaiming, leaseNameOf(reclaiming), expiredBefore, currentRunId)) {
+                    reclaimed++;
+                }
+            }
+        }
+        return reclaimed;
+    }
+    
+    /**
+     * @param reclaiming 退回中的临时文件 .租约文件名.uuid.reclaim
+     * @return 原租约文件名
+     */
+    private static String leaseNameOf(Path reclaiming) {
+        String name = reclaiming.getFileName().toString();
+        name = name.substring(1, name.length() - RECLAIM_SUFFIX.length());
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+    
+    /**
+     * 退回中的租约：在重命名前续约过的放回leased，当前一轮的退回pending，旧一轮的删除
+     * @param reclaiming 退回中的临时文件
+     * @param name 原租约文件名
+     * @return 是否退回了pending
+     */
+    private boolean settleReclaiming(Path reclaiming, String name, long expiredBefore, String currentRunId)
+            throws IOException {
+        String batch = name.substring(0, name.indexOf(LEASE_SEPARATOR));
+        try {
+            if (Files.getLastModifiedTime(reclaiming).toMillis() >= expiredBefore) {
+                Files.move(reclaiming, leasedDir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                return false;
+            }
+            if (currentRunId == null || !currentRunId.equals(runOf(batch))) {
+                Files.delete(reclaiming);
+                log.warn("旧一轮的批次租约过期，删除：" + name);
+                return false;
+            }
+            Files.move(reclaiming, pendingDir.resolve(batch), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            //已被其他进程处理
+            return false;
+        }
+        log.warn("批次租约过期，退回重新检查：" + name);
+        return true;
+    }
+    
+    /**
+     * 按批次顺序合并当前一轮的结果文件，CSV只保留第一个文件的表头
+     * @param reportPath 报告文件
+     * @return 合并的结果行数，不含表头
+     * @throws IOException 读写异常
+     */
+    public long mergeResults(Path reportPath) throws IOException {
+        boolean hasHeader = !".jsonl".equals(resultSuffix);
+        long lineCount = 0;
+        boolean first = true;
+        try (BufferedWriter writer = Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8)) {
+            for (Path result : listRun(resultsDir, getRunId())) {
+                String name = result.getFileName().toString();
+                if (!name.endsWith(resultSuffix)) {
+                    continue;
+                }
+                List<String> lines = Files.readAllLines(result, StandardCharsets.UTF_8);
+                for (int i = 0; i < lines.size(); i++) {
+                    if (hasHeader && i == 0 && !first) {
+                        continue;
+                    }
+                    writer.write(lines.get(i));
+                    writer.write('\n');
+                    if (!hasHeader || i > 0) {
+                        lineCount++;
+                    }
+                }
+                first = false;
+            }
+        }
+        return lineCount;
+    }
+    
+    /**
+     * @return 目录下除临时文件外的文件，按文件名排序
+     */
+    private static List<Path> list(Path dir) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                if (!path.getFileName().toString().startsWith(".")) {
+                    paths.add(path);
+                }
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+    
+    /**
+     * @return 目录下属于指定一轮的批次文件，按文件名排序
+     */
+    private static List<Path> listRun(Path dir, String runId) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        if (runId == null) {
+            return paths;
+        }
+        for (Path path : list(dir)) {
+            if (runId.equals(runOf(path.getFileName().toString()))) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+    
+    /**
+     * @param name 批次、租约或结果的文件名，如 batch-编号-00000001@worker.csv
+     * @return 批次所属一轮的编号，文件名不是批次时返回null
+     */
+    static String runOf(String name) {
+        if (!name.startsWith(BATCH_PREFIX)) {
+            return null;
+        }
+        int end = name.indexOf(RUN_SEPARATOR, BATCH_PREFIX.length());
+        return end < 0 ? null : name.substring(BATCH_PREFIX.length(), end);
+    }
+    
+    /**
+     * 检查进程持有的一个批次
+     */
+    public class Lease {
+        private final String batch;
+        private final Path leased;
+        
+        private Lease(String batch, Path leased) {
+            this.batch = batch;
+            this.leased = leased;
+        }
+        
+        public String getBatch() {
+            return batch;
+        }
+        
+        /**
+         * @return 批次中的视频
+         * @throws IOException 读写异常
+         */
+        public List<VideoItem> getItems() throws IOException {
+            List<VideoItem> items = new ArrayList<>();
+            for (String line : Files.readAllLines(leased, StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                String coverUrl = fields.length > 1 && !fields[1].isEmpty() ? fields[1] : null;
+                Integer status = fields.length > 2 && !fields[2].isEmpty() ? Integer.valueOf(fields[2]) : null;
+                items.add(new VideoItem(fields[0], coverUrl, status));
+            }
+            return items;
+        }
+        
+        /**
+         * 把批次中的视频写入队列的视频来源，供CoverCheckPipeline使用
+         * @param queue 检查线程消费的队列
+         * @return 视频来源
+         * @throws IOException 读写异常
+         */
+        public VideoSource newSource(final BlockingQueue<VideoItem> queue) throws IOException {
+            final List<VideoItem> items = getItems();
+            final AtomicLong producedCount = new AtomicLong();
+            return new VideoSource() {
+                @Override
+                public void run() {
+                    try {
+                        for (VideoItem item : items) {
+                            queue.put(item);
+                            producedCount.incrementAndGet();
+                        }
+                        queue.put(VideoItem.END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                
+                @Override
+                public long getProducedCount() {
+                    return producedCount.get();
+                }
+                
+                @Override
+                public Exception getFailure() {
+                    return null;
+                }
+            };
+        }
+        
+        /**
+         * @return 本批次结果的临时文件，位于results目录，完成时原子替换为正式结果
+         */
+        public Path getResultTempPath() {
+            return resultsDir.resolve("." + leased.getFileName() + resultSuffix);
+        }
+        
+        /**
+         * 续约，检查进程定期调用
+         * @return 租约是否仍然有效，已过期被退回时返回false
+         */
+        public boolean renew() {
+            try {
+                Files.setLastModifiedTime(leased, FileTime.fromMillis(System.currentTimeMillis()));
+                return true;
+            } catch (IOException e) {
+                log.warn("批次租约已失效：" + leased.getFileName());
+                return false;
+            }
+        }
+        
+        /**
+         * 提交结果并释放租约
+         * 租约已过期被退回时，批次仍属于当前一轮则结果有效，同时把退回的批次标记为完成，避免重复检查；
+         * 协调进程已开始新一轮时结果不会被合并，也不动新一轮的批次
+         * @throws IOException 读写异常
+         */
+        public void complete() throws IOException {
+            Files.move(getResultTempPath(), resultsDir.resolve(batch + resultSuffix),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            try {
+                Files.move(leased, doneDir.resolve(batch), StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                if (!runOf(batch).equals(getRunId())) {
+                    log.warn("批次属于旧一轮，结果不再合并：" + batch);
+                    return;
+                }
+                try {
+                    Files.move(pendingDir.resolve(batch), doneDir.resolve(batch), StandardCopyOption.ATOMIC_MOVE);
+                } catch (NoSuchFileException ignored) {
+                    //已被其他检查进程重新领取，由其完成
+                }
+            }
+        }
+        
+        /**
+         * 检查失败时删除临时结果，租约不释放，过期后由其他检查进程重新检查
+         */
+        public void abandon() {
+            try {
+                Files.deleteIfExists(getResultTempPath());
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+    
+}
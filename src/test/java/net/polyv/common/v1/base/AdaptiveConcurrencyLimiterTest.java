@@ -0,0 +1,106 @@
+package net.polyv.common.v1.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author: sadboy
+ **/
+public class AdaptiveConcurrencyLimiterTest {
+    
+    @Test
+    public void acquireBlocksAtLimitUntilRelease() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 4);
+        limiter.acquire();
+        limiter.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limiter.release(10, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(2, limiter.getInFlight());
+        waiter.join();
+    }
+    
+    @Test
+    public void acquireAsyncWaitsForReleaseAndSkipsCancelledWaiters() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 4);
+        assertTrue(limiter.acquireAsync().isDone());
+        CompletableFuture<Void> cancelled = limiter.acquireAsync();
+        CompletableFuture<Void> waiting = limiter.acquireAsync();
+        assertFalse(cancelled.isDone());
+        cancelled.cancel(false);
+        limiter.release(10, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+        //已取消的等待不占用许可，许可分配给下一个
+        assertTrue(waiting.isDone());
+        assertEquals(1, limiter.getInFlight());
+        limiter.release(10, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+        assertEquals(0, limiter.getInFlight());
+    }
+    
+    @Test
+    public void overloadHalvesLimitOncePerIntervalAndKeepsMinimum() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 16, 3, 64);
+        limiter.acquire();
+        limiter.release(10, AdaptiveConcurrencyLimiter.Outcome.OVERLOAD);
+        assertEquals(8, limiter.getLimit());
+        //同一批失败请求不连续减半
+        limiter.acquire();
+        limiter.release(10, AdaptiveConcurrencyLimiter.Outcome.OVERLOAD);
+        assertEquals(8, limiter.getLimit());
+        for (int i = 0; i < 3; i++) {
+            TimeUnit.MILLISECONDS.sleep(1100);
+            limiter.acquire();
+            limiter.release(10, AdaptiveConcurrencyLimiter.Outcome.OVERLOAD);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+    
+    @Test
+    public void successGrowsLimitUpToMaximum() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 5);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(10, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+        }
+        assertEquals(5, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+    
+    @Test
+    public void slowResponsesDoNotGrowLimit() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 64);
+        limiter.acquire();
+        limiter.release(10, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+        int limit = limiter.getLimit();
+        for (int i = 0; i < 50; i++) {
+            limiter.acquire();
+            limiter.release(100, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+        }
+        assertEquals(limit, limiter.getLimit());
+    }
+    
+    @Test
+    public void outcomeOfStatusCode() {
+        assertEquals(AdaptiveConcurrencyLimiter.Outcome.SUCCESS, AdaptiveConcurrencyLimiter.outcomeOf(200));
+        assertEquals(AdaptiveConcurrencyLimiter.Outcome.SUCCESS, AdaptiveConcurrencyLimiter.outcomeOf(404));
+        assertEquals(AdaptiveConcurrencyLimiter.Outcome.OVERLOAD, AdaptiveConcurrencyLimiter.outcomeOf(429));
+        assertEquals(AdaptiveConcurrencyLimiter.Outcome.OVERLOAD, AdaptiveConcurrencyLimiter.outcomeOf(503));
+    }
+    
+}
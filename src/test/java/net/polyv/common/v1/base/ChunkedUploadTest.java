@@ -0,0 +1,160 @@
+package net.polyv.common.v1.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.polyv.stub.FakePolyvServer;
+
+/**
+ * 通过本地模拟服务验证分片上传和续传
+ * @author: sadboy
+ **/
+public class ChunkedUploadTest {
+    private static final int PART_SIZE = 1024;
+    
+    private static FakePolyvServer server;
+    private static String url;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @BeforeClass
+    public static void startServer() throws IOException {
+        server = new FakePolyvServer(new FakePolyvServer.Config().setPort(0).setThreads(4));
+        //单独的域名，失败的分片不影响其他用例的熔断和并发限制
+        url = server.getBaseUrl().replace("127.0.0.1", "127.0.0.5") + "/upload";
+    }
+    
+    @AfterClass
+    public static void stopServer() {
+        server.close();
+    }
+    
+    private File newFile(String name, int length, long seed) throws IOException {
+        byte[] content = new byte[length];
+        new Random(seed).nextBytes(content);
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+    
+    private static String upload(File file) throws IOException {
+        return HttpUtil.postFileChunked(url, Collections.singletonMap("cataid", "1"), "file", file, null,
+                PART_SIZE, 3);
+    }
+    
+    /**
+     * 上传失败后，返回进度文件中已确认的分片
+     */
+    private static Set<Integer> uploadRejected(File file, int rejectedPart) throws IOException {
+        server.setRejectedPart(rejectedPart);
+        try {
+            upload(file);
+            fail("expected IOException");
+        } catch (IOException expected) {
+            //被拒绝的分片重试后仍然失败
+        } finally {
+            server.setRejectedPart(0);
+        }
+        Path progressPath = Paths.get(file.getPath() + ".upload");
+        assertTrue(Files.exists(progressPath));
+        List<String> lines = Files.readAllLines(progressPath, StandardCharsets.UTF_8);
+        assertEquals(file.length() + "\t" + file.lastModified() + "\t" + PART_SIZE + "\t" + url,
+                lines.get(0).substring(lines.get(0).indexOf('\t') + 1));
+        Set<Integer> acknowledged = new HashSet<>();
+        for (String line : lines.subList(1, lines.size())) {
+            acknowledged.add(Integer.parseInt(line.substring(0, line.indexOf('\t'))));
+        }
+        return acknowledged;
+    }
+    
+    private static Set<Integer> partsOf(List<String> received, String uploadId) {
+        Set<Integer> parts = new HashSet<>();
+        for (String part : received) {
+            assertTrue(part, part.startsWith(uploadId + "/"));
+            parts.add(Integer.parseInt(part.substring(uploadId.length() + 1)));
+        }
+        return parts;
+    }
+    
+    private static byte[] assemble(String uploadId, int partCount) {
+        Map<Integer, byte[]> parts = server.getUploadedParts(uploadId);
+        assertEquals(partCount, parts.size());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            byte[] part = parts.get(partNumber);
+            outputStream.write(part, 0, part.length);
+        }
+        return outputStream.toByteArray();
+    }
+    
+    @Test
+    public void resumeSendsOnlyUnacknowledgedParts() throws IOException {
+        //最后一片不足一个分片大小
+        File file = newFile("video.mp4", PART_SIZE * 10 + 100, 1);
+        server.drainReceivedParts();
+        Set<Integer> acknowledged = uploadRejected(file, 5);
+        assertFalse(acknowledged.contains(5));
+        assertFalse(acknowledged.isEmpty());
+        String uploadId = server.drainReceivedParts().get(0).split("/")[0];
+        //服务端校验了每个分片的长度和partMd5
+        assertTrue(server.getUploadedParts(uploadId).keySet().containsAll(acknowledged));
+        
+        assertEquals(uploadId, upload(file));
+        Set<Integer> resent = partsOf(server.drainReceivedParts(), uploadId);
+        Set<Integer> expected = new HashSet<>();
+        for (int partNumber = 1; partNumber <= 11; partNumber++) {
+            if (!acknowledged.contains(partNumber)) {
+                expected.add(partNumber);
+            }
+        }
+        assertEquals(expected, resent);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), assemble(uploadId, 11));
+        assertFalse(Files.exists(Paths.get(file.getPath() + ".upload")));
+    }
+    
+    @Test
+    public void changedFileStartsNewUpload() throws IOException {
+        File file = newFile("cover.mp4", PART_SIZE * 4, 2);
+        server.drainReceivedParts();
+        uploadRejected(file, 4);
+        String firstId = server.drainReceivedParts().get(0).split("/")[0];
+        
+        //文件内容和长度变化后，之前确认的分片不能再使用
+        byte[] changed = new byte[PART_SIZE * 3 + 1];
+        new Random(3).nextBytes(changed);
+        Files.write(file.toPath(), changed);
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        String uploadId = upload(file);
+        assertNotEquals(firstId, uploadId);
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4)),
+                partsOf(server.drainReceivedParts(), uploadId));
+        assertArrayEquals(changed, assemble(uploadId, 4));
+    }
+    
+}
@@ -0,0 +1,138 @@
+package net.polyv.common.v1.base;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Test;
+
+/**
+ * @author: sadboy
+ **/
+public class CircuitBreakerTest {
+    
+    private static void assertRejected(CircuitBreaker breaker) {
+        try {
+            breaker.acquirePermission();
+            fail("expected CircuitBreakerOpenException");
+        } catch (CircuitBreakerOpenException expected) {
+            //熔断中
+        }
+    }
+    
+    @Test
+    public void opensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000);
+        for (int i = 0; i < 2; i++) {
+            breaker.acquirePermission();
+            breaker.onFailure();
+        }
+        //成功后重新计数
+        breaker.onSuccess();
+        for (int i = 0; i < 2; i++) {
+            breaker.acquirePermission();
+            breaker.onFailure();
+        }
+        breaker.acquirePermission();
+        breaker.onFailure();
+        assertRejected(breaker);
+    }
+    
+    @Test
+    public void halfOpenAllowsSingleTrial() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50);
+        breaker.acquirePermission();
+        breaker.onFailure();
+        assertRejected(breaker);
+        TimeUnit.MILLISECONDS.sleep(80);
+        breaker.acquirePermission();
+        //试探请求还没有结果
+        assertRejected(breaker);
+        breaker.onSuccess();
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+    }
+    
+    @Test
+    public void failedTrialReopens() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50);
+        breaker.acquirePermission();
+        breaker.onFailure();
+        TimeUnit.MILLISECONDS.sleep(80);
+        breaker.acquirePermission();
+        breaker.onFailure();
+        assertRejected(breaker);
+    }
+    
+    @Test
+    public void abortedTrialLetsNextRequestTry() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50);
+        breaker.acquirePermission();
+        breaker.onFailure();
+        TimeUnit.MILLISECONDS.sleep(80);
+        breaker.acquirePermission();
+        assertRejected(breaker);
+        //被中断的试探请求没有结果，下一个请求立即继续试探
+        breaker.onAbort();
+        breaker.acquirePermission();
+        assertRejected(breaker);
+    }
+    
+    @Test
+    @SuppressWarnings("deprecation")
+    public void runtimeExceptionReleasesTrial() throws Exception {
+        String host = "127.0.0.4";
+        CircuitBreaker breaker = CircuitBreaker.forHost(host);
+        for (int i = 0; i < 100; i++) {
+            breaker.onFailure();
+        }
+        assertRejected(breaker);
+        //跳过熔断时长，下一个请求即为试探请求
+        Field openedAt = CircuitBreaker.class.getDeclaredField("openedAt");
+        openedAt.setAccessible(true);
+        synchronized (breaker) {
+            openedAt.setLong(breaker, 0);
+        }
+        CloseableHttpClient shutDown = new CloseableHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                throw new IllegalStateException("Connection pool shut down");
+            }
+            
+            @Override
+            public void close() throws IOException {
+            }
+            
+            @Override
+            public HttpParams getParams() {
+                throw new UnsupportedOperationException();
+            }
+            
+            @Override
+            public ClientConnectionManager getConnectionManager() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        String url = "http://" + host + "/";
+        try {
+            HttpUtil.sendRequestAndGetResult(url, shutDown, new HttpGet(url));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            //连接池已关闭
+        }
+        //试探名额已归还，下一个请求可以继续试探
+        breaker.acquirePermission();
+        breaker.onSuccess();
+    }
+    
+}
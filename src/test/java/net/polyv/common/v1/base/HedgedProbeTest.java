@@ -0,0 +1,157 @@
+package net.polyv.common.v1.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 异步探测和对冲探测经过熔断、并发限制和重试，被取消的请求不计入异常和延迟
+ * 本地服务：/slow/ 下的请求在门闩打开前不返回，/hedge/ 下每个地址的第一个请求慢、之后的请求快，/flaky/ 下每个地址第一次返回503
+ * @author: sadboy
+ **/
+public class HedgedProbeTest {
+    private HttpServer server;
+    private final CountDownLatch releaseSlow = new CountDownLatch(1);
+    private final ConcurrentMap<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(0), 64);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try {
+                String path = exchange.getRequestURI().getPath();
+                int hit = hits.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+                if (path.startsWith("/slow/")) {
+                    releaseSlow.await(10, TimeUnit.SECONDS);
+                } else if (path.startsWith("/hedge/") && hit == 1) {
+                    Thread.sleep(2000);
+                }
+                int statusCode = path.startsWith("/flaky/") && hit == 1 ? 503 : 200;
+                //不复用连接，避免复用已被服务端关闭的空闲连接，使请求先失败再重试
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.sendResponseHeaders(statusCode, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+    
+    @After
+    public void stopServer() {
+        releaseSlow.countDown();
+        server.stop(0);
+    }
+    
+    private String url(String host, String path) {
+        return "http://" + host + ":" + server.getAddress().getPort() + path;
+    }
+    
+    private static EndpointMetrics metrics(String url) {
+        return HttpMetrics.forUri(URI.create(url));
+    }
+    
+    private static void awaitInFlight(EndpointMetrics metrics, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (metrics.getInFlight() != expected) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("in flight " + metrics.getInFlight() + ", expected " + expected);
+            }
+            Thread.sleep(10);
+        }
+    }
+    
+    @Test
+    public void cancelledProbeIsNotAnErrorAndReturnsItsPermit() throws Exception {
+        //单独的回环地址，其他测试在127.0.0.1上残留的请求不影响许可计数
+        String url = url("127.0.0.2", "/slow/cancelled.jpg");
+        EndpointMetrics metrics = metrics(url);
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.forHost("127.0.0.2");
+        int baseline = limiter.getInFlight();
+        CompletableFuture<ProbeResult> future = HttpUtil.probeAsync(url, null);
+        awaitInFlight(metrics, 1);
+        //异步请求同样占用域名并发许可
+        assertEquals(baseline + 1, limiter.getInFlight());
+        future.cancel(false);
+        awaitInFlight(metrics, 0);
+        assertEquals(0, metrics.getErrorCount());
+        assertEquals(0, metrics.getLatency().getCount());
+        assertEquals(baseline, limiter.getInFlight());
+    }
+    
+    @Test
+    public void asyncProbeFailsFastWhenBreakerIsOpen() throws Exception {
+        CircuitBreaker breaker = CircuitBreaker.forHost("localhost");
+        try {
+            for (int i = 0; i < 1000; i++) {
+                breaker.onFailure();
+            }
+            HttpUtil.probeAsync(url("localhost", "/open.jpg"), null).get(5, TimeUnit.SECONDS);
+            fail("expected CircuitBreakerOpenException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CircuitBreakerOpenException);
+            assertEquals(null, hits.get("/open.jpg"));
+        } finally {
+            breaker.onSuccess();
+        }
+    }
+    
+    @Test
+    public void asyncProbeRetriesServerErrors() throws Exception {
+        assertEquals(200, HttpUtil.probeAsync(url("127.0.0.1", "/flaky/a.jpg"), null).get(10, TimeUnit.SECONDS)
+                .getStatusCode());
+        assertEquals(2, hits.get("/flaky/a.jpg").get());
+    }
+    
+    @Test
+    public void hedgeDelayComesFromHostLatency() {
+        HedgedProbe hedgedProbe = new HedgedProbe(0.95, 10, 500, 20, 0.05, 10);
+        assertEquals(500, hedgedProbe.hedgeDelayMillis("https://hedge-delay.test/uimage/a/1.jpg"));
+        EndpointMetrics metrics = metrics("https://hedge-delay.test/uimage/a/1.jpg");
+        for (int i = 0; i < 20; i++) {
+            metrics.onStart(-1);
+            metrics.onResponse(TimeUnit.MILLISECONDS.toMicros(100), 200, -1);
+        }
+        //从未请求过的封面地址也使用该域名的延迟
+        long delayMillis = hedgedProbe.hedgeDelayMillis("https://hedge-delay.test/uimage/b/2.jpg");
+        assertTrue(String.valueOf(delayMillis), delayMillis >= 80 && delayMillis <= 150);
+    }
+    
+    @Test
+    public void cancelledHedgeLoserIsNotAnError() throws Exception {
+        HedgedProbe hedgedProbe = new HedgedProbe(0.95, Integer.MAX_VALUE, 100, 20, 0.05, 10);
+        //先建立异步客户端，避免首个请求建连慢于对冲请求
+        HttpUtil.probeAsync(url("127.0.0.1", "/warmup.jpg"), null).get(10, TimeUnit.SECONDS);
+        String url = url("127.0.0.1", "/hedge/a.jpg");
+        EndpointMetrics metrics = metrics(url);
+        ProbeResult result = hedgedProbe.probe(url, null, 5000).get(5, TimeUnit.SECONDS);
+        assertEquals(200, result.getStatusCode());
+        assertEquals(1, hedgedProbe.getHedgeFiredCount());
+        assertEquals(1, hedgedProbe.getHedgeWonCount());
+        awaitInFlight(metrics, 0);
+        assertEquals(0, metrics.getErrorCount());
+        assertEquals(1, metrics.getLatency().getCount());
+    }
+    
+}
@@ -0,0 +1,103 @@
+package net.polyv.common.v1.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHeaders;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.polyv.scan.VideoJson;
+import net.polyv.scan.VideoJsonParse;
+import net.polyv.stub.FakePolyvServer;
+
+/**
+ * 通过本地模拟服务验证封面探测和videojson读取
+ * @author: sadboy
+ **/
+public class HttpUtilProbeTest {
+    private static FakePolyvServer server;
+    
+    @BeforeClass
+    public static void startServer() throws IOException {
+        server = new FakePolyvServer(new FakePolyvServer.Config().setPort(0).setThreads(4).setVideoCount(100)
+                .setDeletedRate(0).setMissingStatusRate(0).setBrokenImageRate(0).setImageBaseUrl("http://127.0.0.1"));
+    }
+    
+    @AfterClass
+    public static void stopServer() {
+        server.close();
+    }
+    
+    private static String imageUrl(String vid) {
+        return server.getBaseUrl() + "/uimage/" + vid.substring(0, 10) + "/" + vid + "_b.jpg";
+    }
+    
+    @Test
+    public void probeReturnsStatusAndValidators() throws IOException {
+        ProbeResult result = HttpUtil.probe(imageUrl(FakePolyvServer.vidOf(1)), null);
+        assertEquals(200, result.getStatusCode());
+        assertNotNull(result.getETag());
+        assertNotNull(result.getLastModified());
+        assertEquals(404, HttpUtil.probe(imageUrl("ffffffffffffffffffffffffffffffff_0")));
+    }
+    
+    @Test
+    public void conditionalProbeReturnsNotModified() throws IOException {
+        String url = imageUrl(FakePolyvServer.vidOf(2));
+        ProbeResult first = HttpUtil.probe(url, null);
+        ProbeResult second = HttpUtil.probe(url,
+                Collections.singletonMap(HttpHeaders.IF_NONE_MATCH, first.getETag()));
+        assertEquals(304, second.getStatusCode());
+    }
+    
+    @Test
+    public void connectionFailuresAreRetriedOnlyByRetryPolicy() throws Exception {
+        final AtomicInteger connections = new AtomicInteger();
+        try (final ServerSocket serverSocket = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    //读到请求后不返回响应直接关闭连接
+                    try (Socket socket = serverSocket.accept()) {
+                        connections.incrementAndGet();
+                        socket.getInputStream().read();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+            //单独的回环地址，失败计入的熔断不影响其他测试
+            try {
+                HttpUtil.probe("http://127.0.0.3:" + serverSocket.getLocalPort() + "/uimage/a.jpg", null);
+                fail("expected IOException");
+            } catch (IOException expected) {
+                //每次尝试只发送一次，客户端自带的重试已关闭
+                assertTrue(String.valueOf(connections.get()), connections.get() >= 1 && connections.get() <= 3);
+            } finally {
+                CircuitBreaker.forHost("127.0.0.3").onSuccess();
+            }
+        }
+    }
+    
+    @Test
+    public void readsVideoJsonFromStream() throws IOException {
+        String vid = FakePolyvServer.vidOf(3);
+        VideoJson videoJson = HttpUtil.get(server.getBaseUrl() + "/videojson/" + vid + ".js", null,
+                VideoJsonParse.INSTANCE);
+        assertEquals(Integer.valueOf(60), videoJson.getStatus());
+        assertEquals("http://127.0.0.1/uimage/" + vid.substring(0, 10) + "/" + vid + "_b.jpg",
+                videoJson.getFirstImageB());
+    }
+    
+}
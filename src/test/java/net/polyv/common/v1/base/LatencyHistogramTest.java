@@ -0,0 +1,58 @@
+package net.polyv.common.v1.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author: sadboy
+ **/
+public class LatencyHistogramTest {
+    
+    @Test
+    public void emptyHistogramReturnsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.quantileMicros(0.99));
+        assertEquals(0, histogram.getCount());
+    }
+    
+    @Test
+    public void quantilesAreWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000L * 100001 / 2, histogram.getSumMicros());
+        assertEquals(100000, histogram.getMaxMicros());
+        for (double quantile : new double[]{0.5, 0.9, 0.95, 0.99, 0.999}) {
+            long exact = (long) Math.ceil(quantile * 100000);
+            long estimate = histogram.quantileMicros(quantile);
+            assertTrue(quantile + ": " + estimate, estimate >= exact);
+            assertTrue(quantile + ": " + estimate, estimate <= exact * 1.04);
+        }
+        assertEquals(100000, histogram.quantileMicros(1));
+    }
+    
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 32; i++) {
+            histogram.record(i);
+        }
+        assertEquals(15, histogram.quantileMicros(0.5));
+        assertEquals(31, histogram.quantileMicros(1));
+    }
+    
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.quantileMicros(1));
+        histogram.record(Long.MAX_VALUE / 2);
+        assertEquals(Long.MAX_VALUE / 2, histogram.getMaxMicros());
+        assertTrue(histogram.quantileMicros(1) > 0);
+    }
+    
+}
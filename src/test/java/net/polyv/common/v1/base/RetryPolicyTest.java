@@ -0,0 +1,76 @@
+package net.polyv.common.v1.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Test;
+
+/**
+ * @author: sadboy
+ **/
+public class RetryPolicyTest {
+    
+    @Test
+    public void stopsAtMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 1000, 0.1, 10);
+        assertTrue(policy.tryRetry(1));
+        assertTrue(policy.tryRetry(2));
+        assertFalse(policy.tryRetry(3));
+    }
+    
+    @Test
+    public void budgetLimitsRetriesAndRefillsPerRequest() {
+        RetryPolicy policy = new RetryPolicy(100, 100, 1000, 0.5, 2);
+        assertTrue(policy.tryRetry(1));
+        assertTrue(policy.tryRetry(1));
+        assertFalse(policy.tryRetry(1));
+        //每个新请求增加0.5个额度
+        policy.onRequest();
+        assertFalse(policy.tryRetry(1));
+        policy.onRequest();
+        assertTrue(policy.tryRetry(1));
+        assertFalse(policy.tryRetry(1));
+    }
+    
+    @Test
+    public void budgetIsCapped() {
+        RetryPolicy policy = new RetryPolicy(1000, 100, 1000, 1, 0);
+        for (int i = 0; i < 1000; i++) {
+            policy.onRequest();
+        }
+        int retries = 0;
+        while (policy.tryRetry(1)) {
+            retries++;
+        }
+        assertEquals(100, retries);
+    }
+    
+    @Test
+    public void backoffStaysWithinJitterCeiling() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0.1, 10);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.backoffMillis(1, 0) <= 100);
+            assertTrue(policy.backoffMillis(3, 0) <= 400);
+            assertTrue(policy.backoffMillis(30, 0) <= 1000);
+        }
+    }
+    
+    @Test
+    public void backoffHonorsRetryAfterUpToMaximum() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0.1, 10);
+        assertTrue(policy.backoffMillis(1, 500) >= 500);
+        assertEquals(1000, policy.backoffMillis(1, 60000));
+    }
+    
+    @Test
+    public void onlyIdempotentMethodsAreRetried() {
+        assertTrue(RetryPolicy.isIdempotent(new HttpGet("http://127.0.0.1/")));
+        assertTrue(RetryPolicy.isIdempotent(new HttpHead("http://127.0.0.1/")));
+        assertFalse(RetryPolicy.isIdempotent(new HttpPost("http://127.0.0.1/")));
+    }
+    
+}
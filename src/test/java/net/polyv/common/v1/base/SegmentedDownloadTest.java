@@ -0,0 +1,251 @@
+package net.polyv.common.v1.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.polyv.common.v1.exception.PloyvSdkException;
+
+/**
+ * 分段下载和续传，本地服务支持Range、If-Range，范围超出文件长度时返回416
+ * @author: sadboy
+ **/
+public class SegmentedDownloadTest {
+    private static final int LENGTH = 100 * 1024;
+    private static final long MIN_SEGMENT_BYTES = 10 * 1024;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private HttpServer server;
+    private volatile byte[] content;
+    private volatile String eTag = "\"v1\"";
+    /**
+     * 第一次请求(取文件长度)之后替换文件内容
+     */
+    private volatile boolean changeAfterFirstRequest;
+    /**
+     * 模拟不支持Range的服务器，总是返回200整个文件
+     */
+    private volatile boolean ignoreRange;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+    
+    @Before
+    public void startServer() throws IOException {
+        content = randomBytes(LENGTH, 1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.createContext("/file.bin", this::handleFile);
+        server.createContext("/error", exchange -> {
+            byte[] body = "{\"code\":400,\"message\":\"file not found\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.start();
+    }
+    
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+    
+    private void handleFile(HttpExchange exchange) throws IOException {
+        try {
+            byte[] current = content;
+            String currentETag = eTag;
+            if (requestCount.incrementAndGet() == 1 && changeAfterFirstRequest) {
+                content = randomBytes(LENGTH, 2);
+                eTag = "\"v2\"";
+            }
+            exchange.getResponseHeaders().set("ETag", currentETag);
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (range == null || ignoreRange || (ifRange != null && !ifRange.equals(currentETag))) {
+                send(exchange, 200, current, 0, current.length);
+                return;
+            }
+            ranges.add(range);
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            int start = Integer.parseInt(bounds[0]);
+            if (start >= current.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + current.length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            int end = bounds[1].isEmpty() ? current.length - 1 : Math.min(current.length - 1, Integer.parseInt(bounds[1]));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + current.length);
+            send(exchange, 206, current, start, end - start + 1);
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private static void send(HttpExchange exchange, int statusCode, byte[] body, int offset, int length)
+            throws IOException {
+        exchange.sendResponseHeaders(statusCode, length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body, offset, length);
+        }
+    }
+    
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+    
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+    
+    private long download(Path path, int segmentCount) throws IOException {
+        return new SegmentedDownload(url("/file.bin"), null, path, segmentCount, MIN_SEGMENT_BYTES).run();
+    }
+    
+    private static Path progressPath(Path path) {
+        return Paths.get(path.toString() + ".segments");
+    }
+    
+    /**
+     * 模拟按segmentCount分段时只完成了第0段：文件中第0段为正确内容，其余为0
+     */
+    private void writePartialDownload(Path path, long segmentSize, String header) throws IOException {
+        byte[] partial = new byte[LENGTH];
+        System.arraycopy(content, 0, partial, 0, (int) segmentSize);
+        Files.write(path, partial);
+        Files.write(progressPath(path), Arrays.asList(header, "0"), StandardCharsets.UTF_8);
+    }
+    
+    @Test
+    public void downloadsAllSegments() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("file.bin");
+        assertEquals(LENGTH, download(path, 4));
+        assertArrayEquals(content, Files.readAllBytes(path));
+        assertFalse(Files.exists(progressPath(path)));
+        //1个取长度的请求 + 4个分段
+        assertEquals(5, ranges.size());
+    }
+    
+    @Test
+    public void resumesOnlyMissingSegments() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("file.bin");
+        long segmentSize = LENGTH / 4;
+        writePartialDownload(path, segmentSize, LENGTH + "\t" + segmentSize + "\t\"v1\"");
+        assertEquals(LENGTH, download(path, 4));
+        assertArrayEquals(content, Files.readAllBytes(path));
+        assertEquals(4, ranges.size());
+        assertFalse(ranges.contains("bytes=0-" + (segmentSize - 1)));
+    }
+    
+    @Test
+    public void restartsWhenSegmentCountChanges() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("file.bin");
+        long segmentSize = LENGTH / 4;
+        writePartialDownload(path, segmentSize, LENGTH + "\t" + segmentSize + "\t\"v1\"");
+        //分3段时第0段的范围与进度文件中的第0段不同，不能沿用
+        assertEquals(LENGTH, download(path, 3));
+        assertArrayEquals(content, Files.readAllBytes(path));
+        assertEquals(4, ranges.size());
+    }
+    
+    @Test
+    public void restartsOnProgressWithoutSegmentSize() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("file.bin");
+        writePartialDownload(path, LENGTH / 4, LENGTH + "\t\"v1\"");
+        assertEquals(LENGTH, download(path, 4));
+        assertArrayEquals(content, Files.readAllBytes(path));
+        assertEquals(5, ranges.size());
+    }
+    
+    @Test
+    public void restartsWhenETagChanges() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("file.bin");
+        long segmentSize = LENGTH / 4;
+        writePartialDownload(path, segmentSize, LENGTH + "\t" + segmentSize + "\t\"v0\"");
+        assertEquals(LENGTH, download(path, 4));
+        assertArrayEquals(content, Files.readAllBytes(path));
+        assertEquals(5, ranges.size());
+    }
+    
+    @Test
+    public void serverWithoutRangeIsDownloadedInOneRequest() throws IOException {
+        ignoreRange = true;
+        Path path = folder.getRoot().toPath().resolve("file.bin");
+        assertEquals(LENGTH, download(path, 4));
+        assertArrayEquals(content, Files.readAllBytes(path));
+        //取长度的请求返回的完整文件直接写入，不再重新下载
+        assertEquals(1, requestCount.get());
+        assertFalse(Files.exists(progressPath(path)));
+    }
+    
+    @Test
+    public void failsWhenFileChangesDuringDownload() {
+        changeAfterFirstRequest = true;
+        Path path = folder.getRoot().toPath().resolve("file.bin");
+        try {
+            download(path, 4);
+            fail("expected IOException");
+        } catch (IOException expected) {
+            //If-Range不匹配时服务器返回200整个文件，不能当作分段写入
+        }
+    }
+    
+    @Test
+    public void resumeOfCompleteFileAccepts416() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("file.bin");
+        Files.write(path, content);
+        assertEquals(LENGTH, HttpUtil.download(url("/file.bin"), null, null, path, true));
+        assertEquals(Collections.singletonList("bytes=" + LENGTH + "-"), ranges);
+        assertArrayEquals(content, Files.readAllBytes(path));
+    }
+    
+    @Test
+    public void resumesSingleDownloadFromExistingLength() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("file.bin");
+        Files.write(path, Arrays.copyOf(content, 1000));
+        assertEquals(LENGTH, HttpUtil.download(url("/file.bin"), null, null, path, true));
+        assertEquals(Collections.singletonList("bytes=1000-"), ranges);
+        assertArrayEquals(content, Files.readAllBytes(path));
+    }
+    
+    @Test
+    public void jsonErrorIsNotWrittenToFile() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("error.bin");
+        try {
+            HttpUtil.download(url("/error"), null, null, path, false);
+            fail("expected PloyvSdkException");
+        } catch (PloyvSdkException expected) {
+            //json错误信息以异常结束
+        }
+        assertFalse(Files.exists(path));
+    }
+    
+}
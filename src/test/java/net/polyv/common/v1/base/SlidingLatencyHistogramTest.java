@@ -0,0 +1,57 @@
+package net.polyv.common.v1.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * @author: sadboy
+ **/
+public class SlidingLatencyHistogramTest {
+    
+    @Test
+    public void quantileFollowsRecentSamples() {
+        AtomicLong now = new AtomicLong(1000000);
+        SlidingLatencyHistogram histogram = new SlidingLatencyHistogram(60000, 6, now::get);
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(100000);
+        }
+        assertEquals(1000, histogram.getCount());
+        long slow = histogram.quantileMicros(0.95);
+        assertTrue(String.valueOf(slow), slow >= 97000 && slow <= 100000);
+        
+        //半个窗口后变快，两段都在窗口内
+        now.addAndGet(30000);
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(10000);
+        }
+        assertEquals(2000, histogram.getCount());
+        assertTrue(histogram.quantileMicros(0.95) >= 97000);
+        
+        //慢的一段移出窗口后只剩快的
+        now.addAndGet(35000);
+        assertEquals(1000, histogram.getCount());
+        long fast = histogram.quantileMicros(0.95);
+        assertTrue(String.valueOf(fast), fast >= 9700 && fast <= 10000);
+        
+        now.addAndGet(60000);
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.quantileMicros(0.95));
+    }
+    
+    @Test
+    public void expiredSliceIsReplacedOnWrite() {
+        AtomicLong now = new AtomicLong(0);
+        SlidingLatencyHistogram histogram = new SlidingLatencyHistogram(6000, 6, now::get);
+        histogram.record(500);
+        //转一整圈回到同一片，旧的记录不再计入
+        now.addAndGet(6000);
+        histogram.record(7);
+        assertEquals(1, histogram.getCount());
+        assertEquals(7, histogram.quantileMicros(1));
+    }
+    
+}
@@ -0,0 +1,164 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.polyv.common.v1.exception.PloyvSdkException;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListRequest;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListResponse;
+
+/**
+ * 多账号列表请求按账号签名，本地服务按userId对应的secretKey校验签名
+ * @author: sadboy
+ **/
+public class AccountListFetcherTest {
+    private static final ScanAccount SLOW = new ScanAccount("slow", "user-slow", "secret-slow", 1, 0);
+    private static final ScanAccount FAST = new ScanAccount("fast", "user-fast", "secret-fast", 1, 0);
+    
+    private HttpServer server;
+    /**
+     * 慢账号的请求在该门闩打开前不返回
+     */
+    private final CountDownLatch releaseSlow = new CountDownLatch(1);
+    
+    @Before
+    public void startServer() throws IOException {
+        final Map<String, String> secretKeys = new HashMap<>();
+        secretKeys.put(SLOW.getUserId(), SLOW.getSecretKey());
+        secretKeys.put(FAST.getUserId(), FAST.getSecretKey());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v4/video/list", exchange -> {
+            try {
+                Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                String userId = params.get("userId");
+                String secretKey = secretKeys.get(userId);
+                if (secretKey == null || !AccountListFetcher.sign(params, secretKey).equals(params.get("sign"))) {
+                    send(exchange, "{\"code\":403,\"message\":\"sign error\"}");
+                    return;
+                }
+                if (SLOW.getUserId().equals(userId)) {
+                    releaseSlow.await(10, TimeUnit.SECONDS);
+                }
+                send(exchange, "{\"code\":200,\"data\":{\"pageSize\":1,\"currentPage\":" + params.get("currentPage")
+                        + ",\"totalItems\":1,\"totalPage\":1,\"contents\":[{\"videoId\":\"" + userId + "_1\","
+                        + "\"basicInfo\":{\"coverURL\":\"https://img.videocc.net/a.jpg\",\"status\":61}}]}}");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+    
+    @After
+    public void stopServer() {
+        releaseSlow.countDown();
+        server.stop(0);
+    }
+    
+    private static void send(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+    
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            int index = pair.indexOf('=');
+            params.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+                    URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+        }
+        return params;
+    }
+    
+    private AccountListFetcher fetcher(ScanAccount account) {
+        return new AccountListFetcher(account, "http://127.0.0.1:" + server.getAddress().getPort() + "/v4/video/list");
+    }
+    
+    private static VodGetVideoListRequest request() {
+        return new VodGetVideoListRequest().setFilters("basicInfo").setStatus("60,61").setContainSubCate(true)
+                .setPageSize(1).setCurrentPage(1).setStartTime(new Date(0)).setEndTime(new Date(1000));
+    }
+    
+    @Test
+    public void signsWithSortedParamsWrappedInSecretKey() {
+        Map<String, String> params = new HashMap<>();
+        params.put("b", "2");
+        params.put("a", "1");
+        params.put("sign", "ignored");
+        assertEquals("3A7635F0988AF09A53DF1A3CC1068790", AccountListFetcher.sign(params, "key"));
+    }
+    
+    @Test
+    public void nullConditionsAreNotSent() {
+        TimeZone timeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT+8"));
+        try {
+            Map<String, String> params = AccountListFetcher.toParams(request().setCategoryId(null));
+            assertFalse(params.containsKey("categoryId"));
+            assertEquals("true", params.get("containSubCate"));
+            assertEquals("1970-01-01 08:00:00", params.get("startTime"));
+            assertEquals("1970-01-01 08:00:01", params.get("endTime"));
+        } finally {
+            TimeZone.setDefault(timeZone);
+        }
+    }
+    
+    @Test
+    public void accountsPageConcurrentlyWithTheirOwnSignatures() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<VodGetVideoListResponse> slow = executor.submit(() -> fetcher(SLOW).fetch(request()));
+            //慢账号的请求未返回时，其他账号的请求不需要等待
+            VodGetVideoListResponse fast = fetcher(FAST).fetch(request());
+            assertEquals("user-fast_1", fast.getContents().get(0).getVideoId());
+            assertEquals(Integer.valueOf(61), fast.getContents().get(0).getBasicInfo().getStatus());
+            assertFalse(slow.isDone());
+            releaseSlow.countDown();
+            assertEquals("user-slow_1", slow.get(10, TimeUnit.SECONDS).getContents().get(0).getVideoId());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void wrongSecretKeyFails() throws IOException {
+        try {
+            fetcher(new ScanAccount("bad", FAST.getUserId(), "wrong", 1, 0)).fetch(request());
+            fail("expected PloyvSdkException");
+        } catch (PloyvSdkException expected) {
+            assertTrue(expected.getMessage().contains("bad"));
+        }
+    }
+    
+}
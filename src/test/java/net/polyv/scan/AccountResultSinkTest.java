@@ -0,0 +1,50 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author: sadboy
+ **/
+public class AccountResultSinkTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void accountNameIsAppendedToFileName() {
+        Path reportPath = Paths.get("out", "report.csv");
+        assertEquals(Paths.get("out", "report-accountA_1.csv"), AccountResultSink.pathFor(reportPath, "accountA_1"));
+        assertEquals(Paths.get("out", "report-a"), AccountResultSink.pathFor(Paths.get("out", "report"), "a"));
+    }
+    
+    @Test
+    public void accountNameCannotLeaveReportDirectory() {
+        Path reportPath = Paths.get("out", "report.csv");
+        assertEquals(Paths.get("out", "report-.._.._etc_x.csv"), AccountResultSink.pathFor(reportPath, "../../etc/x"));
+        assertEquals(Paths.get("out", "report-a_b_c.csv"), AccountResultSink.pathFor(reportPath, "a\\b:c"));
+        assertEquals(reportPath.getParent(), AccountResultSink.pathFor(reportPath, "/tmp/x").getParent());
+    }
+    
+    @Test
+    public void accountsMappingToTheSameFileAreRejected() throws IOException {
+        Path reportPath = folder.getRoot().toPath().resolve("report.csv");
+        try {
+            AccountResultSink.open(reportPath, Arrays.asList(new ScanAccount("a/b", "1", "k", 1, 0),
+                    new ScanAccount("a:b", "2", "k", 1, 0)));
+            fail("expected IOException");
+        } catch (IOException expected) {
+            //两个账号的报告文件相同，不能互相覆盖
+        }
+    }
+    
+}
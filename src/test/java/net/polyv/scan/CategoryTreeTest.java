@@ -0,0 +1,36 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import net.polyv.vod.v1.entity.manage.category.VodGetCategoryResponse;
+
+/**
+ * @author: sadboy
+ **/
+public class CategoryTreeTest {
+    
+    private static VodGetCategoryResponse category(String categoryId, VodGetCategoryResponse... nodes) {
+        return new VodGetCategoryResponse().setCategoryId(categoryId).setNodes(Arrays.asList(nodes));
+    }
+    
+    @Test
+    public void expandsWholeTreeWithDefaultCategory() {
+        assertEquals(Arrays.asList("1", "10", "11", "12", "20"), CategoryTree.expand(Arrays.asList(
+                category("10", category("11"), category("12")), category("20")), null));
+        assertEquals(Arrays.asList("1", "10"), CategoryTree.expand(Arrays.asList(category("1"), category("10")), null));
+        assertEquals(Collections.singletonList("1"), CategoryTree.expand(null, null));
+    }
+    
+    @Test
+    public void expandsOnlySelectedSubtree() {
+        VodGetCategoryResponse tree = category("10", category("11", category("111")), category("12"));
+        assertEquals(Arrays.asList("11", "111"), CategoryTree.expand(Collections.singletonList(tree), "11"));
+        assertEquals(Collections.singletonList("99"), CategoryTree.expand(Collections.singletonList(tree), "99"));
+    }
+    
+}
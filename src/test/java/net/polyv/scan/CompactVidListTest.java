@@ -0,0 +1,38 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author: sadboy
+ **/
+public class CompactVidListTest {
+    
+    @Test
+    public void keepsOrderOfMixedVidsAcrossGrowth() {
+        CompactVidList list = new CompactVidList(1);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            //每7个中有1个非标准vid
+            String vid = i % 7 == 0 ? "custom-" + i : CompactVidSetTest.vid(i);
+            list.add(vid);
+            expected.add(vid);
+        }
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i));
+        }
+    }
+    
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexOutOfRange() {
+        CompactVidList list = new CompactVidList();
+        list.add(CompactVidSetTest.vid(1));
+        list.get(1);
+    }
+    
+}
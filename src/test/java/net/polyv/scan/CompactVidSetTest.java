@@ -0,0 +1,75 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author: sadboy
+ **/
+public class CompactVidSetTest {
+    
+    static String vid(int index) {
+        return String.format("%032x_%d", index * 2654435761L, index % 10);
+    }
+    
+    @Test
+    public void roundTripsCanonicalVidsInEveryStorage() {
+        for (CompactVidSet.Storage storage : CompactVidSet.Storage.values()) {
+            //从16个槽位开始，多次扩容
+            CompactVidSet set = new CompactVidSet(0, storage);
+            for (int i = 0; i < 10000; i++) {
+                assertTrue(storage + ": " + i, set.add(vid(i)));
+            }
+            assertEquals(10000, set.size());
+            for (int i = 0; i < 10000; i++) {
+                assertTrue(storage + ": " + i, set.contains(vid(i)));
+                assertFalse(set.add(vid(i)));
+            }
+            assertFalse(set.contains(vid(10000)));
+            assertEquals(10000, set.size());
+        }
+    }
+    
+    @Test
+    public void keepsNonCanonicalVidsAsStrings() {
+        CompactVidSet set = new CompactVidSet(16, CompactVidSet.Storage.HEAP);
+        String[] vids = {"1B448BE3239BE11B5A206F26E3BAA988_1", "1b448be3239be11b5a206f26e3baa988_01",
+                "1b448be3239be11b5a206f26e3baa988_255", "1b448be3239be11b5a206f26e3baa988", "short_1", ""};
+        for (String vid : vids) {
+            assertTrue(vid, set.add(vid));
+        }
+        for (String vid : vids) {
+            assertTrue(vid, set.contains(vid));
+            assertFalse(vid, set.add(vid));
+        }
+        //与非标准vid只差大小写或前导0的标准vid是不同的元素
+        assertFalse(set.contains("1b448be3239be11b5a206f26e3baa988_1"));
+        assertTrue(set.add("1b448be3239be11b5a206f26e3baa988_1"));
+        assertEquals(vids.length + 1, set.size());
+    }
+    
+    @Test
+    public void fallsBackToHashSetAtCapacityLimit() {
+        CompactVidSet set = new CompactVidSet(0, CompactVidSet.Storage.HEAP, 64);
+        //64个槽位最多存48个，之后的vid退回HashSet
+        for (int i = 0; i < 200; i++) {
+            assertTrue(String.valueOf(i), set.add(vid(i)));
+        }
+        assertEquals(200, set.size());
+        for (int i = 0; i < 200; i++) {
+            assertTrue(String.valueOf(i), set.contains(vid(i)));
+            assertFalse(String.valueOf(i), set.add(vid(i)));
+        }
+        assertFalse(set.contains(vid(200)));
+        assertEquals(200, set.size());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaxCapacityThatIsNotPowerOfTwo() {
+        new CompactVidSet(0, CompactVidSet.Storage.HEAP, 100);
+    }
+    
+}
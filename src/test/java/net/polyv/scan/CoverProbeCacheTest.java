@@ -0,0 +1,53 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.polyv.common.v1.base.ProbeResult;
+
+/**
+ * @author: sadboy
+ **/
+public class CoverProbeCacheTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void loadSkipsMalformedLines() throws Exception {
+        long now = System.currentTimeMillis();
+        Path path = folder.getRoot().toPath().resolve("probe.cache");
+        String content = "https://img.videocc.net/a.jpg\t200\t\"etag-a\"\t\t" + now + "\n"
+                + "https://img.videocc.net/b.jpg\tabc\t\t\t" + now + "\n"
+                + "https://img.videocc.net/c.jpg\t404\t\t\t\n"
+                + "https://img.videocc.net/d.jpg\t404\n"
+                + "https://img.videocc.net/e.jpg\t404\t\t\t" + now + "\n"
+                //写入中断留下的残行
+                + "https://img.videocc.net/f.jpg\t200\t\t";
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        final List<String> probed = new ArrayList<>();
+        CoverProbeCache cache = new CoverProbeCache((url, headMap) -> {
+            probed.add(url);
+            return new ProbeResult(200, null, null);
+        }, 60000, 100);
+        cache.load(path);
+        
+        assertEquals(200, cache.getStatusCode("https://img.videocc.net/a.jpg"));
+        assertEquals(404, cache.getStatusCode("https://img.videocc.net/e.jpg"));
+        assertEquals(0, probed.size());
+        for (String name : new String[] {"b", "c", "d", "f"}) {
+            assertEquals(200, cache.getStatusCode("https://img.videocc.net/" + name + ".jpg"));
+        }
+        assertEquals(4, probed.size());
+    }
+    
+}
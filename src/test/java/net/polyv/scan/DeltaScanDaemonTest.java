@@ -0,0 +1,92 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListRequest;
+
+/**
+ * @author: sadboy
+ **/
+public class DeltaScanDaemonTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void windowIsSetAsDates() {
+        Date startTime = new Date(1000);
+        Date endTime = new Date(2000);
+        //SDK的startTime/endTime为Date，类型不符时这里编译失败
+        VodGetVideoListRequest request = DeltaScanDaemon.applyWindow(new VodGetVideoListRequest(), startTime,
+                endTime);
+        assertEquals(startTime, request.getStartTime());
+        assertEquals(endTime, request.getEndTime());
+    }
+    
+    @Test
+    public void fullSweepHasNoWindow() {
+        VodGetVideoListRequest request = DeltaScanDaemon.applyWindow(new VodGetVideoListRequest(), null, null);
+        assertNull(request.getStartTime());
+        assertNull(request.getEndTime());
+    }
+    
+    @Test
+    public void eachRoundHasItsOwnReport() {
+        Path reportPath = Paths.get("out", "report.csv");
+        Path first = DeltaScanDaemon.roundReportPath(reportPath, new Date(0));
+        Path second = DeltaScanDaemon.roundReportPath(reportPath, new Date(1000));
+        assertNotEquals(first, second);
+        assertEquals(reportPath.getParent(), first.getParent());
+        assertTrue(first.getFileName().toString().matches("report-\\d{8}-\\d{6}\\.csv"));
+        assertTrue(DeltaScanDaemon.roundReportPath(Paths.get("report"), new Date(0)).getFileName().toString()
+                .matches("report-\\d{8}-\\d{6}"));
+    }
+    
+    @Test
+    public void fullSweepFirstThenOverlappingDeltas() throws IOException {
+        final List<Date[]> windows = new ArrayList<>();
+        ScanWatermark watermark = ScanWatermark.load(folder.getRoot().toPath().resolve("scan.watermark"));
+        DeltaScanDaemon daemon = new DeltaScanDaemon(watermark, 0, 1000 * HOUR, HOUR, (startTime, endTime) -> {
+            windows.add(new Date[]{startTime, endTime});
+            return Collections.emptyMap();
+        });
+        daemon.runOnce();
+        long firstRound = watermark.getScannedUntil();
+        assertNull(windows.get(0)[0]);
+        assertEquals(firstRound, watermark.getLastFullSweep());
+        
+        daemon.runOnce();
+        assertEquals(firstRound - HOUR, windows.get(1)[0].getTime());
+        assertEquals(watermark.getScannedUntil(), windows.get(1)[1].getTime());
+        assertEquals(firstRound, ScanWatermark.load(folder.getRoot().toPath().resolve("scan.watermark"))
+                .getLastFullSweep());
+    }
+    
+    @Test
+    public void failedRoundKeepsWatermark() throws IOException {
+        ScanWatermark watermark = ScanWatermark.load(folder.getRoot().toPath().resolve("scan.watermark"));
+        watermark.setScannedUntil(5 * HOUR);
+        watermark.setLastFullSweep(System.currentTimeMillis());
+        new DeltaScanDaemon(watermark, 0, 1000 * HOUR, HOUR, (startTime, endTime) -> {
+            throw new IOException("list failed");
+        }).runOnce();
+        assertEquals(5 * HOUR, watermark.getScannedUntil());
+    }
+    
+}
@@ -0,0 +1,95 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author: sadboy
+ **/
+public class ScanJournalTest {
+    private static final String VID1 = "1b448be3239be11b5a206f26e3baa988_1";
+    private static final String VID2 = "1b448be3239be11b5a206f26e3baa989_1";
+    private static final String VID3 = "1b448be3239be11b5a206f26e3baa98a_1";
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void resumesFromRecordedProgress() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("scan.journal");
+        ScanJournal journal = ScanJournal.open(path, 2, 60000);
+        assertFalse(journal.isResumed());
+        journal.recordPage(1, Arrays.asList(VID1, VID2));
+        journal.recordPage(2, Collections.singletonList(VID3));
+        journal.recordCheck(VID2, true);
+        journal.close();
+        
+        journal = ScanJournal.open(path, 2, 60000);
+        try {
+            assertTrue(journal.isResumed());
+            assertEquals(2, journal.getLastPage());
+            assertFalse(journal.isListCompleted());
+            assertEquals(Arrays.asList(VID1, VID3), journal.getPendingVids());
+            assertTrue(journal.isChecked(VID2));
+            assertFalse(journal.isChecked(VID1));
+            journal.recordListEnd();
+        } finally {
+            journal.close();
+        }
+        journal = ScanJournal.open(path, 2, 60000);
+        try {
+            assertTrue(journal.isListCompleted());
+        } finally {
+            journal.close();
+        }
+    }
+    
+    @Test
+    public void dropsPartiallyWrittenLastLine() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("scan.journal");
+        ScanJournal journal = ScanJournal.open(path, 100, 60000);
+        journal.recordPage(1, Arrays.asList(VID1, VID2));
+        journal.close();
+        Files.write(path, ("V\t" + VID1).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        
+        journal = ScanJournal.open(path, 100, 60000);
+        try {
+            assertFalse(journal.isChecked(VID1));
+            assertEquals(Arrays.asList(VID1, VID2), journal.getPendingVids());
+            journal.recordCheck(VID1, false);
+        } finally {
+            journal.close();
+        }
+        journal = ScanJournal.open(path, 100, 60000);
+        try {
+            assertTrue(journal.isChecked(VID1));
+            assertEquals(Collections.singletonList(VID2), journal.getPendingVids());
+        } finally {
+            journal.close();
+        }
+    }
+    
+    @Test
+    public void completeDeletesJournal() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("scan.journal");
+        ScanJournal journal = ScanJournal.open(path, 1, 60000);
+        journal.recordPage(1, Collections.singletonList(VID1));
+        journal.recordCheck(VID1, false);
+        journal.complete();
+        assertFalse(Files.exists(path));
+    }
+    
+}
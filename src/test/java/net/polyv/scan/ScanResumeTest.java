@@ -0,0 +1,167 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListRequest;
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListResponse;
+
+/**
+ * 扫描进程被强制结束后续扫，已记录进度的视频的检查结果不能从报告中丢失
+ * 子进程按APP.scan的方式组装进度日志、报告和检查流程，检查到一半时被杀掉，再在当前进程中续扫
+ * @author: sadboy
+ **/
+public class ScanResumeTest {
+    private static final int PAGE_COUNT = 30;
+    private static final int PAGE_SIZE = 10;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private static String vid(int index) {
+        return String.format("%032d_%d", index, index % 10);
+    }
+    
+    /**
+     * 每3个视频中有1个封面返回404
+     */
+    private static boolean isError(String vid) {
+        return Long.parseLong(vid.substring(0, 32)) % 3 == 0;
+    }
+    
+    private static VodGetVideoListResponse page(int currentPage) {
+        List<VodGetVideoListResponse.VodGetVideoList> contents = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            contents.add(new VodGetVideoListResponse.VodGetVideoList()
+                    .setVideoId(vid((currentPage - 1) * PAGE_SIZE + i)));
+        }
+        VodGetVideoListResponse response = new VodGetVideoListResponse();
+        response.setContents(contents);
+        response.setCurrentPage(currentPage);
+        response.setTotalPage(PAGE_COUNT);
+        return response;
+    }
+    
+    /**
+     * 与APP.scan相同的组装方式
+     * @return 本次写入检查队列的视频数
+     */
+    static long scan(Path journalPath, Path reportPath, final long checkMillis) throws IOException {
+        ScanJournal journal = ScanJournal.open(journalPath, 5, 100);
+        ChannelResultSink sink = ChannelResultSink.open(reportPath, journal.isResumed());
+        journal.setReport(sink);
+        BlockingQueue<VideoItem> queue = new ArrayBlockingQueue<>(20);
+        VideoListProducer producer = new VideoListProducer(new VodGetVideoListRequest(), queue, 0, journal,
+                request -> page(request.getCurrentPage()));
+        boolean completed = false;
+        try {
+            new CoverCheckPipeline(4, item -> {
+                try {
+                    Thread.sleep(checkMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String vid = item.getVid();
+                return isError(vid)
+                        ? new CheckResult(vid, "https://img.videocc.net/" + vid + ".jpg", 404,
+                                CheckResult.Reason.NON_200, checkMillis)
+                        : new CheckResult(vid, null, 200, CheckResult.Reason.OK, checkMillis);
+            }, (item, result) -> journal.recordCheck(item.getVid(), result.isError())).run(producer, queue, sink);
+            completed = true;
+        } finally {
+            sink.close();
+            if (completed) {
+                journal.complete();
+            } else {
+                journal.close();
+            }
+        }
+        return producer.getProducedCount();
+    }
+    
+    /**
+     * 子进程入口，参数为进度日志和报告文件
+     */
+    public static void main(String[] args) throws IOException {
+        scan(Paths.get(args[0]), Paths.get(args[1]), 20);
+    }
+    
+    private static int countChecks(Path journalPath) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return 0;
+        }
+        int count = 0;
+        for (String line : new String(Files.readAllBytes(journalPath), StandardCharsets.UTF_8).split("\n")) {
+            if (line.startsWith("V\t")) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    @Test
+    public void killedScanResumesWithoutLosingFindings() throws Exception {
+        Path journalPath = folder.getRoot().toPath().resolve("scan.journal");
+        Path reportPath = folder.getRoot().toPath().resolve("report.csv");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ScanResumeTest.class.getName(), journalPath.toString(), reportPath.toString())
+                .redirectOutput(new File(folder.getRoot(), "child.out"))
+                .redirectErrorStream(true)
+                .start();
+        try {
+            long deadline = System.currentTimeMillis() + 30000;
+            while (countChecks(journalPath) < 40) {
+                if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                    fail("子进程没有在检查过程中记录进度："
+                            + new String(Files.readAllBytes(folder.getRoot().toPath().resolve("child.out")),
+                                    StandardCharsets.UTF_8));
+                }
+                Thread.sleep(5);
+            }
+        } finally {
+            //不执行关闭和刷新，模拟进程被杀掉
+            process.destroyForcibly();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+        
+        int total = PAGE_COUNT * PAGE_SIZE;
+        long resumed = scan(journalPath, reportPath, 0);
+        assertTrue("续扫应跳过已记录的视频：" + resumed, resumed < total);
+        Set<String> reported = new HashSet<>();
+        List<String> lines = Files.readAllLines(reportPath, StandardCharsets.UTF_8);
+        assertTrue(lines.get(0).startsWith("vid,"));
+        for (String line : lines.subList(1, lines.size())) {
+            String vid = line.substring(0, line.indexOf(','));
+            assertTrue(vid, isError(vid));
+            reported.add(vid);
+        }
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < total; i++) {
+            if (isError(vid(i))) {
+                expected.add(vid(i));
+            }
+        }
+        assertEquals(expected, reported);
+    }
+    
+}
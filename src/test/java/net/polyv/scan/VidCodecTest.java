@@ -0,0 +1,36 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author: sadboy
+ **/
+public class VidCodecTest {
+    private static final String HEX = "1b448be3239be11b5a206f26e3baa988";
+    
+    private static String roundTrip(String vid) {
+        return VidCodec.decode(VidCodec.high(vid), VidCodec.low(vid), VidCodec.tag(vid));
+    }
+    
+    @Test
+    public void encodesCanonicalVids() {
+        for (String vid : new String[]{HEX + "_0", HEX + "_1", HEX + "_10", HEX + "_254",
+                "00000000000000000000000000000000_0", "ffffffffffffffffffffffffffffffff_9"}) {
+            assertTrue(vid, VidCodec.isEncodable(vid));
+            assertEquals(vid, roundTrip(vid));
+        }
+    }
+    
+    @Test
+    public void rejectsVidsThatWouldNotDecodeIdentically() {
+        for (String vid : new String[]{HEX + "_255", HEX + "_01", HEX + "_", HEX + "_a", HEX + "-1", HEX,
+                HEX.toUpperCase() + "_1", HEX.substring(1) + "_1", HEX + "_1000", "g" + HEX.substring(1) + "_1"}) {
+            assertFalse(vid, VidCodec.isEncodable(vid));
+        }
+    }
+    
+}
@@ -0,0 +1,40 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import net.polyv.vod.v1.entity.manage.list.VodGetVideoListResponse;
+
+/**
+ * @author: sadboy
+ **/
+public class VideoItemTest {
+    private static final String VID = "1b448be3239be11b5a206f26e3baa988_1";
+    
+    @Test
+    public void readsCoverAndStatusFromBasicInfo() {
+        VideoItem item = VideoItem.of(new VodGetVideoListResponse.VodGetVideoList().setVideoId(VID)
+                .setBasicInfo(new VodGetVideoListResponse.BasicInfo().setCoverURL("https://img.videocc.net/b.jpg")
+                        .setStatus(61)));
+        assertEquals(VID, item.getVid());
+        assertEquals("https://img.videocc.net/b.jpg", item.getCoverUrl());
+        assertEquals(Integer.valueOf(61), item.getStatus());
+        assertTrue(item.hasMetadata());
+    }
+    
+    @Test
+    public void missingBasicInfoFallsBackToVideoJson() {
+        VideoItem item = VideoItem.of(new VodGetVideoListResponse.VodGetVideoList().setVideoId(VID));
+        assertEquals(VID, item.getVid());
+        assertFalse(item.hasMetadata());
+        item = VideoItem.of(new VodGetVideoListResponse.VodGetVideoList().setVideoId(VID)
+                .setBasicInfo(new VodGetVideoListResponse.BasicInfo().setCoverURL("").setStatus(61)));
+        assertNull(item.getCoverUrl());
+        assertFalse(item.hasMetadata());
+    }
+    
+}
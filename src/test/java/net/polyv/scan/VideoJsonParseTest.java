@@ -0,0 +1,133 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author: sadboy
+ **/
+public class VideoJsonParseTest {
+    
+    private static VideoJson parse(String json) throws IOException {
+        return VideoJsonParse.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * 每次只返回一个字节，覆盖缓冲区边界上的回退
+     */
+    private static VideoJson parseByteByByte(String json) throws IOException {
+        final InputStream inputStream = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+        return VideoJsonParse.parse(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return inputStream.read();
+            }
+            
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return inputStream.read(b, off, Math.min(len, 1));
+            }
+        });
+    }
+    
+    private static void assertTruncated(String json) {
+        try {
+            parse(json);
+            fail("expected IOException for " + json);
+        } catch (IOException expected) {
+            //截断的内容记为检查异常，不能抛出运行时异常中断扫描
+        }
+        try {
+            parseByteByByte(json);
+            fail("expected IOException for " + json);
+        } catch (IOException expected) {
+            //同上
+        }
+    }
+    
+    @Test
+    public void readsTopLevelFields() throws IOException {
+        VideoJson videoJson = parse("{\"status\":61,\"first_image_b\":\"https://img.videocc.net/b/cover.jpg\"}");
+        assertEquals(Integer.valueOf(61), videoJson.getStatus());
+        assertEquals("https://img.videocc.net/b/cover.jpg", videoJson.getFirstImageB());
+    }
+    
+    @Test
+    public void skipsUnknownAndNestedFields() throws IOException {
+        String json = "{\"title\":\"a,}]\\\"b\",\"hls\":[\"x\",{\"status\":1}],"
+                + "\"player\":{\"status\":2,\"first_image_b\":\"nested\",\"list\":[[1,2],{}]},"
+                + "\"ok\":true,\"none\":null,\"rate\":1.5e3,,"
+                + "\"first_image_b\":\"top\",\"status\":-1}";
+        VideoJson videoJson = parse(json);
+        assertEquals(Integer.valueOf(-1), videoJson.getStatus());
+        assertEquals("top", videoJson.getFirstImageB());
+        videoJson = parseByteByByte(json);
+        assertEquals(Integer.valueOf(-1), videoJson.getStatus());
+        assertEquals("top", videoJson.getFirstImageB());
+    }
+    
+    @Test
+    public void decodesEscapes() throws IOException {
+        VideoJson videoJson = parse("{\"first_image_b\":\"https:\\/\\/img\\u002evideocc.net\\/\\u5c01\\u9762.jpg"
+                + "\\t\\\"\\\\\",\"status\":\"60\"}");
+        assertEquals("https://img.videocc.net/封面.jpg\t\"\\", videoJson.getFirstImageB());
+        assertEquals(Integer.valueOf(60), videoJson.getStatus());
+    }
+    
+    @Test
+    public void escapedKeyIsNotMatched() throws IOException {
+        VideoJson videoJson = parse("{\"st\\u0061tus\":1,\"first_image_b\":\"a\"}");
+        assertNull(videoJson.getStatus());
+        assertEquals("a", videoJson.getFirstImageB());
+    }
+    
+    @Test
+    public void numbersOutOfIntRangeAreNull() throws IOException {
+        assertNull(parse("{\"status\":2147483648,\"first_image_b\":\"a\"}").getStatus());
+        assertNull(parse("{\"status\":-99999999999999999999,\"first_image_b\":\"a\"}").getStatus());
+        assertNull(parse("{\"status\":\"2147483648\",\"first_image_b\":\"a\"}").getStatus());
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE),
+                parse("{\"status\":2147483647,\"first_image_b\":\"a\"}").getStatus());
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE),
+                parse("{\"status\":-2147483648,\"first_image_b\":\"a\"}").getStatus());
+    }
+    
+    @Test
+    public void nonNumericStatusIsNull() throws IOException {
+        VideoJson videoJson = parse("{\"status\":null,\"first_image_b\":null}");
+        assertNull(videoJson.getStatus());
+        assertNull(videoJson.getFirstImageB());
+        assertNull(parse("{\"status\":{\"code\":1},\"first_image_b\":\"a\"}").getStatus());
+    }
+    
+    @Test
+    public void missingFieldsAreNull() throws IOException {
+        VideoJson videoJson = parse("{\"title\":\"a\"}");
+        assertNull(videoJson.getStatus());
+        assertNull(videoJson.getFirstImageB());
+    }
+    
+    @Test
+    public void truncatedInputThrowsIOException() {
+        assertTruncated("");
+        assertTruncated("{");
+        assertTruncated("{\"status\"");
+        assertTruncated("{\"status\":");
+        assertTruncated("{\"status\":6");
+        assertTruncated("{\"status\":-");
+        assertTruncated("{\"status\":61");
+        assertTruncated("{\"status\":61,\"first_image_b\":\"https://img");
+        assertTruncated("{\"title\":[1,{\"a\":");
+        assertTruncated("{\"first_image_b\":\"\\u12");
+        assertTruncated("[]");
+    }
+    
+}
@@ -0,0 +1,272 @@
+package net.polyv.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 同一目录上打开多个WorkQueue，分别作为协调进程和检查进程
+ * @author: sadboy
+ **/
+public class WorkQueueTest {
+    private static final long LEASE_MILLIS = 60000;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path root;
+    
+    @Before
+    public void setUp() {
+        root = folder.getRoot().toPath().resolve("work-queue");
+    }
+    
+    private WorkQueue open() throws IOException {
+        return WorkQueue.open(root, LEASE_MILLIS, ".jsonl");
+    }
+    
+    private static List<VideoItem> batch(String prefix, int size) {
+        List<VideoItem> items = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            items.add(new VideoItem(prefix + i, "https://img.videocc.net/" + prefix + i + ".jpg", 61));
+        }
+        return items;
+    }
+    
+    private static void check(WorkQueue.Lease lease) throws IOException {
+        check(lease, lease.getItems());
+    }
+    
+    /**
+     * 每个视频一行结果后提交
+     * @param items 领取时读取的视频
+     */
+    private static void check(WorkQueue.Lease lease, List<VideoItem> items) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (VideoItem item : items) {
+            lines.add(item.getVid());
+        }
+        Files.write(lease.getResultTempPath(), lines, StandardCharsets.UTF_8);
+        lease.complete();
+    }
+    
+    private List<String> merge() throws IOException {
+        Path reportPath = folder.getRoot().toPath().resolve("report.jsonl");
+        open().mergeResults(reportPath);
+        return Files.readAllLines(reportPath, StandardCharsets.UTF_8);
+    }
+    
+    private Path onlyFile(String dir) throws IOException {
+        Path found = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root.resolve(dir))) {
+            for (Path path : stream) {
+                assertNull("more than one file in " + dir, found);
+                found = path;
+            }
+        }
+        assertNotNull("no file in " + dir, found);
+        return found;
+    }
+    
+    @Test
+    public void concurrentWorkersCheckEachBatchOnce() throws Exception {
+        WorkQueue coordinator = open();
+        coordinator.startRun();
+        for (int i = 0; i < 20; i++) {
+            coordinator.offer(batch("v" + i + "-", 5));
+        }
+        coordinator.completeList();
+        final AtomicInteger completed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                final String workerId = "worker" + w;
+                futures.add(executor.submit(() -> {
+                    WorkQueue worker = open();
+                    for (WorkQueue.Lease lease = worker.claim(workerId); lease != null;
+                            lease = worker.claim(workerId)) {
+                        check(lease);
+                        completed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(20, completed.get());
+        WorkQueue reopened = open();
+        assertEquals(coordinator.getRunId(), reopened.getRunId());
+        assertTrue(reopened.isDrained());
+        assertEquals(20, reopened.getDoneCount());
+        List<String> lines = merge();
+        assertEquals(100, lines.size());
+        assertEquals(100, new HashSet<>(lines).size());
+    }
+    
+    @Test
+    public void restartedCoordinatorKeepsLiveLeasesAndIgnoresTheirResults() throws IOException {
+        WorkQueue coordinator = open();
+        coordinator.startRun();
+        coordinator.offer(batch("old-a", 3));
+        coordinator.offer(batch("old-b", 3));
+        String oldRunId = coordinator.getRunId();
+        WorkQueue.Lease staleLease = open().claim("worker1");
+        
+        //协调进程在列表查询到一半时重启
+        WorkQueue restarted = open();
+        assertFalse(restarted.isListCompleted());
+        restarted.startRun();
+        assertNotEquals(oldRunId, restarted.getRunId());
+        restarted.offer(batch("new-a", 2));
+        restarted.offer(batch("new-b", 2));
+        restarted.completeList();
+        assertEquals(2, restarted.getPendingCount());
+        
+        //正在检查的旧批次没有被删除，仍然可以续约和提交
+        assertTrue(staleLease.renew());
+        check(staleLease);
+        assertEquals(2, restarted.getPendingCount());
+        assertEquals(0, restarted.getDoneCount());
+        
+        WorkQueue worker = open();
+        for (WorkQueue.Lease lease = worker.claim("worker2"); lease != null; lease = worker.claim("worker2")) {
+            check(lease);
+        }
+        assertTrue(restarted.isDrained());
+        List<String> lines = merge();
+        assertEquals(4, lines.size());
+        for (String line : lines) {
+            assertTrue(line, line.startsWith("new-"));
+        }
+    }
+    
+    @Test
+    public void staleCompleteDoesNotFinishBatchOfNewRun() throws IOException {
+        WorkQueue coordinator = open();
+        coordinator.startRun();
+        coordinator.offer(batch("old", 3));
+        WorkQueue.Lease staleLease = open().claim("worker1");
+        List<VideoItem> staleItems = staleLease.getItems();
+        Files.setLastModifiedTime(onlyFile("leased"), FileTime.fromMillis(System.currentTimeMillis() - 2 * LEASE_MILLIS));
+        assertEquals(1, coordinator.reclaimExpired());
+        assertEquals(1, coordinator.getPendingCount());
+        
+        WorkQueue restarted = open();
+        restarted.startRun();
+        restarted.offer(batch("new", 3));
+        restarted.completeList();
+        //旧租约的pending和新一轮的批次序号相同，旧检查进程提交时不能把新批次标记为完成
+        check(staleLease, staleItems);
+        assertEquals(1, restarted.getPendingCount());
+        assertEquals(0, restarted.getDoneCount());
+        
+        check(open().claim("worker2"));
+        assertTrue(restarted.isDrained());
+        List<String> lines = merge();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("new"));
+    }
+    
+    @Test
+    public void renewedLeaseIsPutBackAndExpiredLeaseIsReclaimed() throws IOException {
+        WorkQueue coordinator = open();
+        coordinator.startRun();
+        coordinator.offer(batch("a", 1));
+        WorkQueue.Lease lease = open().claim("worker1");
+        Path leased = onlyFile("leased");
+        String name = leased.getFileName().toString();
+        
+        //另一个进程已把过期租约重命名为退回中，随后检查进程续约
+        Path reclaiming = root.resolve("leased").resolve("." + name + "." + UUID.randomUUID() + ".reclaim");
+        Files.move(leased, reclaiming, StandardCopyOption.ATOMIC_MOVE);
+        Files.setLastModifiedTime(reclaiming, FileTime.fromMillis(System.currentTimeMillis()));
+        assertEquals(0, coordinator.reclaimExpired());
+        assertEquals(name, onlyFile("leased").getFileName().toString());
+        assertTrue(lease.renew());
+        
+        //退回中途退出留下的过期临时文件在下次调用时退回pending
+        Files.move(leased, reclaiming, StandardCopyOption.ATOMIC_MOVE);
+        Files.setLastModifiedTime(reclaiming, FileTime.fromMillis(System.currentTimeMillis() - 2 * LEASE_MILLIS));
+        assertEquals(1, coordinator.reclaimExpired());
+        assertEquals(0, coordinator.getLeasedCount());
+        assertEquals(1, coordinator.getPendingCount());
+        assertFalse(lease.renew());
+    }
+    
+    @Test
+    public void batchBeingReclaimedKeepsQueueFromDraining() throws IOException {
+        WorkQueue coordinator = open();
+        coordinator.startRun();
+        coordinator.offer(batch("a", 2));
+        coordinator.completeList();
+        WorkQueue worker = open();
+        worker.claim("worker1");
+        
+        //退回的进程在重命名后退出，批次既不在pending也不在leased
+        Path leased = onlyFile("leased");
+        Path reclaiming = root.resolve("leased").resolve("." + leased.getFileName() + "." + UUID.randomUUID()
+                + ".reclaim");
+        Files.move(leased, reclaiming, StandardCopyOption.ATOMIC_MOVE);
+        assertEquals(0, coordinator.getPendingCount());
+        assertEquals(1, coordinator.getLeasedCount());
+        assertFalse(coordinator.isDrained());
+        assertFalse(worker.isDrained());
+        
+        Files.setLastModifiedTime(reclaiming, FileTime.fromMillis(System.currentTimeMillis() - 2 * LEASE_MILLIS));
+        assertEquals(1, worker.reclaimExpired());
+        check(worker.claim("worker2"));
+        assertTrue(coordinator.isDrained());
+        assertTrue(worker.isDrained());
+        assertEquals(2, merge().size());
+    }
+    
+    @Test
+    public void expiredLeaseOfOldRunIsDeleted() throws IOException {
+        WorkQueue coordinator = open();
+        coordinator.startRun();
+        coordinator.offer(batch("old", 1));
+        open().claim("worker1");
+        coordinator.startRun();
+        Files.setLastModifiedTime(onlyFile("leased"), FileTime.fromMillis(System.currentTimeMillis() - 2 * LEASE_MILLIS));
+        assertEquals(0, coordinator.reclaimExpired());
+        assertEquals(0, coordinator.getPendingCount());
+        Set<Path> leased = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root.resolve("leased"))) {
+            for (Path path : stream) {
+                leased.add(path);
+            }
+        }
+        assertTrue(leased.isEmpty());
+    }
+    
+}
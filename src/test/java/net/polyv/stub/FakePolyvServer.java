@@ -0,0 +1,543 @@
+package net.polyv.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import com.alibaba.fastjson.JSON;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 本地模拟的保利威服务，用于压测扫描工具，不会对线上后台产生影响
+ * 按路径区分四类接口：
+ * /videojson/{vid}.js   播放器videojson，保留线上连续逗号(,,)的格式，已删除视频status为-1
+ * *.jpg                 封面图片CDN，支持HEAD、Range、If-None-Match
+ * /upload               分片上传，文件部分参数名为file，校验分片长度和partMd5后按uploadId保存
+ * 其他路径              点播视频列表接口，分页参数兼容 page/currentPage、pageSize/numPerPage
+ * 视频属性由序号确定，同样的配置每次运行结果相同；延迟、500和429按配置随机注入
+ * 扫描工具通过 -Dhttp.baseUrlOverride 指向本服务，见 {@link net.polyv.common.v1.base.BaseUrlOverride}
+ * 只在测试代码中使用，不打进发布包；单独运行时使用测试classpath：
+ * mvn test-compile exec:java -Dexec.mainClass=net.polyv.stub.FakePolyvServer -Dexec.classpathScope=test
+ * @author: sadboy
+ **/
+public class FakePolyvServer implements AutoCloseable {
+    
+    /**
+     * 模拟服务配置
+     */
+    public static class Config {
+        private int port = 18080;
+        private int threads = 256;
+        private int videoCount = 10000;
+        private double deletedRate = 0.01;
+        private double missingStatusRate = 0.001;
+        private double brokenImageRate = 0.02;
+        private double errorRate = 0;
+        private double throttleRate = 0;
+        private String imageBaseUrl = "https://img.videocc.net";
+        private LatencyModel listLatency = LatencyModel.NONE;
+        private LatencyModel videoJsonLatency = LatencyModel.NONE;
+        private LatencyModel imageLatency = LatencyModel.NONE;
+        
+        /**
+         * 从系统属性读取配置，属性名为 fake. 加字段名，如 -Dfake.videoCount=100000 -Dfake.imageLatency=5,20,1
+         * @return 配置
+         */
+        public static Config fromSystemProperties() {
+            Config config = new Config();
+            config.port = Integer.getInteger("fake.port", config.port);
+            config.threads = Integer.getInteger("fake.threads", config.threads);
+            config.videoCount = Integer.getInteger("fake.videoCount", config.videoCount);
+            config.deletedRate = doubleProperty("fake.deletedRate", config.deletedRate);
+            config.missingStatusRate = doubleProperty("fake.missingStatusRate", config.missingStatusRate);
+            config.brokenImageRate = doubleProperty("fake.brokenImageRate", config.brokenImageRate);
+            config.errorRate = doubleProperty("fake.errorRate", config.errorRate);
+            config.throttleRate = doubleProperty("fake.throttleRate", config.throttleRate);
+            config.imageBaseUrl = System.getProperty("fake.imageBaseUrl", config.imageBaseUrl);
+            config.listLatency = LatencyModel.parse(System.getProperty("fake.listLatency"));
+            config.videoJsonLatency = LatencyModel.parse(System.getProperty("fake.videoJsonLatency"));
+            config.imageLatency = LatencyModel.parse(System.getProperty("fake.imageLatency"));
+            return config;
+        }
+        
+        private static double doubleProperty(String name, double defaultValue) {
+            String value = System.getProperty(name);
+            return value == null ? defaultValue : Double.parseDouble(value);
+        }
+        
+        public Config setPort(int port) {
+            this.port = port;
+            return this;
+        }
+        
+        public Config setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+        
+        public Config setVideoCount(int videoCount) {
+            this.videoCount = videoCount;
+            return this;
+        }
+        
+        public Config setDeletedRate(double deletedRate) {
+            this.deletedRate = deletedRate;
+            return this;
+        }
+        
+        public Config setMissingStatusRate(double missingStatusRate) {
+            this.missingStatusRate = missingStatusRate;
+            return this;
+        }
+        
+        public Config setBrokenImageRate(double brokenImageRate) {
+            this.brokenImageRate = brokenImageRate;
+            return this;
+        }
+        
+        public Config setErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+        
+        public Config setThrottleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+        
+        public Config setImageBaseUrl(String imageBaseUrl) {
+            this.imageBaseUrl = imageBaseUrl;
+            return this;
+        }
+        
+        public Config setListLatency(LatencyModel listLatency) {
+            this.listLatency = listLatency;
+            return this;
+        }
+        
+        public Config setVideoJsonLatency(LatencyModel videoJsonLatency) {
+            this.videoJsonLatency = videoJsonLatency;
+            return this;
+        }
+        
+        public Config setImageLatency(LatencyModel imageLatency) {
+            this.imageLatency = imageLatency;
+            return this;
+        }
+        
+        @Override
+        public String toString() {
+            return "port=" + port + ", videoCount=" + videoCount + ", deletedRate=" + deletedRate
+                    + ", missingStatusRate=" + missingStatusRate + ", brokenImageRate=" + brokenImageRate
+                    + ", errorRate=" + errorRate + ", throttleRate=" + throttleRate + ", listLatency=" + listLatency
+                    + ", videoJsonLatency=" + videoJsonLatency + ", imageLatency=" + imageLatency;
+        }
+    }
+    
+    private static final String LAST_MODIFIED = "Mon, 01 Jan 2024 00:00:00 GMT";
+    private static final byte[] IMAGE = new byte[16 * 1024];
+    
+    private final Config config;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LongAdder> requestCounts = new LinkedHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final List<String> receivedParts = Collections.synchronizedList(new ArrayList<>());
+    private volatile int rejectedPart;
+    
+    public FakePolyvServer(Config config) throws IOException {
+        this.config = config;
+        for (String route : new String[]{"list", "videojson", "image", "upload", "500", "429"}) {
+            requestCounts.put(route, new LongAdder());
+        }
+        this.server = HttpServer.create(new InetSocketAddress(config.port), 4096);
+        this.executor = Executors.newFixedThreadPool(config.threads);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+    
+    /**
+     * 独立运行模拟服务，配置见 {@link Config#fromSystemProperties()}
+     * @param args 无
+     * @throws IOException 端口被占用等
+     */
+    public static void main(String[] args) throws IOException {
+        FakePolyvServer server = new FakePolyvServer(Config.fromSystemProperties());
+        String baseUrl = server.getBaseUrl();
+        System.out.println("模拟保利威服务已启动：" + server.config);
+        System.out.println("扫描工具启动参数：-Dhttp.baseUrlOverride=https://api.polyv.net=" + baseUrl
+                + ",https://player.polyv.net=" + baseUrl + ",https://*.videocc.net=" + baseUrl);
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String route = path.startsWith("/videojson/") ? "videojson" : path.endsWith(".jpg") ? "image"
+                    : "/upload".equals(path) ? "upload" : "list";
+            LatencyModel latency = "videojson".equals(route) ? config.videoJsonLatency
+                    : "image".equals(route) ? config.imageLatency : config.listLatency;
+            sleep(latency.sampleMillis());
+            double random = ThreadLocalRandom.current().nextDouble();
+            if (random < config.throttleRate) {
+                requestCounts.get("429").increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 429, "application/json", "{\"code\":429,\"message\":\"too many requests\"}");
+                return;
+            }
+            if (random < config.throttleRate + config.errorRate) {
+                requestCounts.get("500").increment();
+                respond(exchange, 500, "application/json", "{\"code\":500,\"message\":\"internal error\"}");
+                return;
+            }
+            requestCounts.get(route).increment();
+            switch (route) {
+                case "videojson":
+                    handleVideoJson(exchange, path);
+                    break;
+                case "image":
+                    handleImage(exchange, path);
+                    break;
+                case "upload":
+                    handleUpload(exchange);
+                    break;
+                default:
+                    handleList(exchange);
+                    break;
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void handleList(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseParams(exchange);
+        int page = intParam(params, 1, "page", "currentPage", "pageNum");
+        int pageSize = Math.max(1, Math.min(1000, intParam(params, 20, "pageSize", "numPerPage")));
+        int totalPage = (config.videoCount + pageSize - 1) / pageSize;
+        List<Map<String, Object>> contents = new ArrayList<>();
+        for (int index = (page - 1) * pageSize; index < Math.min(config.videoCount, page * pageSize); index++) {
+            if (index < 0) {
+                continue;
+            }
+            String vid = vidOf(index);
+            Map<String, Object> basicInfo = new LinkedHashMap<>();
+            basicInfo.put("title", "video-" + index);
+            basicInfo.put("status", 60);
+            basicInfo.put("coverURL", imageUrlOf(vid));
+            Map<String, Object> video = new LinkedHashMap<>();
+            video.put("vid", vid);
+            video.put("videoId", vid);
+            video.put("basicInfo", basicInfo);
+            contents.add(video);
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("pageSize", pageSize);
+        data.put("currentPage", page);
+        data.put("totalItems", config.videoCount);
+        data.put("totalPage", totalPage);
+        data.put("contents", contents);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("code", 200);
+        body.put("status", "success");
+        body.put("message", "success");
+        body.put("data", data);
+        respond(exchange, 200, "application/json;charset=UTF-8", JSON.toJSONString(body));
+    }
+    
+    private void handleVideoJson(HttpExchange exchange, String path) throws IOException {
+        String vid = path.substring("/videojson/".length(), path.length() - ".js".length());
+        int index = indexOf(vid);
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"vid\":\"").append(vid).append("\",\"title\":\"video-").append(index).append("\",,");
+        json.append("\"hls\":[\"https:\\/\\/hls.videocc.net\\/").append(vid).append(".m3u8\"],");
+        if (!hit(index, 2, config.missingStatusRate)) {
+            json.append("\"status\":").append(hit(index, 1, config.deletedRate) ? -1 : 60).append(",,");
+        }
+        json.append("\"first_image_b\":\"").append(imageUrlOf(vid).replace("/", "\\/")).append("\",");
+        json.append("\"duration\":\"00:10:00\"}");
+        respond(exchange, 200, "application/javascript;charset=UTF-8", json.toString());
+    }
+    
+    private void handleImage(HttpExchange exchange, String path) throws IOException {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        String vid = name.endsWith("_b.jpg") ? name.substring(0, name.length() - "_b.jpg".length()) : name;
+        int index = indexOf(vid);
+        if (index < 0 || hit(index, 3, config.brokenImageRate)) {
+            respond(exchange, 404, "text/plain", "not found");
+            return;
+        }
+        String eTag = "\"" + vid + "\"";
+        exchange.getResponseHeaders().set("ETag", eTag);
+        exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+        if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))
+                || LAST_MODIFIED.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            //JDK自带的HttpServer在HEAD响应后会关闭连接，压测HEAD探测时连接复用率低于线上CDN
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(IMAGE.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds[1].isEmpty() ? IMAGE.length - 1 : Math.min(IMAGE.length - 1, Integer.parseInt(bounds[1]));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + IMAGE.length);
+            exchange.sendResponseHeaders(206, end - start + 1);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(IMAGE, start, end - start + 1);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(200, IMAGE.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(IMAGE);
+        }
+    }
+    
+    private void handleUpload(HttpExchange exchange) throws IOException {
+        Map<String, byte[]> fields = parseMultipart(exchange);
+        String uploadId = textField(fields, "uploadId");
+        int partNumber = Integer.parseInt(textField(fields, "partNumber"));
+        int partCount = Integer.parseInt(textField(fields, "partCount"));
+        long partSize = Long.parseLong(textField(fields, "partSize"));
+        long fileSize = Long.parseLong(textField(fields, "fileSize"));
+        byte[] content = fields.get("file");
+        receivedParts.add(uploadId + "/" + partNumber);
+        if (partNumber == rejectedPart) {
+            respond(exchange, 500, "application/json", "{\"code\":500,\"message\":\"part rejected\"}");
+            return;
+        }
+        long expectedLength = partNumber < partCount ? partSize : fileSize - partSize * (partCount - 1);
+        if (content == null || content.length != expectedLength
+                || !md5Hex(content).equals(textField(fields, "partMd5"))) {
+            respond(exchange, 400, "application/json", "{\"code\":400,\"message\":\"bad part\"}");
+            return;
+        }
+        uploads.computeIfAbsent(uploadId, key -> new ConcurrentHashMap<>()).put(partNumber, content);
+        respond(exchange, 200, "application/json", "{\"code\":200,\"status\":\"success\"}");
+    }
+    
+    /**
+     * 解析multipart请求体，返回 参数名 -> 内容
+     */
+    private static Map<String, byte[]> parseMultipart(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        int index = contentType == null ? -1 : contentType.indexOf("boundary=");
+        if (index < 0) {
+            throw new IOException("not a multipart request: " + contentType);
+        }
+        String boundary = contentType.substring(index + "boundary=".length()).split(";")[0];
+        //按ISO-8859-1逐字节对应，二进制内容不会被改变
+        String body = new String(readAll(exchange.getRequestBody()), StandardCharsets.ISO_8859_1);
+        Map<String, byte[]> fields = new HashMap<>();
+        for (String part : body.split("\r\n--" + Pattern.quote(boundary))) {
+            int headerEnd = part.indexOf("\r\n\r\n");
+            int nameStart = part.indexOf("name=\"");
+            if (headerEnd < 0 || nameStart < 0 || nameStart > headerEnd) {
+                continue;
+            }
+            nameStart += "name=\"".length();
+            String name = part.substring(nameStart, part.indexOf('"', nameStart));
+            fields.put(name, part.substring(headerEnd + 4).getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return fields;
+    }
+    
+    private static String textField(Map<String, byte[]> fields, String name) throws IOException {
+        byte[] value = fields.get(name);
+        if (value == null) {
+            throw new IOException("missing multipart field: " + name);
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+    
+    private static String md5Hex(byte[] content) {
+        try {
+            StringBuilder hex = new StringBuilder(32);
+            for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static void respond(HttpExchange exchange, int statusCode, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+    
+    /**
+     * 第index个视频的vid，前32位为序号的十六进制，与线上vid格式一致
+     */
+    public static String vidOf(int index) {
+        return String.format("%032x_%d", index, index % 10);
+    }
+    
+    private static int indexOf(String vid) {
+        try {
+            return Integer.parseInt(vid.substring(16, 32), 16);
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+    
+    private String imageUrlOf(String vid) {
+        return config.imageBaseUrl + "/uimage/" + vid.substring(0, 10) + "/" + vid + "_b.jpg";
+    }
+    
+    /**
+     * 由序号确定视频是否具有某种属性，salt区分不同属性
+     */
+    private static boolean hit(int index, int salt, double rate) {
+        long hash = (index * 0x9E3779B97F4A7C15L) ^ (salt * 0xC2B2AE3D27D4EB4FL);
+        hash ^= hash >>> 31;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 29;
+        return (hash >>> 11) * 0x1.0p-53 < rate;
+    }
+    
+    private static Map<String, String> parseParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseQuery(exchange.getRequestURI().getRawQuery(), params);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+            parseQuery(new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+    
+    private static void parseQuery(String query, Map<String, String> params) throws IOException {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        for (String pair : query.split("&")) {
+            int index = pair.indexOf('=');
+            if (index > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+                        URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+            }
+        }
+    }
+    
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+    
+    private static int intParam(Map<String, String> params, int defaultValue, String... names) {
+        for (String name : names) {
+            String value = params.get(name);
+            if (value != null && !value.isEmpty()) {
+                return Integer.parseInt(value);
+            }
+        }
+        return defaultValue;
+    }
+    
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * @return 服务地址，如 http://127.0.0.1:18080
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    /**
+     * @return 各接口的请求次数，包括注入的500和429
+     */
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : requestCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+    
+    /**
+     * 设置上传时始终返回500的分片序号，0表示不拒绝
+     * @param partNumber 分片序号，从1开始
+     */
+    public void setRejectedPart(int partNumber) {
+        this.rejectedPart = partNumber;
+    }
+    
+    /**
+     * @param uploadId 上传id
+     * @return 已保存的分片，分片序号 -> 内容
+     */
+    public Map<Integer, byte[]> getUploadedParts(String uploadId) {
+        Map<Integer, byte[]> parts = uploads.get(uploadId);
+        return parts == null ? Collections.<Integer, byte[]>emptyMap() : parts;
+    }
+    
+    /**
+     * 取出并清空收到的分片请求记录，包括被拒绝的请求
+     * @return uploadId/分片序号，按收到的顺序
+     */
+    public List<String> drainReceivedParts() {
+        synchronized (receivedParts) {
+            List<String> parts = new ArrayList<>(receivedParts);
+            receivedParts.clear();
+            return parts;
+        }
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+}
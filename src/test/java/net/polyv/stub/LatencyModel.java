@@ -0,0 +1,63 @@
+package net.polyv.stub;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 模拟服务的响应延迟分布：固定延迟 + 对数正态分布的随机延迟
+ * 对数正态分布由中位数和sigma确定，sigma越大长尾越明显，sigma=1时p99约为中位数的10倍
+ * @author: sadboy
+ **/
+public class LatencyModel {
+    /**
+     * 没有延迟
+     */
+    public static final LatencyModel NONE = new LatencyModel(0, 0, 0);
+    
+    private final long fixedMillis;
+    private final double medianMillis;
+    private final double sigma;
+    
+    /**
+     * @param fixedMillis 固定延迟
+     * @param medianMillis 随机延迟的中位数，0表示没有随机延迟
+     * @param sigma 对数正态分布的sigma
+     */
+    public LatencyModel(long fixedMillis, double medianMillis, double sigma) {
+        this.fixedMillis = fixedMillis;
+        this.medianMillis = medianMillis;
+        this.sigma = sigma;
+    }
+    
+    /**
+     * 解析 "固定毫秒,中位数毫秒,sigma" 格式的配置，如 "5,20,0.8"；只写一个数字时为固定延迟
+     * @param config 配置
+     * @return 延迟分布
+     */
+    public static LatencyModel parse(String config) {
+        if (config == null || config.trim().isEmpty()) {
+            return NONE;
+        }
+        String[] fields = config.split(",");
+        long fixedMillis = Long.parseLong(fields[0].trim());
+        double medianMillis = fields.length > 1 ? Double.parseDouble(fields[1].trim()) : 0;
+        double sigma = fields.length > 2 ? Double.parseDouble(fields[2].trim()) : 0;
+        return new LatencyModel(fixedMillis, medianMillis, sigma);
+    }
+    
+    /**
+     * @return 一次请求的延迟，单位毫秒
+     */
+    public long sampleMillis() {
+        if (medianMillis <= 0) {
+            return fixedMillis;
+        }
+        double gaussian = ThreadLocalRandom.current().nextGaussian();
+        return fixedMillis + (long) (medianMillis * Math.exp(sigma * gaussian));
+    }
+    
+    @Override
+    public String toString() {
+        return fixedMillis + "," + medianMillis + "," + sigma;
+    }
+    
+}